@@ -0,0 +1,90 @@
+package com.cox.automotive.benchmarks;
+
+import com.cox.automotive.ApiClients;
+import com.cox.automotive.Challenge;
+import com.cox.automotive.FetchMode;
+import io.swagger.client.model.AnswerResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time of the full challenge flow against the stub: dataset id, vehicle ids, vehicles and dealers, then the answer.
+ * The stub checks the answer, so a wrong answer fails the benchmark.
+ *
+ * @author jeff.snyder
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ChallengeBenchmark {
+
+  @Param({"1000"})
+  public int datasetSize;
+
+  @Param({"20"})
+  public int dealerCount;
+
+  @Param({"20"})
+  public long latencyMillis;
+
+  @Param({"5"})
+  public long jitterMillis;
+
+  @Param({"0.0", "0.01"})
+  public double errorRate;
+
+  @Param({"BLOCKING", "ASYNC"})
+  public String fetchMode;
+
+  @Param({"32"})
+  public int concurrency;
+
+  private StubApiServer stub;
+
+  @Setup(Level.Trial)
+  public void startStub() throws IOException {
+    stub = new StubApiServer(new StubApiServer.Config()
+      .datasetSize(datasetSize)
+      .dealerCount(dealerCount)
+      .latencyMillis(latencyMillis)
+      .jitterMillis(jitterMillis)
+      .errorRate(errorRate));
+    ApiClients.setBasePath(stub.getBasePath());
+    ApiClients.configure(concurrency, concurrency);
+  }
+
+  @TearDown(Level.Trial)
+  public void stopStub() {
+    stub.close();
+  }
+
+  @Benchmark
+  public AnswerResponse processDataset() {
+    Challenge challenge = new Challenge();
+    challenge.setConcurrency(concurrency);
+    challenge.setFetchMode(FetchMode.parse(fetchMode));
+
+    AnswerResponse answerResponse = challenge.processDataset();
+    if (!Boolean.TRUE.equals(answerResponse.isSuccess())) {
+      throw new IllegalStateException("Answer was rejected: " + answerResponse.getMessage());
+    }
+    return answerResponse;
+  }
+}
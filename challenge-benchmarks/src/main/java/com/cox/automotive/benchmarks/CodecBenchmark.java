@@ -0,0 +1,134 @@
+package com.cox.automotive.benchmarks;
+
+import com.cox.automotive.ApiCodecs;
+import io.swagger.client.ApiClient;
+import io.swagger.client.JSON;
+import io.swagger.client.model.Answer;
+import io.swagger.client.model.DealerAnswer;
+import io.swagger.client.model.VehicleAnswer;
+import io.swagger.client.model.VehicleIdsResponse;
+import io.swagger.client.model.VehicleResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of reading the responses and writing the answer, through the generated client's Gson (the body read into a
+ * string, then deserialized by reflection) and through the streaming codecs (read from and written to the bytes).
+ * <p>
+ * Run with -prof gc to compare the allocation as well (gc.alloc.rate.norm is the bytes allocated for each operation).
+ *
+ * @author jeff.snyder
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+  @Param({"1000"})
+  public int datasetSize;
+
+  @Param({"20"})
+  public int dealerCount;
+
+  private JSON json;
+  private byte[] vehicleBytes;
+  private byte[] vehicleIdsBytes;
+  private Answer answer;
+
+  @Setup
+  public void createDocuments() {
+    json = new ApiClient().getJSON();
+
+    VehicleResponse vehicle = new VehicleResponse();
+    vehicle.setVehicleId(100_001);
+    vehicle.setYear(2001);
+    vehicle.setMake("Pontiac");
+    vehicle.setModel("Grand Am");
+    vehicle.setDealerId(1001);
+    vehicleBytes = json.serialize(vehicle).getBytes(StandardCharsets.UTF_8);
+
+    List<Integer> vehicleIds = new ArrayList<>(datasetSize);
+    List<DealerAnswer> dealers = new ArrayList<>(dealerCount);
+    for (int d = 0; d < dealerCount; d++) {
+      DealerAnswer dealer = new DealerAnswer();
+      dealer.setDealerId(1001 + d);
+      dealer.setName("Dealer " + d);
+      dealer.setVehicles(new ArrayList<>());
+      dealers.add(dealer);
+    }
+    for (int i = 0; i < datasetSize; i++) {
+      VehicleAnswer vehicleAnswer = new VehicleAnswer();
+      vehicleAnswer.setVehicleId(100_000 + i);
+      vehicleAnswer.setYear(1990 + (i % 30));
+      vehicleAnswer.setMake("Make " + (i % 40));
+      vehicleAnswer.setModel("Model " + (i % 400));
+      dealers.get(i % dealerCount).getVehicles().add(vehicleAnswer);
+      vehicleIds.add(vehicleAnswer.getVehicleId());
+    }
+    answer = new Answer();
+    answer.setDealers(dealers);
+
+    VehicleIdsResponse vehicleIdsResponse = new VehicleIdsResponse();
+    vehicleIdsResponse.setVehicleIds(vehicleIds);
+    vehicleIdsBytes = json.serialize(vehicleIdsResponse).getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Benchmark
+  public VehicleResponse readVehicleGson() {
+    return json.deserialize(new String(vehicleBytes, StandardCharsets.UTF_8), VehicleResponse.class);
+  }
+
+  @Benchmark
+  public VehicleResponse readVehicleCodec() throws IOException {
+    return ApiCodecs.read(new InputStreamReader(new ByteArrayInputStream(vehicleBytes), StandardCharsets.UTF_8),
+      ApiCodecs.VEHICLE_RESPONSE);
+  }
+
+  @Benchmark
+  public VehicleIdsResponse readVehicleIdsGson() {
+    return json.deserialize(new String(vehicleIdsBytes, StandardCharsets.UTF_8), VehicleIdsResponse.class);
+  }
+
+  @Benchmark
+  public VehicleIdsResponse readVehicleIdsCodec() throws IOException {
+    return ApiCodecs.read(new InputStreamReader(new ByteArrayInputStream(vehicleIdsBytes), StandardCharsets.UTF_8),
+      ApiCodecs.VEHICLE_IDS_RESPONSE);
+  }
+
+  @Benchmark
+  public byte[] writeAnswerGson() {
+    return json.serialize(answer).getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Benchmark
+  public byte[] writeAnswerCodec() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+    try (Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+      ApiCodecs.write(writer, ApiCodecs.ANSWER, answer);
+    }
+    return out.toByteArray();
+  }
+}
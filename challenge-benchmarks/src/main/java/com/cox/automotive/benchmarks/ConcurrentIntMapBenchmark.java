@@ -0,0 +1,70 @@
+package com.cox.automotive.benchmarks;
+
+import com.cox.automotive.ConcurrentIntMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the dealer index of a dataset: inserting each dealer once, then looking up the dealer of every vehicle.
+ * <p>
+ * Run with -prof gc to see the allocation of the inserts (gc.alloc.rate.norm is the bytes allocated for each
+ * dataset), which grows with the number of dealers rather than with its square.
+ *
+ * @author jeff.snyder
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ConcurrentIntMapBenchmark {
+
+  @Param({"100", "1000", "10000"})
+  public int dealerCount;
+
+  @Param({"10000"})
+  public int datasetSize;
+
+  private int[] dealerIds;
+
+  @Setup
+  public void createDealerIds() {
+    dealerIds = new int[datasetSize];
+    for (int i = 0; i < datasetSize; i++) {
+      dealerIds[i] = 1001 + (i % dealerCount);
+    }
+  }
+
+  @Benchmark
+  public ConcurrentIntMap<Object> insertDealers() {
+    ConcurrentIntMap<Object> dealerIndex = new ConcurrentIntMap<>();
+    for (int i = 0; i < dealerCount; i++) {
+      dealerIndex.computeIfAbsent(1001 + i, Integer::valueOf);
+    }
+    return dealerIndex;
+  }
+
+  @Benchmark
+  public int indexVehicles() {
+    ConcurrentIntMap<Object> dealerIndex = new ConcurrentIntMap<>();
+    int found = 0;
+    for (int dealerId : dealerIds) {
+      if (dealerIndex.computeIfAbsent(dealerId, Integer::valueOf) != null) {
+        found++;
+      }
+    }
+    return found;
+  }
+}
@@ -0,0 +1,120 @@
+package com.cox.automotive.benchmarks;
+
+import com.cox.automotive.ApiClients;
+import com.cox.automotive.Dataset;
+import com.cox.automotive.Dealers;
+import io.swagger.client.model.DealerAnswer;
+import io.swagger.client.model.VehicleAnswer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time for many threads to add a batch of vehicles to a few dealers with Dealers.updateDealer, which is where
+ * a shared lock shows up as contention, against the baseline of every append taking one JVM-wide lock as the
+ * dealers used to. Each iteration is a fixed batch, so the dealers do not grow without bound.
+ *
+ * @author jeff.snyder
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, batchSize = 100_000)
+@Measurement(iterations = 10, batchSize = 100_000)
+@Fork(1)
+@Threads(64)
+public class DealersBenchmark {
+
+  @Param({"4"})
+  public int dealerCount;
+
+  private StubApiServer stub;
+  private String datasetId;
+  private Dealers dealers;
+
+  // The vehicles of each dealer for the baseline, only ever appended to under the global lock
+  private Map<Integer, List<VehicleAnswer>> globalLockDealers;
+
+  /**
+   * The vehicle each thread keeps adding, and the dealers it cycles through
+   */
+  @State(Scope.Thread)
+  public static class Worker {
+    private final VehicleAnswer vehicleAnswer = new VehicleAnswer();
+    private int next;
+
+    @Setup
+    public void createVehicle() {
+      vehicleAnswer.setVehicleId(1);
+      vehicleAnswer.setYear(1989);
+      vehicleAnswer.setMake("Pontiac");
+      vehicleAnswer.setModel("Grand Am");
+    }
+
+    int nextDealerId(final int dealerCount) {
+      next = (next + 1) % dealerCount;
+      return 1001 + next;
+    }
+  }
+
+  @Setup(Level.Trial)
+  public void startStub() throws IOException {
+    stub = new StubApiServer(new StubApiServer.Config().dealerCount(dealerCount));
+    ApiClients.setBasePath(stub.getBasePath());
+    datasetId = new Dataset().getDatasetId();
+  }
+
+  @Setup(Level.Iteration)
+  public void createDealers() {
+    dealers = new Dealers();
+    globalLockDealers = new HashMap<>();
+    for (int i = 0; i < dealerCount; i++) {
+      globalLockDealers.put(1001 + i, new ArrayList<>());
+    }
+  }
+
+  @TearDown(Level.Iteration)
+  public void answerDealers() {
+    // The dealers are left empty by the baseline
+    List<DealerAnswer> dealerAnswers = dealers.getDealerAnswers();
+    if (!dealerAnswers.isEmpty() && (dealerAnswers.size() != dealerCount)) {
+      throw new IllegalStateException("Wrong number of dealers");
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void stopStub() {
+    stub.close();
+  }
+
+  @Benchmark
+  public void updateDealer(final Worker worker) {
+    dealers.updateDealer(datasetId, worker.nextDealerId(dealerCount), worker.vehicleAnswer);
+  }
+
+  @Benchmark
+  public void globalLock(final Worker worker) {
+    List<VehicleAnswer> vehicles = globalLockDealers.get(worker.nextDealerId(dealerCount));
+    synchronized (DealerAnswer.class) {
+      vehicles.add(worker.vehicleAnswer);
+    }
+  }
+}
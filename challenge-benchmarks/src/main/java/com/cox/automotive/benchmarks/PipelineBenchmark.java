@@ -0,0 +1,99 @@
+package com.cox.automotive.benchmarks;
+
+import com.cox.automotive.AdaptiveLimiter;
+import com.cox.automotive.ApiClients;
+import com.cox.automotive.Dataset;
+import com.cox.automotive.FetchMode;
+import com.cox.automotive.Vehicles;
+import io.swagger.client.model.DealerAnswer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to fetch all of the vehicles and dealers of a dataset (Vehicles.getDealersWithTheirVehicles) from the stub.
+ *
+ * @author jeff.snyder
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PipelineBenchmark {
+
+  @Param({"1000"})
+  public int datasetSize;
+
+  @Param({"20"})
+  public int dealerCount;
+
+  @Param({"20"})
+  public long latencyMillis;
+
+  @Param({"5"})
+  public long jitterMillis;
+
+  @Param({"0.0"})
+  public double errorRate;
+
+  @Param({"BLOCKING", "ASYNC"})
+  public String fetchMode;
+
+  @Param({"32"})
+  public int concurrency;
+
+  private StubApiServer stub;
+  private String datasetId;
+  private List<Integer> vehicleIds;
+
+  @Setup(Level.Trial)
+  public void startStub() throws IOException {
+    stub = new StubApiServer(new StubApiServer.Config()
+      .datasetSize(datasetSize)
+      .dealerCount(dealerCount)
+      .latencyMillis(latencyMillis)
+      .jitterMillis(jitterMillis)
+      .errorRate(errorRate));
+    ApiClients.setBasePath(stub.getBasePath());
+    ApiClients.configure(concurrency, concurrency);
+
+    datasetId = new Dataset().getDatasetId();
+    vehicleIds = new Vehicles().getVehicleIds(datasetId);
+  }
+
+  @TearDown(Level.Trial)
+  public void stopStub() {
+    stub.close();
+  }
+
+  @Benchmark
+  public List<DealerAnswer> getDealersWithTheirVehicles() {
+    Vehicles vehicles = new Vehicles();
+    vehicles.setConcurrency(concurrency);
+    vehicles.setFetchMode(FetchMode.parse(fetchMode));
+    // A limiter per invocation, so each one starts from the same limit
+    vehicles.setLimiter(new AdaptiveLimiter());
+
+    List<DealerAnswer> dealers = vehicles.getDealersWithTheirVehicles(datasetId, vehicleIds);
+    if (dealers.size() != dealerCount) {
+      throw new IllegalStateException("Wrong number of dealers: " + dealers.size());
+    }
+    return dealers;
+  }
+}
@@ -0,0 +1,130 @@
+package com.cox.automotive.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the startup of the challenge packagings: the fat jar, the fat jar with its AppCDS archive, and the
+ * native executable. Each run is a fresh process pointed at a fresh stub of the API, and the time to first request
+ * is from launching the process to the stub receiving the dataset id request. A packaging that has not been built
+ * is skipped.
+ * <p>
+ * Not a JMH benchmark, as what is measured is the JVM starting, which JMH forks cannot isolate:
+ * <pre>
+ * java -cp challenge-benchmarks/target/benchmarks.jar com.cox.automotive.benchmarks.StartupBenchmark --runs 10
+ * </pre>
+ *
+ * @author jeff.snyder
+ */
+public class StartupBenchmark {
+
+  private static final String JAR = "target/challenge-1.0-SNAPSHOT-jar-with-dependencies.jar";
+  private static final String ARCHIVE = "target/challenge.jsa";
+  private static final String NATIVE = "target/challenge";
+
+  /**
+   * A way of launching the challenge
+   */
+  private static final class Packaging {
+    private final String name;
+    private final List<String> command;
+    private final Path artifact;
+
+    Packaging(final String name, final Path artifact, final String... command) {
+      this.name = name;
+      this.artifact = artifact;
+      this.command = Arrays.asList(command);
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    Path project = Paths.get(".");
+    int runs = 10;
+    int datasetSize = 100;
+    for (int i = 0; i + 1 < args.length; i += 2) {
+      String value = args[i + 1];
+      switch (args[i]) {
+        case "--project": project = Paths.get(value); break;
+        case "--runs": runs = Integer.parseInt(value); break;
+        case "--size": datasetSize = Integer.parseInt(value); break;
+        default: throw new IllegalArgumentException("Unknown argument: " + args[i]);
+      }
+    }
+
+    String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+    String jar = project.resolve(JAR).toString();
+    List<Packaging> packagings = Arrays.asList(
+      new Packaging("jar", project.resolve(JAR), java, "-jar", jar),
+      new Packaging("appcds", project.resolve(ARCHIVE), java, "-XX:SharedArchiveFile=" + project.resolve(ARCHIVE), "-jar", jar),
+      new Packaging("native", project.resolve(NATIVE), project.resolve(NATIVE).toString()));
+
+    System.out.println(String.format("%-8s %6s %22s %22s", "", "runs", "first request (ms)", "total (ms)"));
+    System.out.println(String.format("%-8s %6s %11s %10s %11s %10s", "", "", "median", "min", "median", "min"));
+    for (Packaging packaging : packagings) {
+      if (!Files.exists(packaging.artifact)) {
+        System.out.println(String.format("%-8s skipped, %s has not been built", packaging.name, packaging.artifact));
+        continue;
+      }
+      List<Long> firstRequestMillis = new ArrayList<>();
+      List<Long> totalMillis = new ArrayList<>();
+      for (int run = 0; run < runs; run++) {
+        long[] times = run(packaging, datasetSize);
+        firstRequestMillis.add(times[0]);
+        totalMillis.add(times[1]);
+      }
+      System.out.println(String.format("%-8s %6d %11d %10d %11d %10d", packaging.name, runs,
+        median(firstRequestMillis), Collections.min(firstRequestMillis), median(totalMillis), Collections.min(totalMillis)));
+    }
+  }
+
+  /**
+   * @return the time to the first request and the total time of one run, in milliseconds
+   */
+  private static long[] run(final Packaging packaging, final int datasetSize) throws IOException, InterruptedException {
+    try (StubApiServer stub = new StubApiServer(new StubApiServer.Config().datasetSize(datasetSize))) {
+      List<String> command = new ArrayList<>(packaging.command);
+      command.add("--base-path");
+      command.add(stub.getBasePath());
+
+      // The output goes to a file rather than a pipe, so the process never waits on it being read
+      File output = File.createTempFile("challenge-startup", ".log");
+      try {
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command)
+          .redirectErrorStream(true)
+          .redirectOutput(output)
+          .start();
+        int exitCode = process.waitFor();
+        long end = System.nanoTime();
+
+        // The challenge reports a failure on its output and still exits with 0, so a run only counts once the stub
+        // has received its right answer
+        if ((exitCode != 0) || (stub.getFirstRequestNanos() == 0) || (stub.getCorrectAnswers() != 1)) {
+          throw new IllegalStateException("Run of " + packaging.name + " failed, exit code " + exitCode + ": "
+            + new String(Files.readAllBytes(output.toPath()), StandardCharsets.UTF_8));
+        }
+        return new long[] {
+          TimeUnit.NANOSECONDS.toMillis(stub.getFirstRequestNanos() - start),
+          TimeUnit.NANOSECONDS.toMillis(end - start)
+        };
+      } finally {
+        Files.deleteIfExists(output.toPath());
+      }
+    }
+  }
+
+  private static long median(final List<Long> values) {
+    List<Long> sorted = new ArrayList<>(values);
+    Collections.sort(sorted);
+    return sorted.get(sorted.size() / 2);
+  }
+}
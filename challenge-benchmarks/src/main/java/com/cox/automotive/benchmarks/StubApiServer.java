@@ -0,0 +1,447 @@
+package com.cox.automotive.benchmarks;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.swagger.client.model.Answer;
+import io.swagger.client.model.AnswerResponse;
+import io.swagger.client.model.DatasetIdResponse;
+import io.swagger.client.model.DealerAnswer;
+import io.swagger.client.model.DealersResponse;
+import io.swagger.client.model.VehicleAnswer;
+import io.swagger.client.model.VehicleIdsResponse;
+import io.swagger.client.model.VehicleResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * An in-process stub of the challenge API (dataset, vehicles, dealers and answer endpoints), with configurable
+ * latency, jitter, error rate and dataset size. It checks the answers it is sent, so the benchmarks catch
+ * correctness regressions as well as slow downs.
+ *
+ * @author jeff.snyder
+ */
+public class StubApiServer implements AutoCloseable {
+
+  private static final String[][] CATALOGUE = {
+    {"Ford", "F150", "Focus", "Mustang GT", "Escape"},
+    {"Chevrolet", "Silverado", "Malibu", "Camaro", "Tahoe"},
+    {"Toyota", "Camry", "Corolla", "RAV4", "Tacoma"},
+    {"Honda", "Accord", "Civic", "CR-V", "Pilot"},
+    {"Pontiac", "Grand Am", "Sunbird", "Firebird", "Aztek"},
+    {"Nissan", "Altima", "Sentra", "Rogue", "Frontier"},
+  };
+
+  /**
+   * How the stub behaves
+   */
+  public static final class Config {
+    private int datasetSize = 1000;
+    private int dealerCount = 10;
+    private long latencyMillis;
+    private long jitterMillis;
+    private double errorRate;
+    private long seed = 42L;
+
+    /**
+     * @param datasetSize number of vehicles in each dataset
+     */
+    public Config datasetSize(final int datasetSize) {
+      this.datasetSize = datasetSize;
+      return this;
+    }
+
+    /**
+     * @param dealerCount number of dealers the vehicles of a dataset are spread over
+     */
+    public Config dealerCount(final int dealerCount) {
+      this.dealerCount = dealerCount;
+      return this;
+    }
+
+    /**
+     * @param latencyMillis time taken by every vehicle, dealer and id request
+     */
+    public Config latencyMillis(final long latencyMillis) {
+      this.latencyMillis = latencyMillis;
+      return this;
+    }
+
+    /**
+     * @param jitterMillis the latency varies randomly by up to this much either way
+     */
+    public Config jitterMillis(final long jitterMillis) {
+      this.jitterMillis = jitterMillis;
+      return this;
+    }
+
+    /**
+     * @param errorRate fraction (0 to 1) of vehicle and dealer requests failing with a 503
+     */
+    public Config errorRate(final double errorRate) {
+      this.errorRate = errorRate;
+      return this;
+    }
+
+    /**
+     * @param seed seed of the generated datasets, so the runs are repeatable
+     */
+    public Config seed(final long seed) {
+      this.seed = seed;
+      return this;
+    }
+  }
+
+  /**
+   * A generated dataset, with the count of requests for each of its vehicles and dealers
+   */
+  private static final class StubDataset {
+    private final long createdMillis = System.currentTimeMillis();
+    private final List<Integer> vehicleIds = new ArrayList<>();
+    private final Map<Integer, VehicleResponse> vehicles = new HashMap<>();
+    private final Map<Integer, DealersResponse> dealers = new HashMap<>();
+    private final Map<String, AtomicInteger> requestCounts = new ConcurrentHashMap<>();
+
+    void countRequest(final String key) {
+      requestCounts.computeIfAbsent(key, k -> new AtomicInteger()).incrementAndGet();
+    }
+
+    int getDuplicateRequests() {
+      int duplicates = 0;
+      for (AtomicInteger count : requestCounts.values()) {
+        duplicates += Math.max(0, count.get() - 1);
+      }
+      return duplicates;
+    }
+  }
+
+  private final Config config;
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private final Gson gson = new Gson();
+  private final Map<String, StubDataset> datasets = new ConcurrentHashMap<>();
+  private final AtomicInteger datasetCount = new AtomicInteger();
+  private final AtomicLong requests = new AtomicLong();
+  private final AtomicLong firstRequestNanos = new AtomicLong();
+  private final AtomicLong failedAnswers = new AtomicLong();
+  private final AtomicLong correctAnswers = new AtomicLong();
+
+  /**
+   * Start the stub on an ephemeral port
+   *
+   * @param config how the stub behaves
+   */
+  public StubApiServer(final Config config) throws IOException {
+    this(config, 0);
+  }
+
+  /**
+   * Start the stub
+   *
+   * @param config how the stub behaves
+   * @param port   port to listen on (0 for any free port)
+   */
+  public StubApiServer(final Config config, final int port) throws IOException {
+    this.config = config;
+    this.server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+    // The latency is simulated by sleeping, so every request needs its own thread
+    this.executor = Executors.newCachedThreadPool(runnable -> {
+      Thread thread = new Thread(runnable, "stub-api");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.server.setExecutor(executor);
+    this.server.createContext("/api/", this::handle);
+    this.server.start();
+  }
+
+  public static void main(String[] args) throws IOException {
+    Config config = new Config();
+    int port = 8080;
+    for (int i = 0; i + 1 < args.length; i += 2) {
+      String value = args[i + 1];
+      switch (args[i]) {
+        case "--port": port = Integer.parseInt(value); break;
+        case "--size": config.datasetSize(Integer.parseInt(value)); break;
+        case "--dealers": config.dealerCount(Integer.parseInt(value)); break;
+        case "--latency": config.latencyMillis(Long.parseLong(value)); break;
+        case "--jitter": config.jitterMillis(Long.parseLong(value)); break;
+        case "--error-rate": config.errorRate(Double.parseDouble(value)); break;
+        default: throw new IllegalArgumentException("Unknown argument: " + args[i]);
+      }
+    }
+    StubApiServer stub = new StubApiServer(config, port);
+    System.out.println("Stub API listening on " + stub.getBasePath());
+  }
+
+  /**
+   * @return the base URL of the stub, to be given to the API client
+   */
+  public String getBasePath() {
+    return "http://localhost:" + server.getAddress().getPort();
+  }
+
+  /**
+   * @return the number of requests served
+   */
+  public long getRequests() {
+    return requests.get();
+  }
+
+  /**
+   * @return the System.nanoTime() at which the first request arrived, 0 before any
+   */
+  public long getFirstRequestNanos() {
+    return firstRequestNanos.get();
+  }
+
+  /**
+   * @return the number of answers which were wrong
+   */
+  public long getFailedAnswers() {
+    return failedAnswers.get();
+  }
+
+  /**
+   * @return the number of answers which were right
+   */
+  public long getCorrectAnswers() {
+    return correctAnswers.get();
+  }
+
+  /**
+   * @param datasetId dataset created by the stub
+   * @return the number of vehicle and dealer requests beyond the first one for each of them
+   */
+  public int getDuplicateRequests(final String datasetId) {
+    StubDataset dataset = datasets.get(datasetId);
+    return (dataset == null) ? 0 : dataset.getDuplicateRequests();
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  private void handle(final HttpExchange exchange) throws IOException {
+    if (requests.incrementAndGet() == 1) {
+      firstRequestNanos.set(System.nanoTime());
+    }
+    try {
+      String[] path = exchange.getRequestURI().getPath().substring("/api/".length()).split("/");
+      String method = exchange.getRequestMethod();
+
+      if ((path.length == 1) && "datasetId".equals(path[0]) && "GET".equals(method)) {
+        DatasetIdResponse response = new DatasetIdResponse();
+        response.setDatasetId(createDataset());
+        send(exchange, 200, response);
+        return;
+      }
+
+      StubDataset dataset = datasets.get(path[0]);
+      if (dataset == null) {
+        send(exchange, 404, error("Unknown dataset: " + path[0]));
+        return;
+      }
+
+      if ((path.length == 2) && "vehicles".equals(path[1]) && "GET".equals(method)) {
+        delay();
+        VehicleIdsResponse response = new VehicleIdsResponse();
+        response.setVehicleIds(dataset.vehicleIds);
+        send(exchange, 200, response);
+      } else if ((path.length == 3) && "vehicles".equals(path[1]) && "GET".equals(method)) {
+        serveItem(exchange, dataset, "vehicle:" + path[2], dataset.vehicles.get(parseId(path[2])));
+      } else if ((path.length == 3) && "dealers".equals(path[1]) && "GET".equals(method)) {
+        serveItem(exchange, dataset, "dealer:" + path[2], dataset.dealers.get(parseId(path[2])));
+      } else if ((path.length == 2) && "answer".equals(path[1]) && "POST".equals(method)) {
+        send(exchange, 200, checkAnswer(dataset, readAnswer(exchange)));
+      } else {
+        send(exchange, 404, error("Unknown request: " + method + " " + exchange.getRequestURI()));
+      }
+    } catch (RuntimeException e) {
+      send(exchange, 400, error(e.getMessage()));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      send(exchange, 503, error("Interrupted"));
+    } finally {
+      exchange.close();
+    }
+  }
+
+  private void serveItem(final HttpExchange exchange, final StubDataset dataset, final String key, final Object item)
+    throws IOException, InterruptedException {
+    delay();
+    if ((config.errorRate > 0.0) && (ThreadLocalRandom.current().nextDouble() < config.errorRate)) {
+      send(exchange, 503, error("Injected failure"));
+      return;
+    }
+    dataset.countRequest(key);
+    if (item == null) {
+      send(exchange, 404, error("Unknown " + key));
+    } else {
+      send(exchange, 200, item);
+    }
+  }
+
+  private String createDataset() {
+    int index = datasetCount.incrementAndGet();
+    Random random = new Random(config.seed + index);
+    StubDataset dataset = new StubDataset();
+
+    int dealerCount = Math.max(1, config.dealerCount);
+    for (int dealerId = 1; dealerId <= dealerCount; dealerId++) {
+      DealersResponse dealer = new DealersResponse();
+      dealer.setDealerId(1000 + dealerId);
+      dealer.setName("Dealer " + dealerId + " of dataset " + index);
+      dataset.dealers.put(dealer.getDealerId(), dealer);
+    }
+
+    int nextVehicleId = 1 + random.nextInt(1000);
+    for (int i = 0; i < config.datasetSize; i++) {
+      String[] makeModels = CATALOGUE[random.nextInt(CATALOGUE.length)];
+      VehicleResponse vehicle = new VehicleResponse();
+      vehicle.setVehicleId(nextVehicleId);
+      vehicle.setYear(1990 + random.nextInt(30));
+      vehicle.setMake(makeModels[0]);
+      vehicle.setModel(makeModels[1 + random.nextInt(makeModels.length - 1)]);
+      vehicle.setDealerId(1001 + random.nextInt(dealerCount));
+      dataset.vehicles.put(vehicle.getVehicleId(), vehicle);
+      dataset.vehicleIds.add(vehicle.getVehicleId());
+      nextVehicleId += 1 + random.nextInt(5);
+    }
+
+    String datasetId = "stub-" + index + "-" + Long.toHexString(random.nextLong());
+    datasets.put(datasetId, dataset);
+    return datasetId;
+  }
+
+  private Answer readAnswer(final HttpExchange exchange) throws IOException {
+    InputStream body = exchange.getRequestBody();
+    if ("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+      body = new GZIPInputStream(body);
+    }
+    try (Reader reader = new InputStreamReader(body, StandardCharsets.UTF_8)) {
+      Answer answer = gson.fromJson(reader, Answer.class);
+      if (answer == null) {
+        throw new JsonParseException("Empty answer");
+      }
+      return answer;
+    }
+  }
+
+  /**
+   * @return the response to the answer, which is only successful if every dealer and vehicle is right
+   */
+  private AnswerResponse checkAnswer(final StubDataset dataset, final Answer answer) {
+    String problem = findProblem(dataset, answer);
+
+    AnswerResponse response = new AnswerResponse();
+    response.setSuccess(problem == null);
+    response.setMessage((problem == null) ? "Congratulations." : problem);
+    response.setTotalMilliseconds((int) (System.currentTimeMillis() - dataset.createdMillis));
+    if (problem != null) {
+      failedAnswers.incrementAndGet();
+    } else {
+      correctAnswers.incrementAndGet();
+    }
+    return response;
+  }
+
+  private static String findProblem(final StubDataset dataset, final Answer answer) {
+    List<DealerAnswer> dealers = (answer.getDealers() == null) ? new ArrayList<>() : answer.getDealers();
+    if (dealers.size() != dataset.dealers.size()) {
+      return "Wrong number of dealers. (expected, received): (" + dataset.dealers.size() + "," + dealers.size() + ")";
+    }
+
+    int vehicleCount = 0;
+    for (DealerAnswer dealer : dealers) {
+      DealersResponse expectedDealer = dataset.dealers.get(dealer.getDealerId());
+      if ((expectedDealer == null) || !Objects.equals(expectedDealer.getName(), dealer.getName())) {
+        return "Wrong dealer: " + dealer.getDealerId() + "," + dealer.getName();
+      }
+      List<VehicleAnswer> vehicles = (dealer.getVehicles() == null) ? new ArrayList<>() : dealer.getVehicles();
+      for (VehicleAnswer vehicle : vehicles) {
+        VehicleResponse expected = dataset.vehicles.get(vehicle.getVehicleId());
+        if ((expected == null)
+          || !Objects.equals(expected.getDealerId(), dealer.getDealerId())
+          || !Objects.equals(expected.getYear(), vehicle.getYear())
+          || !Objects.equals(expected.getMake(), vehicle.getMake())
+          || !Objects.equals(expected.getModel(), vehicle.getModel())) {
+          return "Wrong vehicle for dealer " + dealer.getDealerId() + ": " + vehicle.getVehicleId();
+        }
+      }
+      vehicleCount += vehicles.size();
+    }
+
+    if (vehicleCount != dataset.vehicles.size()) {
+      return "Wrong number of vehicles. (expected, received): (" + dataset.vehicles.size() + "," + vehicleCount + ")";
+    }
+    return null;
+  }
+
+  private void delay() throws InterruptedException {
+    long millis = config.latencyMillis;
+    if (config.jitterMillis > 0) {
+      millis += ThreadLocalRandom.current().nextLong(-config.jitterMillis, config.jitterMillis + 1);
+    }
+    if (millis > 0) {
+      Thread.sleep(millis);
+    }
+  }
+
+  private static int parseId(final String value) {
+    try {
+      return Integer.parseInt(value);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid id: " + value);
+    }
+  }
+
+  private static Map<String, String> error(final String message) {
+    Map<String, String> error = new HashMap<>();
+    error.put("message", message);
+    return error;
+  }
+
+  private void send(final HttpExchange exchange, final int status, final Object body) throws IOException {
+    byte[] bytes = gson.toJson(body).getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+    // Compressed when asked to, as the HTTP/2 transport does
+    String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+    if ((acceptEncoding != null) && acceptEncoding.contains("gzip")) {
+      ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length);
+      try (OutputStream out = new GZIPOutputStream(compressed)) {
+        out.write(bytes);
+      }
+      bytes = compressed.toByteArray();
+      exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+    }
+    exchange.sendResponseHeaders(status, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+}
@@ -0,0 +1,119 @@
+package com.cox.automotive.benchmarks;
+
+import com.cox.automotive.ConcurrentIntMap;
+import com.cox.automotive.VehicleStore;
+import io.swagger.client.model.DealerAnswer;
+import io.swagger.client.model.VehicleAnswer;
+import io.swagger.client.model.VehicleResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of holding the vehicles of a dataset until the answer is built, with no network involved. The boxed model
+ * copies each response into a VehicleAnswer queued under a boxed dealer id (as Dealers used to), the columnar model
+ * adds it to a VehicleStore and only creates the answer objects at the end.
+ * <p>
+ * Run with -prof gc to compare the allocation (gc.alloc.rate.norm is the bytes allocated for each dataset).
+ *
+ * @author jeff.snyder
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class VehicleModelBenchmark {
+
+  @Param({"10000"})
+  public int datasetSize;
+
+  @Param({"100"})
+  public int dealerCount;
+
+  private VehicleResponse[] vehicleResponses;
+
+  @Setup
+  public void createResponses() {
+    vehicleResponses = new VehicleResponse[datasetSize];
+    for (int i = 0; i < datasetSize; i++) {
+      VehicleResponse vehicleResponse = new VehicleResponse();
+      vehicleResponse.setVehicleId(100_000 + i);
+      vehicleResponse.setYear(1990 + (i % 30));
+      vehicleResponse.setMake("Make " + (i % 40));
+      vehicleResponse.setModel("Model " + (i % 400));
+      // Past the Integer cache, as real dealer ids are
+      vehicleResponse.setDealerId(1001 + (i % dealerCount));
+      vehicleResponses[i] = vehicleResponse;
+    }
+  }
+
+  @Benchmark
+  public List<DealerAnswer> boxedAnswers() {
+    Map<Integer, Queue<VehicleAnswer>> dealerVehicles = new ConcurrentHashMap<>();
+    for (VehicleResponse vehicleResponse : vehicleResponses) {
+      VehicleAnswer vehicleAnswer = new VehicleAnswer();
+      vehicleAnswer.setVehicleId(vehicleResponse.getVehicleId());
+      vehicleAnswer.setYear(vehicleResponse.getYear());
+      vehicleAnswer.setMake(vehicleResponse.getMake());
+      vehicleAnswer.setModel(vehicleResponse.getModel());
+      dealerVehicles.computeIfAbsent(vehicleResponse.getDealerId(), id -> new ConcurrentLinkedQueue<>()).add(vehicleAnswer);
+    }
+
+    List<DealerAnswer> dealerAnswers = new ArrayList<>(dealerVehicles.size());
+    for (Map.Entry<Integer, Queue<VehicleAnswer>> entry : dealerVehicles.entrySet()) {
+      DealerAnswer dealerAnswer = new DealerAnswer();
+      dealerAnswer.setDealerId(entry.getKey());
+      dealerAnswer.setVehicles(new ArrayList<>(entry.getValue()));
+      dealerAnswers.add(dealerAnswer);
+    }
+    return dealerAnswers;
+  }
+
+  @Benchmark
+  public List<DealerAnswer> columnarStore() {
+    VehicleStore vehicleStore = new VehicleStore();
+    ConcurrentIntMap<DealerAnswer> dealerIndex = new ConcurrentIntMap<>();
+    for (VehicleResponse vehicleResponse : vehicleResponses) {
+      int dealerId = vehicleResponse.getDealerId();
+      if (dealerIndex.get(dealerId) == null) {
+        dealerIndex.computeIfAbsent(dealerId, id -> {
+          DealerAnswer dealerAnswer = new DealerAnswer();
+          dealerAnswer.setDealerId(id);
+          dealerAnswer.setVehicles(new ArrayList<>());
+          return dealerAnswer;
+        });
+      }
+      vehicleStore.add(vehicleResponse.getVehicleId(), VehicleStore.toInt(vehicleResponse.getYear()),
+        vehicleResponse.getMake(), vehicleResponse.getModel(), dealerId);
+    }
+
+    // The answer objects are only created once, at the end
+    for (int row = 0; row < vehicleStore.size(); row++) {
+      VehicleAnswer vehicleAnswer = new VehicleAnswer();
+      vehicleAnswer.setVehicleId(vehicleStore.getVehicleId(row));
+      vehicleAnswer.setYear(VehicleStore.toInteger(vehicleStore.getYear(row)));
+      vehicleAnswer.setMake(vehicleStore.getMake(row));
+      vehicleAnswer.setModel(vehicleStore.getModel(row));
+      dealerIndex.get(vehicleStore.getDealerId(row)).getVehicles().add(vehicleAnswer);
+    }
+    return dealerIndex.values();
+  }
+}
@@ -0,0 +1,4 @@
+package com.cox.automotive.benchmarks.generated;
+public class ChallengeBenchmark_jmhType extends ChallengeBenchmark_jmhType_B3 {
+}
+
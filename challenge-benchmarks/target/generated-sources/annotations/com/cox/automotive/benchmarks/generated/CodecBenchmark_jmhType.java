@@ -0,0 +1,4 @@
+package com.cox.automotive.benchmarks.generated;
+public class CodecBenchmark_jmhType extends CodecBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package com.cox.automotive.benchmarks.generated;
+public class ConcurrentIntMapBenchmark_jmhType extends ConcurrentIntMapBenchmark_jmhType_B3 {
+}
+
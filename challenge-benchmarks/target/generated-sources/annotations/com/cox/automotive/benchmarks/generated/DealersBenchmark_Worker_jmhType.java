@@ -0,0 +1,4 @@
+package com.cox.automotive.benchmarks.generated;
+public class DealersBenchmark_Worker_jmhType extends DealersBenchmark_Worker_jmhType_B3 {
+}
+
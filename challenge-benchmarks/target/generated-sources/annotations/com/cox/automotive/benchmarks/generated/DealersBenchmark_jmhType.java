@@ -0,0 +1,4 @@
+package com.cox.automotive.benchmarks.generated;
+public class DealersBenchmark_jmhType extends DealersBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package com.cox.automotive.benchmarks.generated;
+public class PipelineBenchmark_jmhType extends PipelineBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package com.cox.automotive.benchmarks.generated;
+public class VehicleModelBenchmark_jmhType extends VehicleModelBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,286 @@
+package com.cox.automotive;
+
+import io.swagger.client.ApiException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Limits the number of API calls in flight, adapting the limit to the server (additive increase, multiplicative
+ * decrease). The limit grows by about one per round trip while the latency stays near its baseline, and shrinks
+ * when the latency rises or calls fail, so the throughput stays near what the server can actually handle.
+ * <p>
+ * The recent latency is compared with its long-term average rather than with the fastest call seen: with any
+ * jitter the average is always well above the minimum, which would read as overload and shrink the limit to nothing.
+ *
+ * @author jeff.snyder
+ */
+public class AdaptiveLimiter {
+
+  // Starts at the default fetch window, so the limiter does not hold the first round trips below it
+  public static final int DEFAULT_INITIAL_LIMIT = FetchEngine.DEFAULT_CONCURRENCY;
+  public static final int DEFAULT_MIN_LIMIT = 1;
+  public static final int DEFAULT_MAX_LIMIT = 1000;
+
+  // Multiplier applied to the limit when the server is overloaded
+  private static final double BACKOFF_RATIO = 0.9;
+
+  // How much the smoothed round trip may exceed the baseline before it is considered overloaded
+  private static final double LATENCY_TOLERANCE = 2.0;
+
+  // Latency increase always tolerated, so scheduling jitter on very fast calls is not mistaken for overload
+  private static final long LATENCY_SLACK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  // Weight of a new sample in the smoothed round trip
+  private static final double SMOOTHING = 0.1;
+
+  // Number of samples the baseline averages over, so a permanently slower server becomes the baseline
+  private static final int BASELINE_WINDOW = 500;
+
+  // Decay of the baseline while it is well above the recent latency, so it follows a server that got faster
+  private static final double BASELINE_DECAY = 0.95;
+
+  // All of the calls to the one API server share this limiter by default
+  private static final AdaptiveLimiter SHARED = new AdaptiveLimiter();
+
+  private final int minLimit;
+  private final int maxLimit;
+  private final LongSupplier clock;
+
+  // The state is guarded by this limiter's monitor
+  private double limit;
+  private int inFlight;
+  private final Queue<CompletableFuture<Permit>> waiters = new ArrayDeque<>();
+
+  private double smoothedRttNanos;
+  private double baselineRttNanos;
+  private int baselineSamples;
+  private long lastDecreaseNanos;
+
+  /**
+   * Permission to make one call, to be released once the call is done
+   */
+  public static final class Permit {
+    private final long startNanos;
+
+    private Permit(final long startNanos) {
+      this.startNanos = startNanos;
+    }
+  }
+
+  public AdaptiveLimiter() {
+    this(DEFAULT_INITIAL_LIMIT, DEFAULT_MIN_LIMIT, DEFAULT_MAX_LIMIT);
+  }
+
+  /**
+   * @param initialLimit number of calls allowed in flight to start with
+   * @param minLimit     lowest the limit can shrink to
+   * @param maxLimit     highest the limit can grow to
+   */
+  public AdaptiveLimiter(final int initialLimit, final int minLimit, final int maxLimit) {
+    this(initialLimit, minLimit, maxLimit, System::nanoTime);
+  }
+
+  /**
+   * @param clock source of the time in nanoseconds
+   */
+  AdaptiveLimiter(final int initialLimit, final int minLimit, final int maxLimit, final LongSupplier clock) {
+    if ((minLimit < 1) || (maxLimit < minLimit) || (initialLimit < minLimit) || (initialLimit > maxLimit)) {
+      throw new IllegalArgumentException("Invalid limits (initial, min, max): (" + initialLimit + "," + minLimit + "," + maxLimit + ")");
+    }
+    this.limit = initialLimit;
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    this.clock = clock;
+  }
+
+  /**
+   * @return the limiter shared by all of the API calls in the process
+   */
+  public static AdaptiveLimiter getShared() {
+    return SHARED;
+  }
+
+  /**
+   * Make a blocking call, waiting first until it is allowed
+   *
+   * @param call call to be made
+   * @param <T>  type of the response
+   * @return the response of the call
+   * @throws ApiException when the call fails
+   */
+  public <T> T call(final ApiCall<T> call) throws ApiException {
+    long waitStart = Tracer.getShared().begin();
+    final Permit permit = acquire();
+    Tracer.getShared().end(Tracer.Category.WAIT, "limiter", null, waitStart);
+    boolean success = false;
+    try {
+      T response = call.execute();
+      success = true;
+      return response;
+    } finally {
+      release(permit, success);
+    }
+  }
+
+  /**
+   * Start an asynchronous call once it is allowed, without blocking the caller
+   *
+   * @param call starts the call and returns its future
+   * @param <T>  type of the response
+   * @return a future for the response of the call
+   */
+  public <T> CompletableFuture<T> callAsync(final Supplier<CompletableFuture<T>> call) {
+    return acquireAsync().thenCompose(permit -> {
+      CompletableFuture<T> response;
+      try {
+        response = call.get();
+      } catch (RuntimeException e) {
+        release(permit, false);
+        throw e;
+      }
+      return response.whenComplete((result, e) -> release(permit, e == null));
+    });
+  }
+
+  /**
+   * @return a permit, waiting until one is available
+   */
+  public Permit acquire() {
+    return acquireAsync().join();
+  }
+
+  /**
+   * @return a future completed with a permit once one is available
+   */
+  public CompletableFuture<Permit> acquireAsync() {
+    synchronized (this) {
+      if (waiters.isEmpty() && (inFlight < currentLimit())) {
+        inFlight++;
+        return CompletableFuture.completedFuture(new Permit(clock.getAsLong()));
+      }
+      CompletableFuture<Permit> waiter = new CompletableFuture<>();
+      waiters.add(waiter);
+      return waiter;
+    }
+  }
+
+  /**
+   * Release the permit and adjust the limit from how the call went
+   *
+   * @param permit  permit of the call
+   * @param success false if the call failed
+   */
+  public void release(final Permit permit, final boolean success) {
+    final long now = clock.getAsLong();
+    final long rttNanos = now - permit.startNanos;
+    final List<CompletableFuture<Permit>> granted = new ArrayList<>();
+
+    synchronized (this) {
+      inFlight--;
+      sample(rttNanos);
+
+      boolean overloaded = !success
+        || (smoothedRttNanos > Math.max(LATENCY_TOLERANCE * baselineRttNanos, baselineRttNanos + LATENCY_SLACK_NANOS));
+      if (overloaded) {
+        // Back off at most once per round trip, as all of the calls in flight see the same overload
+        if ((now - lastDecreaseNanos) > smoothedRttNanos) {
+          limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+          lastDecreaseNanos = now;
+        }
+      } else if ((inFlight + 1) * 2 >= currentLimit()) {
+        // Only grow while the limit is actually being used, so an idle limiter does not drift up
+        limit = Math.min(maxLimit, limit + 1.0 / limit);
+      }
+
+      while (!waiters.isEmpty() && (inFlight < currentLimit())) {
+        inFlight++;
+        granted.add(waiters.poll());
+      }
+    }
+
+    // Complete the waiters outside of the lock, as they go on to start their calls
+    for (CompletableFuture<Permit> waiter : granted) {
+      waiter.complete(new Permit(clock.getAsLong()));
+    }
+  }
+
+  /**
+   * Restart the limit from the given value (kept within the min and max limits), for example the configured
+   * concurrency, letting in the waiters it now allows
+   *
+   * @param newLimit number of calls allowed in flight
+   */
+  public void setLimit(final int newLimit) {
+    final List<CompletableFuture<Permit>> granted = new ArrayList<>();
+
+    synchronized (this) {
+      limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+      while (!waiters.isEmpty() && (inFlight < currentLimit())) {
+        inFlight++;
+        granted.add(waiters.poll());
+      }
+    }
+
+    for (CompletableFuture<Permit> waiter : granted) {
+      waiter.complete(new Permit(clock.getAsLong()));
+    }
+  }
+
+  /**
+   * @return the current limit of calls in flight
+   */
+  public synchronized int getLimit() {
+    return currentLimit();
+  }
+
+  /**
+   * @return the number of calls in flight
+   */
+  public synchronized int getInFlight() {
+    return inFlight;
+  }
+
+  /**
+   * @return the smoothed round trip of the calls, in milliseconds
+   */
+  public synchronized double getRttMillis() {
+    return smoothedRttNanos / TimeUnit.MILLISECONDS.toNanos(1);
+  }
+
+  /**
+   * @return the baseline (long-term average) round trip of the calls, in milliseconds
+   */
+  public synchronized double getBaselineRttMillis() {
+    return baselineRttNanos / TimeUnit.MILLISECONDS.toNanos(1);
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format("limit=%d inFlight=%d rtt=%.1fms baselineRtt=%.1fms",
+      currentLimit(), inFlight, getRttMillis(), getBaselineRttMillis());
+  }
+
+  private int currentLimit() {
+    return (int) limit;
+  }
+
+  private void sample(final long rttNanos) {
+    smoothedRttNanos = (smoothedRttNanos == 0.0) ? rttNanos : (1.0 - SMOOTHING) * smoothedRttNanos + SMOOTHING * rttNanos;
+
+    // The plain average of the first samples, then a moving average over about the last window of them
+    if (baselineSamples < BASELINE_WINDOW) {
+      baselineSamples++;
+    }
+    baselineRttNanos += (rttNanos - baselineRttNanos) / baselineSamples;
+    if (baselineRttNanos > LATENCY_TOLERANCE * smoothedRttNanos) {
+      baselineRttNanos = Math.max(smoothedRttNanos, BASELINE_DECAY * baselineRttNanos);
+    }
+  }
+}
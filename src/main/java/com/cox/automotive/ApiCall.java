@@ -0,0 +1,19 @@
+package com.cox.automotive;
+
+import io.swagger.client.ApiException;
+
+/**
+ * A blocking call to one of the APIs, so it can be wrapped (limited, retried, ...) before being executed.
+ *
+ * @param <T> type of the response
+ * @author jeff.snyder
+ */
+@FunctionalInterface
+public interface ApiCall<T> {
+
+  /**
+   * @return the response of the call
+   * @throws ApiException when the call fails
+   */
+  T execute() throws ApiException;
+}
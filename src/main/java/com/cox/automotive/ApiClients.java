@@ -0,0 +1,177 @@
+package com.cox.automotive;
+
+import com.squareup.okhttp.ConnectionPool;
+import com.squareup.okhttp.Dispatcher;
+import com.squareup.okhttp.OkHttpClient;
+import io.swagger.client.ApiClient;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds the single API client shared by every dataset, vehicle and dealer API in the process.
+ * The client and its connection pool are thread safe once configured, so the generated API objects are only
+ * cheap views over it and every request reuses the pooled keep-alive connections.
+ * <p>
+ * Its interceptors and dispatcher are only set up here, when it is created. Callers must not change the shared
+ * client: its interceptor lists are not thread safe, and anything added stays for every later request. In
+ * particular the generated *Async methods must not be given a callback, as they then add a progress interceptor
+ * to the client on every call; the asynchronous calls are built with the generated *Call methods, without
+ * progress listeners, and run with {@link ApiClient#executeAsync}. A call that needs interceptors of its own
+ * goes through a {@code clone()} of the OkHttp client.
+ *
+ * @author jeff.snyder
+ */
+public final class ApiClients {
+
+  public static final int DEFAULT_MAX_IDLE_CONNECTIONS = FetchEngine.DEFAULT_CONCURRENCY;
+  public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = FetchEngine.DEFAULT_CONCURRENCY;
+  public static final long DEFAULT_KEEP_ALIVE_MILLISECONDS = TimeUnit.MINUTES.toMillis(5);
+
+  private static int maxIdleConnections = DEFAULT_MAX_IDLE_CONNECTIONS;
+  private static int maxConnectionsPerHost = DEFAULT_MAX_CONNECTIONS_PER_HOST;
+  private static long keepAliveMilliseconds = DEFAULT_KEEP_ALIVE_MILLISECONDS;
+
+  // Base URL of the API, null for the one the client was generated with
+  private static String basePath;
+
+  // HTTP/2 connections the requests are multiplexed over, 0 for HTTP/1.1
+  private static int http2Connections;
+  private static int http2MaxStreams = Http2Transport.DEFAULT_MAX_STREAMS;
+
+  private static volatile ApiClient apiClient;
+  // Transport of the shared client, null when it uses HTTP/1.1
+  private static Http2Transport transport;
+
+  private ApiClients() {
+  }
+
+  /**
+   * @return the shared API client, created on first use, which is not to be changed
+   */
+  public static ApiClient get() {
+    ApiClient client = apiClient;
+    if (client == null) {
+      synchronized (ApiClients.class) {
+        client = apiClient;
+        if (client == null) {
+          client = create();
+          apiClient = client;
+        }
+      }
+    }
+    return client;
+  }
+
+  /**
+   * Set the connection limits. This should be done before the first request, as a client that was already
+   * created is replaced (its pooled connections are not carried over).
+   *
+   * @param maxIdle    maximum number of idle connections kept alive in the pool
+   * @param maxPerHost maximum number of asynchronous requests in flight to one host
+   */
+  public static synchronized void configure(final int maxIdle, final int maxPerHost) {
+    if (maxIdle < 0) {
+      throw new IllegalArgumentException("Maximum idle connections cannot be negative: " + maxIdle);
+    }
+    if (maxPerHost < 1) {
+      throw new IllegalArgumentException("Maximum connections per host must be at least 1: " + maxPerHost);
+    }
+    maxIdleConnections = maxIdle;
+    maxConnectionsPerHost = maxPerHost;
+    apiClient = null;
+  }
+
+  /**
+   * Point the client at another server (a local stub for example). Like the connection limits, this should be
+   * done before the first request.
+   *
+   * @param path base URL of the API, such as http://localhost:8080
+   */
+  public static synchronized void setBasePath(final String path) {
+    basePath = path;
+    apiClient = null;
+  }
+
+  /**
+   * Multiplex the requests over HTTP/2 connections, when the JVM has an HTTP/2 client (Java 21 or above); on an
+   * older JVM the client stays on HTTP/1.1. Like the connection limits, this should be done before the first request.
+   *
+   * @param connections number of HTTP/2 connections, 0 for HTTP/1.1
+   * @param maxStreams  maximum number of requests in flight on each connection
+   */
+  public static synchronized void configureHttp2(final int connections, final int maxStreams) {
+    if (connections < 0) {
+      throw new IllegalArgumentException("HTTP/2 connections cannot be negative: " + connections);
+    }
+    if (maxStreams < 1) {
+      throw new IllegalArgumentException("HTTP/2 streams per connection must be at least 1: " + maxStreams);
+    }
+    http2Connections = connections;
+    http2MaxStreams = maxStreams;
+    apiClient = null;
+  }
+
+  /**
+   * @return the HTTP/2 transport of the shared client, null when it uses HTTP/1.1
+   */
+  static synchronized Http2Transport getTransport() {
+    get();
+    return transport;
+  }
+
+  public static synchronized int getHttp2Connections() {
+    return http2Connections;
+  }
+
+  public static synchronized int getHttp2MaxStreams() {
+    return http2MaxStreams;
+  }
+
+  public static synchronized int getMaxIdleConnections() {
+    return maxIdleConnections;
+  }
+
+  public static synchronized int getMaxConnectionsPerHost() {
+    return maxConnectionsPerHost;
+  }
+
+  private static ApiClient create() {
+    // Reads and writes the models with the streaming codecs rather than Gson's reflection
+    ApiClient client = new StreamingApiClient();
+    if (basePath != null) {
+      client.setBasePath(basePath);
+    }
+
+    OkHttpClient httpClient = client.getHttpClient();
+    httpClient.setConnectionPool(new ConnectionPool(maxIdleConnections, keepAliveMilliseconds));
+
+    // Counts every request on the wire, retries included
+    httpClient.networkInterceptors().add(new MetricsInterceptor(Metrics.getShared()));
+
+    // Traces every attempt of a call, whichever transport it goes out on
+    httpClient.interceptors().add(new TracingInterceptor(Tracer.getShared()));
+
+    // Takes the requests before OkHttp's own connections, so it counts them in place of the network interceptor
+    transport = null;
+    if (http2Connections > 0) {
+      transport = Http2Transport.create(httpClient, http2Connections, http2MaxStreams, Metrics.getShared());
+      if (transport != null) {
+        httpClient.interceptors().add(transport);
+      } else {
+        System.err.println("HTTP/2 requires Java 21 or above, the requests are sent over HTTP/1.1.");
+      }
+    }
+
+    // Blocking calls are bounded by the fetch window, the dispatcher bounds the asynchronous ones. The HTTP/2
+    // transport holds a dispatcher thread for each asynchronous call until its response arrives, so the limit
+    // is raised to every stream of its connections.
+    int maxRequestsPerHost = (transport != null)
+      ? Math.max(maxConnectionsPerHost, http2Connections * http2MaxStreams) : maxConnectionsPerHost;
+    Dispatcher dispatcher = new Dispatcher();
+    dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+    dispatcher.setMaxRequests(Math.max(dispatcher.getMaxRequests(), maxRequestsPerHost));
+    httpClient.setDispatcher(dispatcher);
+
+    return client;
+  }
+}
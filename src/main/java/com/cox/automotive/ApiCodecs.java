@@ -0,0 +1,470 @@
+package com.cox.automotive;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import io.swagger.client.model.Answer;
+import io.swagger.client.model.AnswerResponse;
+import io.swagger.client.model.DatasetIdResponse;
+import io.swagger.client.model.DealerAnswer;
+import io.swagger.client.model.DealersResponse;
+import io.swagger.client.model.VehicleAnswer;
+import io.swagger.client.model.VehicleIdsResponse;
+import io.swagger.client.model.VehicleResponse;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hand written streaming JSON codecs for the models of the API. They read and write the same JSON as the Gson of
+ * the generated client (unknown fields skipped, null fields left out, numbers and booleans accepted as strings), but
+ * straight from and to the stream, with no reflection and no intermediate string.
+ *
+ * @author jeff.snyder
+ */
+public final class ApiCodecs {
+
+  /**
+   * Reads and writes one model
+   *
+   * @param <T> type of the model
+   */
+  public interface Codec<T> {
+
+    /**
+     * @param reader reader positioned at the model
+     * @return the model, or null for a JSON null
+     */
+    T read(JsonReader reader) throws IOException;
+
+    /**
+     * @param writer where the model is written
+     * @param value  model to write (null writes a JSON null)
+     */
+    void write(JsonWriter writer, T value) throws IOException;
+  }
+
+  public static final Codec<DatasetIdResponse> DATASET_ID_RESPONSE = new Codec<DatasetIdResponse>() {
+    @Override
+    public DatasetIdResponse read(final JsonReader reader) throws IOException {
+      if (readNull(reader)) {
+        return null;
+      }
+      DatasetIdResponse response = new DatasetIdResponse();
+      reader.beginObject();
+      while (reader.hasNext()) {
+        if ("datasetId".equals(reader.nextName())) {
+          response.setDatasetId(readString(reader));
+        } else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+      return response;
+    }
+
+    @Override
+    public void write(final JsonWriter writer, final DatasetIdResponse value) throws IOException {
+      if (writeNull(writer, value)) {
+        return;
+      }
+      writer.beginObject();
+      writeString(writer, "datasetId", value.getDatasetId());
+      writer.endObject();
+    }
+  };
+
+  public static final Codec<VehicleIdsResponse> VEHICLE_IDS_RESPONSE = new Codec<VehicleIdsResponse>() {
+    @Override
+    public VehicleIdsResponse read(final JsonReader reader) throws IOException {
+      if (readNull(reader)) {
+        return null;
+      }
+      VehicleIdsResponse response = new VehicleIdsResponse();
+      reader.beginObject();
+      while (reader.hasNext()) {
+        if ("vehicleIds".equals(reader.nextName())) {
+          response.setVehicleIds(readIntegers(reader));
+        } else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+      return response;
+    }
+
+    @Override
+    public void write(final JsonWriter writer, final VehicleIdsResponse value) throws IOException {
+      if (writeNull(writer, value)) {
+        return;
+      }
+      writer.beginObject();
+      if (value.getVehicleIds() != null) {
+        writer.name("vehicleIds").beginArray();
+        for (Integer vehicleId : value.getVehicleIds()) {
+          writer.value(vehicleId);
+        }
+        writer.endArray();
+      }
+      writer.endObject();
+    }
+  };
+
+  public static final Codec<VehicleResponse> VEHICLE_RESPONSE = new Codec<VehicleResponse>() {
+    @Override
+    public VehicleResponse read(final JsonReader reader) throws IOException {
+      if (readNull(reader)) {
+        return null;
+      }
+      VehicleResponse response = new VehicleResponse();
+      reader.beginObject();
+      while (reader.hasNext()) {
+        switch (reader.nextName()) {
+          case "vehicleId": response.setVehicleId(readInteger(reader)); break;
+          case "year": response.setYear(readInteger(reader)); break;
+          case "make": response.setMake(readString(reader)); break;
+          case "model": response.setModel(readString(reader)); break;
+          case "dealerId": response.setDealerId(readInteger(reader)); break;
+          default: reader.skipValue();
+        }
+      }
+      reader.endObject();
+      return response;
+    }
+
+    @Override
+    public void write(final JsonWriter writer, final VehicleResponse value) throws IOException {
+      if (writeNull(writer, value)) {
+        return;
+      }
+      writer.beginObject();
+      writeInteger(writer, "vehicleId", value.getVehicleId());
+      writeInteger(writer, "year", value.getYear());
+      writeString(writer, "make", value.getMake());
+      writeString(writer, "model", value.getModel());
+      writeInteger(writer, "dealerId", value.getDealerId());
+      writer.endObject();
+    }
+  };
+
+  public static final Codec<DealersResponse> DEALERS_RESPONSE = new Codec<DealersResponse>() {
+    @Override
+    public DealersResponse read(final JsonReader reader) throws IOException {
+      if (readNull(reader)) {
+        return null;
+      }
+      DealersResponse response = new DealersResponse();
+      reader.beginObject();
+      while (reader.hasNext()) {
+        switch (reader.nextName()) {
+          case "dealerId": response.setDealerId(readInteger(reader)); break;
+          case "name": response.setName(readString(reader)); break;
+          default: reader.skipValue();
+        }
+      }
+      reader.endObject();
+      return response;
+    }
+
+    @Override
+    public void write(final JsonWriter writer, final DealersResponse value) throws IOException {
+      if (writeNull(writer, value)) {
+        return;
+      }
+      writer.beginObject();
+      writeInteger(writer, "dealerId", value.getDealerId());
+      writeString(writer, "name", value.getName());
+      writer.endObject();
+    }
+  };
+
+  public static final Codec<VehicleAnswer> VEHICLE_ANSWER = new Codec<VehicleAnswer>() {
+    @Override
+    public VehicleAnswer read(final JsonReader reader) throws IOException {
+      if (readNull(reader)) {
+        return null;
+      }
+      VehicleAnswer answer = new VehicleAnswer();
+      reader.beginObject();
+      while (reader.hasNext()) {
+        switch (reader.nextName()) {
+          case "vehicleId": answer.setVehicleId(readInteger(reader)); break;
+          case "year": answer.setYear(readInteger(reader)); break;
+          case "make": answer.setMake(readString(reader)); break;
+          case "model": answer.setModel(readString(reader)); break;
+          default: reader.skipValue();
+        }
+      }
+      reader.endObject();
+      return answer;
+    }
+
+    @Override
+    public void write(final JsonWriter writer, final VehicleAnswer value) throws IOException {
+      if (writeNull(writer, value)) {
+        return;
+      }
+      writer.beginObject();
+      writeInteger(writer, "vehicleId", value.getVehicleId());
+      writeInteger(writer, "year", value.getYear());
+      writeString(writer, "make", value.getMake());
+      writeString(writer, "model", value.getModel());
+      writer.endObject();
+    }
+  };
+
+  public static final Codec<DealerAnswer> DEALER_ANSWER = new Codec<DealerAnswer>() {
+    @Override
+    public DealerAnswer read(final JsonReader reader) throws IOException {
+      if (readNull(reader)) {
+        return null;
+      }
+      DealerAnswer answer = new DealerAnswer();
+      reader.beginObject();
+      while (reader.hasNext()) {
+        switch (reader.nextName()) {
+          case "dealerId": answer.setDealerId(readInteger(reader)); break;
+          case "name": answer.setName(readString(reader)); break;
+          case "vehicles": answer.setVehicles(readList(reader, VEHICLE_ANSWER)); break;
+          default: reader.skipValue();
+        }
+      }
+      reader.endObject();
+      return answer;
+    }
+
+    @Override
+    public void write(final JsonWriter writer, final DealerAnswer value) throws IOException {
+      if (writeNull(writer, value)) {
+        return;
+      }
+      writer.beginObject();
+      writeInteger(writer, "dealerId", value.getDealerId());
+      writeString(writer, "name", value.getName());
+      writeList(writer, "vehicles", value.getVehicles(), VEHICLE_ANSWER);
+      writer.endObject();
+    }
+  };
+
+  public static final Codec<Answer> ANSWER = new Codec<Answer>() {
+    @Override
+    public Answer read(final JsonReader reader) throws IOException {
+      if (readNull(reader)) {
+        return null;
+      }
+      Answer answer = new Answer();
+      reader.beginObject();
+      while (reader.hasNext()) {
+        if ("dealers".equals(reader.nextName())) {
+          answer.setDealers(readList(reader, DEALER_ANSWER));
+        } else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+      return answer;
+    }
+
+    @Override
+    public void write(final JsonWriter writer, final Answer value) throws IOException {
+      if (writeNull(writer, value)) {
+        return;
+      }
+      writer.beginObject();
+      writeList(writer, "dealers", value.getDealers(), DEALER_ANSWER);
+      writer.endObject();
+    }
+  };
+
+  public static final Codec<AnswerResponse> ANSWER_RESPONSE = new Codec<AnswerResponse>() {
+    @Override
+    public AnswerResponse read(final JsonReader reader) throws IOException {
+      if (readNull(reader)) {
+        return null;
+      }
+      AnswerResponse response = new AnswerResponse();
+      reader.beginObject();
+      while (reader.hasNext()) {
+        switch (reader.nextName()) {
+          case "success": response.setSuccess(readBoolean(reader)); break;
+          case "message": response.setMessage(readString(reader)); break;
+          case "totalMilliseconds": response.setTotalMilliseconds(readInteger(reader)); break;
+          default: reader.skipValue();
+        }
+      }
+      reader.endObject();
+      return response;
+    }
+
+    @Override
+    public void write(final JsonWriter writer, final AnswerResponse value) throws IOException {
+      if (writeNull(writer, value)) {
+        return;
+      }
+      writer.beginObject();
+      if (value.isSuccess() != null) {
+        writer.name("success").value(value.isSuccess());
+      }
+      writeString(writer, "message", value.getMessage());
+      writeInteger(writer, "totalMilliseconds", value.getTotalMilliseconds());
+      writer.endObject();
+    }
+  };
+
+  private static final Map<Type, Codec<?>> CODECS = new HashMap<>();
+
+  static {
+    CODECS.put(DatasetIdResponse.class, DATASET_ID_RESPONSE);
+    CODECS.put(VehicleIdsResponse.class, VEHICLE_IDS_RESPONSE);
+    CODECS.put(VehicleResponse.class, VEHICLE_RESPONSE);
+    CODECS.put(DealersResponse.class, DEALERS_RESPONSE);
+    CODECS.put(VehicleAnswer.class, VEHICLE_ANSWER);
+    CODECS.put(DealerAnswer.class, DEALER_ANSWER);
+    CODECS.put(Answer.class, ANSWER);
+    CODECS.put(AnswerResponse.class, ANSWER_RESPONSE);
+  }
+
+  private ApiCodecs() {
+  }
+
+  /**
+   * @param type type of a model
+   * @return the codec of the model, or null if it has none
+   */
+  @SuppressWarnings("unchecked")
+  public static <T> Codec<T> forType(final Type type) {
+    return (Codec<T>) CODECS.get(type);
+  }
+
+  /**
+   * Read a whole document, leniently like the generated client does
+   *
+   * @param in    the JSON
+   * @param codec codec of the model
+   * @return the model, or null for an empty document or a JSON null
+   */
+  public static <T> T read(final Reader in, final Codec<T> codec) throws IOException {
+    JsonReader reader = new JsonReader(in);
+    reader.setLenient(true);
+    try {
+      reader.peek();
+    } catch (EOFException e) {
+      return null;
+    }
+    return codec.read(reader);
+  }
+
+  /**
+   * Write a whole document
+   *
+   * @param out   where the JSON is written (flushed, not closed)
+   * @param codec codec of the model
+   * @param value model to write
+   */
+  public static <T> void write(final Writer out, final Codec<T> codec, final T value) throws IOException {
+    JsonWriter writer = new JsonWriter(out);
+    // Gson escapes the HTML characters too
+    writer.setHtmlSafe(true);
+    codec.write(writer, value);
+    writer.flush();
+  }
+
+  /**
+   * Write a number unless it is null, as the generated client leaves null fields out
+   */
+  static void writeInteger(final JsonWriter writer, final String name, final Integer value) throws IOException {
+    if (value != null) {
+      writer.name(name).value(value);
+    }
+  }
+
+  /**
+   * Write a string unless it is null, as the generated client leaves null fields out
+   */
+  static void writeString(final JsonWriter writer, final String name, final String value) throws IOException {
+    if (value != null) {
+      writer.name(name).value(value);
+    }
+  }
+
+  private static <T> void writeList(final JsonWriter writer, final String name, final List<T> values,
+                                    final Codec<T> codec) throws IOException {
+    if (values == null) {
+      return;
+    }
+    writer.name(name).beginArray();
+    for (T value : values) {
+      codec.write(writer, value);
+    }
+    writer.endArray();
+  }
+
+  private static boolean writeNull(final JsonWriter writer, final Object value) throws IOException {
+    if (value == null) {
+      writer.nullValue();
+      return true;
+    }
+    return false;
+  }
+
+  private static boolean readNull(final JsonReader reader) throws IOException {
+    if (reader.peek() == JsonToken.NULL) {
+      reader.nextNull();
+      return true;
+    }
+    return false;
+  }
+
+  private static Integer readInteger(final JsonReader reader) throws IOException {
+    return readNull(reader) ? null : reader.nextInt();
+  }
+
+  private static String readString(final JsonReader reader) throws IOException {
+    if (readNull(reader)) {
+      return null;
+    }
+    // Like Gson, a boolean is read as its text (numbers already are)
+    return (reader.peek() == JsonToken.BOOLEAN) ? Boolean.toString(reader.nextBoolean()) : reader.nextString();
+  }
+
+  private static Boolean readBoolean(final JsonReader reader) throws IOException {
+    if (readNull(reader)) {
+      return null;
+    }
+    // Like Gson, a string is read as a boolean when it is "true" (in any case)
+    return (reader.peek() == JsonToken.STRING) ? Boolean.parseBoolean(reader.nextString()) : reader.nextBoolean();
+  }
+
+  private static List<Integer> readIntegers(final JsonReader reader) throws IOException {
+    if (readNull(reader)) {
+      return null;
+    }
+    List<Integer> values = new ArrayList<>();
+    reader.beginArray();
+    while (reader.hasNext()) {
+      values.add(readInteger(reader));
+    }
+    reader.endArray();
+    return values;
+  }
+
+  private static <T> List<T> readList(final JsonReader reader, final Codec<T> codec) throws IOException {
+    if (readNull(reader)) {
+      return null;
+    }
+    List<T> values = new ArrayList<>();
+    reader.beginArray();
+    while (reader.hasNext()) {
+      values.add(codec.read(reader));
+    }
+    reader.endArray();
+    return values;
+  }
+}
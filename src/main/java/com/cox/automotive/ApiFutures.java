@@ -0,0 +1,81 @@
+package com.cox.automotive;
+
+import io.swagger.client.ApiCallback;
+import io.swagger.client.ApiException;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Adapts the callback based asynchronous API methods to futures, so the calls can be composed without
+ * a thread waiting on each request.
+ *
+ * @author jeff.snyder
+ */
+final class ApiFutures {
+
+  /**
+   * Starts an asynchronous API call with the given callback
+   *
+   * @param <T> type of the response
+   */
+  interface AsyncCall<T> {
+    void start(ApiCallback<T> callback) throws ApiException;
+  }
+
+  /**
+   * Checks a response, throwing if it is not valid
+   *
+   * @param <T> type of the response
+   */
+  interface ResponseCheck<T> {
+    T check(T response) throws ApiException;
+  }
+
+  private ApiFutures() {
+  }
+
+  /**
+   * Start the call and return a future for its checked response
+   *
+   * @param call           asynchronous call to be started
+   * @param check          validation of the response
+   * @param failureMessage message of the runtime exception the future fails with
+   * @param <T>            type of the response
+   * @return a future completed with the checked response, or failed with a runtime exception
+   */
+  static <T> CompletableFuture<T> call(final AsyncCall<T> call, final ResponseCheck<T> check, final String failureMessage) {
+    final CompletableFuture<T> future = new CompletableFuture<>();
+    try {
+      call.start(new ApiCallback<T>() {
+        @Override
+        public void onFailure(ApiException e, int statusCode, Map<String, List<String>> responseHeaders) {
+          future.completeExceptionally(new RuntimeException(failureMessage, e));
+        }
+
+        @Override
+        public void onSuccess(T result, int statusCode, Map<String, List<String>> responseHeaders) {
+          try {
+            future.complete(check.check(result));
+          } catch (ApiException e) {
+            future.completeExceptionally(new RuntimeException(failureMessage, e));
+          } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+          }
+        }
+
+        @Override
+        public void onUploadProgress(long bytesWritten, long contentLength, boolean done) {
+        }
+
+        @Override
+        public void onDownloadProgress(long bytesRead, long contentLength, boolean done) {
+        }
+      });
+    } catch (ApiException e) {
+      future.completeExceptionally(new RuntimeException(failureMessage, e));
+    }
+    return future;
+  }
+}
@@ -0,0 +1,141 @@
+package com.cox.automotive;
+
+import io.swagger.client.model.AnswerResponse;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The results of processing several datasets in one run, with the aggregate throughput.
+ *
+ * @author jeff.snyder
+ */
+public class BatchResult {
+
+  private final List<DatasetResult> datasetResults;
+  private final long elapsedMillis;
+
+  /**
+   * @param datasetResults results of each dataset, in the order they were requested
+   * @param elapsedMillis  wall time for the whole batch
+   */
+  public BatchResult(final List<DatasetResult> datasetResults, final long elapsedMillis) {
+    this.datasetResults = Collections.unmodifiableList(new ArrayList<>(datasetResults));
+    this.elapsedMillis = elapsedMillis;
+  }
+
+  public List<DatasetResult> getDatasetResults() {
+    return datasetResults;
+  }
+
+  public long getElapsedMillis() {
+    return elapsedMillis;
+  }
+
+  /**
+   * @return the number of datasets whose answer was accepted
+   */
+  public int getSuccessCount() {
+    int count = 0;
+    for (DatasetResult datasetResult : datasetResults) {
+      if (datasetResult.isSuccess()) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * @return the number of vehicles fetched over all of the datasets
+   */
+  public long getVehicleCount() {
+    long count = 0;
+    for (DatasetResult datasetResult : datasetResults) {
+      count += datasetResult.getVehicleCount();
+    }
+    return count;
+  }
+
+  public double getDatasetsPerSecond() {
+    return perSecond(datasetResults.size());
+  }
+
+  public double getVehiclesPerSecond() {
+    return perSecond(getVehicleCount());
+  }
+
+  private double perSecond(final long count) {
+    return (count * 1000.0) / Math.max(1, elapsedMillis);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("Processed %d datasets (%d successful, %d vehicles) in %d ms: %.1f datasets/s, %.1f vehicles/s",
+      datasetResults.size(), getSuccessCount(), getVehicleCount(), elapsedMillis, getDatasetsPerSecond(), getVehiclesPerSecond());
+  }
+
+  /**
+   * The outcome of one dataset in the batch: either the response to its answer or the failure that stopped it.
+   */
+  public static class DatasetResult {
+
+    private final String datasetId;
+    private final int vehicleCount;
+    private final AnswerResponse answerResponse;
+    private final RuntimeException failure;
+    private final long elapsedMillis;
+
+    /**
+     * @param datasetId      dataset that was processed (null if a new one could not be obtained)
+     * @param vehicleCount   number of vehicles fetched
+     * @param answerResponse response to the answer, null if the dataset failed
+     * @param failure        reason the dataset failed, null if the answer was submitted
+     * @param elapsedMillis  wall time from getting the dataset to the response to its answer
+     */
+    public DatasetResult(final String datasetId, final int vehicleCount, final AnswerResponse answerResponse,
+                         final RuntimeException failure, final long elapsedMillis) {
+      this.datasetId = datasetId;
+      this.vehicleCount = vehicleCount;
+      this.answerResponse = answerResponse;
+      this.failure = failure;
+      this.elapsedMillis = elapsedMillis;
+    }
+
+    public String getDatasetId() {
+      return datasetId;
+    }
+
+    public int getVehicleCount() {
+      return vehicleCount;
+    }
+
+    public AnswerResponse getAnswerResponse() {
+      return answerResponse;
+    }
+
+    public RuntimeException getFailure() {
+      return failure;
+    }
+
+    public long getElapsedMillis() {
+      return elapsedMillis;
+    }
+
+    /**
+     * @return true if the answer was submitted and accepted
+     */
+    public boolean isSuccess() {
+      return (failure == null) && (answerResponse != null) && Boolean.TRUE.equals(answerResponse.isSuccess());
+    }
+
+    @Override
+    public String toString() {
+      if (failure != null) {
+        return datasetId + ": Unable to process dataset: " + failure.getMessage();
+      }
+      return datasetId + ": " + answerResponse.getMessage() + " " + answerResponse.getTotalMilliseconds()
+        + " ms (" + vehicleCount + " vehicles, " + elapsedMillis + " ms wall time)";
+    }
+  }
+}
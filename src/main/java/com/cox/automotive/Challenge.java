@@ -1,8 +1,24 @@
 package com.cox.automotive;
 
+import io.swagger.client.model.AnswerResponse;
 import io.swagger.client.model.DealerAnswer;
 
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Runs the challenge to get the dealers and their vehicles from a given dataset.
@@ -11,27 +27,622 @@ import java.util.List;
  */
 public class Challenge {
 
+  public static final int DEFAULT_PARALLEL_DATASETS = 4;
+  public static final String DEFAULT_CACHE_FILE = "challenge.cache";
+  public static final long DEFAULT_CHECKPOINT_MILLIS = 1000L;
+
+  // Maximum number of vehicle fetches in flight at the same time
+  private int concurrency = FetchEngine.DEFAULT_CONCURRENCY;
+
+  // How the vehicle and dealer requests are executed
+  private FetchMode fetchMode = FetchMode.BLOCKING;
+
+  // Maximum number of attempts for each API call, and whether slow calls are hedged
+  private int maxAttempts = RetryPolicy.DEFAULT_MAX_ATTEMPTS;
+  private boolean hedging;
+
+  // Time allowed for processing a dataset (0 for no deadline)
+  private long deadlineMillis;
+
+  // Start fetching the vehicles as their ids are read, rather than once the whole list has been received
+  private boolean streamingIds;
+
+  // Write the answer to the request as it is sent (optionally compressed), rather than serializing it in memory
+  private boolean streamingAnswer;
+  private boolean gzipAnswer;
+
+  // Print the run statistics (to standard error, so the answer output is unchanged)
+  private boolean verbose;
+
+  // Datasets to process in one run: the given ids, or a number of new datasets (null and 0 for a single new one)
+  private List<String> datasetIds;
+  private int datasetCount;
+
+  // Maximum number of datasets processed at the same time in a batch
+  private int parallelDatasets = DEFAULT_PARALLEL_DATASETS;
+
+  // File of the vehicle and dealer responses received by earlier runs (null for no cache)
+  private Path cacheFile;
+
+  // Dataset whose earlier run is finished from the cache rather than requesting a new one (null for none)
+  private String resumeDatasetId;
+
+  // How often the cache is written to the disk
+  private long checkpointMillis = DEFAULT_CHECKPOINT_MILLIS;
+
+  // Dealer names kept in memory for the other datasets of the run (0 for no dealer cache), and for how long
+  private int dealerCacheSize;
+  private long dealerCacheTtlMillis = DealerCache.DEFAULT_TTL_MILLIS;
+
+  // Reuse the dealer names across datasets once they are verified stable
+  private boolean sharingDealers;
+
+  // Connections opened while the dataset id is requested, along with the rest of the warmup (0 for no warmup)
+  private int warmupConnections;
+
+  // File the metrics of the API calls are written to at the end of the run (null for none)
+  private Path metricsFile;
+
+  // Port the metrics are served on while the run is going (-1 for none, 0 for any free port)
+  private int metricsPort = -1;
+
+  // File the trace of the run is written to, with the critical path of each dataset (null for no tracing)
+  private Path traceFile;
+
   public static void main(String args[]) {
     Challenge challenge = new Challenge();
     try {
-      challenge.processDataset();
+      challenge.parseArguments(args);
+      if (challenge.isBatch()) {
+        BatchResult batchResult = challenge.processDatasets();
+        for (BatchResult.DatasetResult datasetResult : batchResult.getDatasetResults()) {
+          System.out.println(datasetResult);
+        }
+        System.out.println(batchResult);
+      } else {
+        AnswerResponse answerResponse = challenge.processDataset();
+        System.out.println(answerResponse.getMessage());
+        System.out.println(answerResponse.getTotalMilliseconds());
+      }
     } catch (RuntimeException e) {
       System.out.println("Unable to run challenge: " + e.getMessage());
     }
   }
 
   /**
-   * Process a dataset and submit the response
+   * Apply the command line arguments
+   *
+   * @param args command line arguments
+   */
+  void parseArguments(final String[] args) {
+    for (int i = 0; i < args.length; i++) {
+      String arg = args[i];
+      if ("-c".equals(arg) || "--concurrency".equals(arg)) {
+        setConcurrency(parseInt(arg, nextArgument(args, ++i, arg)));
+      } else if ("-m".equals(arg) || "--mode".equals(arg)) {
+        setFetchMode(FetchMode.parse(nextArgument(args, ++i, arg)));
+      } else if ("--attempts".equals(arg)) {
+        maxAttempts = parseInt(arg, nextArgument(args, ++i, arg));
+      } else if ("--hedge".equals(arg)) {
+        hedging = true;
+      } else if ("--deadline".equals(arg)) {
+        deadlineMillis = parseInt(arg, nextArgument(args, ++i, arg));
+      } else if ("--stream-ids".equals(arg)) {
+        streamingIds = true;
+      } else if ("--stream-answer".equals(arg)) {
+        streamingAnswer = true;
+      } else if ("--gzip-answer".equals(arg)) {
+        streamingAnswer = true;
+        gzipAnswer = true;
+      } else if ("-v".equals(arg) || "--verbose".equals(arg)) {
+        verbose = true;
+      } else if ("--datasets".equals(arg)) {
+        setDatasetIds(Arrays.asList(nextArgument(args, ++i, arg).split(",")));
+      } else if ("--count".equals(arg)) {
+        setDatasetCount(parseInt(arg, nextArgument(args, ++i, arg)));
+      } else if ("--parallel-datasets".equals(arg)) {
+        setParallelDatasets(parseInt(arg, nextArgument(args, ++i, arg)));
+      } else if ("--cache".equals(arg)) {
+        cacheFile = Paths.get(nextArgument(args, ++i, arg));
+      } else if ("--resume".equals(arg)) {
+        resumeDatasetId = nextArgument(args, ++i, arg);
+      } else if ("--checkpoint".equals(arg)) {
+        checkpointMillis = parseInt(arg, nextArgument(args, ++i, arg));
+        if (checkpointMillis < 1) {
+          throw new IllegalArgumentException("Checkpoint interval must be at least 1: " + checkpointMillis);
+        }
+      } else if ("--dealer-cache".equals(arg)) {
+        dealerCacheSize = parseInt(arg, nextArgument(args, ++i, arg));
+      } else if ("--dealer-cache-ttl".equals(arg)) {
+        dealerCacheTtlMillis = parseInt(arg, nextArgument(args, ++i, arg));
+      } else if ("--share-dealers".equals(arg)) {
+        sharingDealers = true;
+      } else if ("--warmup".equals(arg)) {
+        warmupConnections = parseInt(arg, nextArgument(args, ++i, arg));
+        if (warmupConnections < 1) {
+          throw new IllegalArgumentException("Warmup connections must be at least 1: " + warmupConnections);
+        }
+      } else if ("--metrics".equals(arg)) {
+        metricsFile = Paths.get(nextArgument(args, ++i, arg));
+      } else if ("--metrics-port".equals(arg)) {
+        metricsPort = parseInt(arg, nextArgument(args, ++i, arg));
+        if (metricsPort < 0) {
+          throw new IllegalArgumentException("Metrics port must be at least 0: " + metricsPort);
+        }
+      } else if ("--trace".equals(arg)) {
+        traceFile = Paths.get(nextArgument(args, ++i, arg));
+      } else if ("--base-path".equals(arg)) {
+        ApiClients.setBasePath(nextArgument(args, ++i, arg));
+      } else if ("--max-idle-connections".equals(arg)) {
+        ApiClients.configure(parseInt(arg, nextArgument(args, ++i, arg)), ApiClients.getMaxConnectionsPerHost());
+      } else if ("--max-connections-per-host".equals(arg)) {
+        ApiClients.configure(ApiClients.getMaxIdleConnections(), parseInt(arg, nextArgument(args, ++i, arg)));
+      } else if ("--http2".equals(arg)) {
+        ApiClients.configureHttp2(getHttp2Connections(), ApiClients.getHttp2MaxStreams());
+      } else if ("--http2-connections".equals(arg)) {
+        int connections = parseInt(arg, nextArgument(args, ++i, arg));
+        if (connections < 1) {
+          throw new IllegalArgumentException("HTTP/2 connections must be at least 1: " + connections);
+        }
+        ApiClients.configureHttp2(connections, ApiClients.getHttp2MaxStreams());
+      } else if ("--http2-streams".equals(arg)) {
+        ApiClients.configureHttp2(getHttp2Connections(), parseInt(arg, nextArgument(args, ++i, arg)));
+      } else {
+        throw new IllegalArgumentException("Unknown argument: " + arg);
+      }
+    }
+    if ((resumeDatasetId != null) && isBatch()) {
+      throw new IllegalArgumentException("--resume finishes a single dataset and cannot be used with --datasets or --count.");
+    }
+  }
+
+  /**
+   * @return the HTTP/2 connections already configured, or the default number when HTTP/2 is being turned on
+   */
+  private static int getHttp2Connections() {
+    int connections = ApiClients.getHttp2Connections();
+    return (connections > 0) ? connections : Http2Transport.DEFAULT_CONNECTIONS;
+  }
+
+  /**
+   * @return the maximum number of vehicle fetches in flight at the same time
    */
-  private void processDataset() {
+  public int getConcurrency() {
+    return concurrency;
+  }
+
+  /**
+   * @param concurrency the maximum number of vehicle fetches in flight at the same time
+   */
+  public void setConcurrency(final int concurrency) {
+    if (concurrency < 1) {
+      throw new IllegalArgumentException("Concurrency must be at least 1: " + concurrency);
+    }
+    this.concurrency = concurrency;
+  }
+
+  public FetchMode getFetchMode() {
+    return fetchMode;
+  }
+
+  public void setFetchMode(final FetchMode fetchMode) {
+    this.fetchMode = fetchMode;
+  }
+
+  public List<String> getDatasetIds() {
+    return datasetIds;
+  }
+
+  /**
+   * @param datasetIds existing datasets to process in one run
+   */
+  public void setDatasetIds(final List<String> datasetIds) {
+    List<String> ids = new ArrayList<>();
+    for (String datasetId : datasetIds) {
+      if (!datasetId.trim().isEmpty()) {
+        ids.add(datasetId.trim());
+      }
+    }
+    if (ids.isEmpty()) {
+      throw new IllegalArgumentException("At least one dataset id is required.");
+    }
+    this.datasetIds = ids;
+    this.datasetCount = 0;
+  }
+
+  public int getDatasetCount() {
+    return datasetCount;
+  }
+
+  /**
+   * @param datasetCount number of new datasets to request and process in one run
+   */
+  public void setDatasetCount(final int datasetCount) {
+    if (datasetCount < 1) {
+      throw new IllegalArgumentException("Dataset count must be at least 1: " + datasetCount);
+    }
+    this.datasetCount = datasetCount;
+    this.datasetIds = null;
+  }
+
+  public int getParallelDatasets() {
+    return parallelDatasets;
+  }
+
+  /**
+   * @param parallelDatasets maximum number of datasets processed at the same time in a batch
+   */
+  public void setParallelDatasets(final int parallelDatasets) {
+    if (parallelDatasets < 1) {
+      throw new IllegalArgumentException("Parallel datasets must be at least 1: " + parallelDatasets);
+    }
+    this.parallelDatasets = parallelDatasets;
+  }
+
+  /**
+   * @return true if several datasets (or given ones) are to be processed rather than a single new one
+   */
+  public boolean isBatch() {
+    return (datasetIds != null) || (datasetCount > 0);
+  }
+
+  /**
+   * Process a dataset (a new one, or the one being resumed) and submit the response
+   *
+   * @return the response to the answer
+   */
+  public AnswerResponse processDataset() {
+
+    try (Run run = new Run(false)) {
+      // The deadline covers the request of the dataset id too
+      final Deadline deadline = newDeadline();
+      String datasetId = (resumeDatasetId != null) ? resumeDatasetId : new Dataset().getDatasetId();
+      if (run.responseCache != null) {
+        // Printed before any vehicle is fetched, so a run that is killed can still be resumed
+        System.err.println("Dataset " + datasetId + " can be resumed with: --resume " + datasetId);
+      }
+      AnswerResponse answerResponse = processDataset(datasetId, run, deadline).getAnswerResponse();
+
+      if (verbose) {
+        run.printStatistics();
+      }
+      return answerResponse;
+    }
+  }
+
+  /**
+   * Process the given datasets, or the number of new ones, in one run. The datasets share the connection pool,
+   * the fetch engine (so the concurrency is a global cap, handed out fairly between the datasets), the API limiter
+   * and the retry policy. A dataset that fails does not stop the others.
+   *
+   * @return the result of each dataset and the aggregate throughput
+   */
+  public BatchResult processDatasets() {
+    final List<String> requestedIds = (datasetIds != null) ? datasetIds : Collections.<String>nCopies(Math.max(1, datasetCount), null);
+    final ExecutorService datasetExecutor = Executors.newFixedThreadPool(Math.min(parallelDatasets, requestedIds.size()),
+      FetchEngine.threadFactory("dataset"));
+
+    long start = System.nanoTime();
+    List<BatchResult.DatasetResult> datasetResults = new ArrayList<>(requestedIds.size());
+    try (Run run = new Run(true)) {
+      List<Future<BatchResult.DatasetResult>> futures = new ArrayList<>(requestedIds.size());
+      for (String requestedId : requestedIds) {
+        futures.add(datasetExecutor.submit(() -> processBatchDataset(requestedId, run)));
+      }
+      for (Future<BatchResult.DatasetResult> future : futures) {
+        datasetResults.add(future.get());
+      }
+      BatchResult batchResult = new BatchResult(datasetResults, elapsedMillis(start));
+
+      if (verbose) {
+        run.printStatistics();
+      }
+      return batchResult;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while processing the datasets.", e);
+    } catch (ExecutionException e) {
+      throw FetchEngine.propagate(e);
+    } finally {
+      datasetExecutor.shutdownNow();
+    }
+  }
+
+  /**
+   * Process one dataset of a batch, capturing its failure rather than throwing it
+   *
+   * @param requestedId dataset to process, or null to request a new one
+   * @param run         what is shared with the other datasets
+   */
+  private BatchResult.DatasetResult processBatchDataset(final String requestedId, final Run run) {
+    long start = System.nanoTime();
+    final Deadline deadline = newDeadline();
+    String datasetId = requestedId;
+    try {
+      if (datasetId == null) {
+        datasetId = new Dataset().getDatasetId();
+      }
+      return processDataset(datasetId, run, deadline);
+    } catch (RuntimeException e) {
+      return new BatchResult.DatasetResult(datasetId, 0, null, e, elapsedMillis(start));
+    }
+  }
+
+  /**
+   * Get the vehicles and dealers of a dataset and submit the answer, printing its critical path when traced
+   *
+   * @param datasetId dataset to process
+   * @param run       what is shared with the other datasets of the run
+   * @param deadline  time allowed for the dataset, started before its id was requested
+   * @return the response to the answer, with the number of vehicles and the wall time
+   */
+  private BatchResult.DatasetResult processDataset(final String datasetId, final Run run, final Deadline deadline) {
+    final Tracer tracer = Tracer.getShared();
+    final long traceStart = tracer.begin();
+    try {
+      return fetchAndAnswer(datasetId, run, deadline);
+    } finally {
+      tracer.end(Tracer.Category.PHASE, Tracer.DATASET_PHASE, datasetId, traceStart);
+      if (traceStart != 0L) {
+        System.err.println("Critical path of " + datasetId + ": " + tracer.getCriticalPath(datasetId));
+      }
+    }
+  }
+
+  /**
+   * Get the vehicles and dealers of a dataset and submit the answer
+   *
+   * @param datasetId dataset to process
+   * @param run       what is shared with the other datasets of the run
+   * @param deadline  time allowed for the dataset
+   * @return the response to the answer, with the number of vehicles and the wall time
+   */
+  private BatchResult.DatasetResult fetchAndAnswer(final String datasetId, final Run run, final Deadline deadline) {
+    long start = System.nanoTime();
 
     final Dataset dataset = new Dataset();
+    dataset.setRetryPolicy(run.answerRetryPolicy);
+    dataset.setDeadline(deadline);
     final Vehicles vehicles = new Vehicles();
+    vehicles.setConcurrency(concurrency);
+    vehicles.setFetchMode(fetchMode);
+    vehicles.setRetryPolicy(run.retryPolicy);
+    vehicles.setDeadline(deadline);
+    vehicles.setSharedFetchEngine(run.fetchEngine);
+    vehicles.setResponseCache(run.responseCache);
+    vehicles.setDealerCache(run.dealerCache);
+
+    final Tracer tracer = Tracer.getShared();
+    final AnswerResponse answerResponse;
+    final int vehicleCount;
+    if (streamingIds) {
+      try (VehicleIdStream vehicleIds = vehicles.streamVehicleIds(datasetId)) {
+        answerResponse = answerDataset(dataset, vehicles, datasetId, vehicleIds);
+        vehicleCount = vehicleIds.getCount();
+      }
+    } else {
+      long idsStart = tracer.begin();
+      final List<Integer> vehicleIds;
+      try {
+        vehicleIds = vehicles.getVehicleIds(datasetId);
+      } finally {
+        tracer.end(Tracer.Category.PHASE, "vehicle ids", datasetId, idsStart);
+      }
+      answerResponse = answerDataset(dataset, vehicles, datasetId, vehicleIds);
+      vehicleCount = vehicleIds.size();
+    }
+    if (vehicles.getRestoredVehicleCount() > 0) {
+      System.err.println("Dataset " + datasetId + " resumed: " + vehicles.getRestoredVehicleCount() + " of "
+        + vehicleCount + " vehicles restored from the cache");
+    }
+
+    return new BatchResult.DatasetResult(datasetId, vehicleCount, answerResponse, null, elapsedMillis(start));
+  }
+
+  /**
+   * Fetch the vehicles and their dealers, then submit the answer
+   *
+   * @return the response to the answer
+   */
+  private AnswerResponse answerDataset(final Dataset dataset, final Vehicles vehicles, final String datasetId,
+                                       final Iterable<Integer> vehicleIds) {
+    final Tracer tracer = Tracer.getShared();
+    long fetchStart = tracer.begin();
+    final StoredAnswer storedAnswer;
+    final List<DealerAnswer> dealers;
+    try {
+      storedAnswer = streamingAnswer ? vehicles.getStoredAnswer(datasetId, vehicleIds) : null;
+      dealers = streamingAnswer ? null : vehicles.getDealersWithTheirVehicles(datasetId, vehicleIds);
+    } finally {
+      tracer.end(Tracer.Category.PHASE, "vehicles and dealers", datasetId, fetchStart);
+    }
+
+    long submitStart = tracer.begin();
+    try {
+      return streamingAnswer
+        ? dataset.submitAnswer(datasetId, storedAnswer, gzipAnswer)
+        : dataset.submitAnswer(datasetId, dealers);
+    } finally {
+      tracer.end(Tracer.Category.PHASE, "submit answer", datasetId, submitStart);
+    }
+  }
+
+  /**
+   * @return the deadline of a dataset starting now, from --deadline
+   */
+  private Deadline newDeadline() {
+    return (deadlineMillis > 0) ? Deadline.after(deadlineMillis, TimeUnit.MILLISECONDS) : Deadline.none();
+  }
+
+  private static long elapsedMillis(final long startNanos) {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+  }
 
-    String datasetId = dataset.getDatasetId();
-    List<Integer> vehicleIds = vehicles.getVehicleIds(datasetId);
-    List<DealerAnswer> dealers = vehicles.getDealersWithTheirVehicles(datasetId, vehicleIds);
+  private static String nextArgument(final String[] args, final int index, final String option) {
+    if (index >= args.length) {
+      throw new IllegalArgumentException("Missing value for argument: " + option);
+    }
+    return args[index];
+  }
+
+  private static int parseInt(final String option, final String value) {
+    try {
+      return Integer.parseInt(value);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid number for argument " + option + ": " + value);
+    }
+  }
+
+  /**
+   * What the datasets of one run share, on top of the process wide connection pool, limiter and dictionary
+   */
+  private final class Run implements AutoCloseable {
 
-    dataset.submitAnswer(datasetId, dealers);
+    private final RetryPolicy retryPolicy = new RetryPolicy(maxAttempts, hedging);
+
+    // The answer is retried but never hedged, as a second answer would be checked too
+    private final RetryPolicy answerRetryPolicy = new RetryPolicy(maxAttempts, false);
+
+    // Null when each dataset runs its fetches on an engine of its own
+    private final FetchEngine fetchEngine;
+
+    // Null when no cache file was given
+    private final ResponseCache responseCache;
+
+    // Writes the cache to the disk periodically, null when there is no cache
+    private final ScheduledExecutorService checkpointer;
+
+    // Null when the dealer names are not kept between datasets
+    private final DealerCache dealerCache;
+
+    // Null when the metrics are not served
+    private final MetricsServer metricsServer;
+
+    // Null when there is no warmup
+    private final Warmup warmup;
+
+    /**
+     * @param sharedEngine true for the datasets to share one fetch engine
+     */
+    Run(final boolean sharedEngine) {
+      // The limiter adapts from the configured concurrency rather than below it
+      AdaptiveLimiter.getShared().setLimit(concurrency);
+      if (traceFile != null) {
+        Tracer.getShared().setEnabled(true);
+      }
+      if ((cacheFile != null) || (resumeDatasetId != null)) {
+        this.responseCache = ResponseCache.open((cacheFile != null) ? cacheFile : Paths.get(DEFAULT_CACHE_FILE));
+        this.checkpointer = Executors.newSingleThreadScheduledExecutor(FetchEngine.threadFactory("checkpoint"));
+        checkpointer.scheduleWithFixedDelay(responseCache::checkpoint, checkpointMillis, checkpointMillis, TimeUnit.MILLISECONDS);
+      } else {
+        this.responseCache = null;
+        this.checkpointer = null;
+      }
+      if ((dealerCacheSize > 0) || sharingDealers) {
+        int maxSize = (dealerCacheSize > 0) ? dealerCacheSize : DealerCache.DEFAULT_MAX_SIZE;
+        this.dealerCache = new DealerCache(maxSize, dealerCacheTtlMillis, sharingDealers);
+      } else {
+        this.dealerCache = null;
+      }
+      // A warmup starts the engine's threads, so it is created up front even for a single dataset
+      this.fetchEngine = (sharedEngine || (warmupConnections > 0))
+        ? new FetchEngine(concurrency, fetchMode == FetchMode.VIRTUAL) : null;
+      if (metricsPort >= 0) {
+        this.metricsServer = MetricsServer.start(Metrics.getShared(), metricsPort);
+        System.err.println("Metrics served at: http://localhost:" + metricsServer.getPort() + "/metrics");
+      } else {
+        this.metricsServer = null;
+      }
+      if (warmupConnections > 0) {
+        // Started last, right before the dataset id is requested, and not waited for. Connections beyond the idle
+        // limit of the pool would only be closed again.
+        int connections = Math.min(warmupConnections, ApiClients.getMaxIdleConnections());
+        this.warmup = Warmup.start(ApiClients.get(), connections, fetchEngine);
+      } else {
+        this.warmup = null;
+      }
+    }
+
+    void printStatistics() {
+      Http2Transport transport = ApiClients.getTransport();
+      if (transport != null) {
+        System.err.println("Transport: " + transport);
+      } else {
+        System.err.println("Transport: HTTP/1.1 maxConnectionsPerHost=" + ApiClients.getMaxConnectionsPerHost()
+          + ((ApiClients.getHttp2Connections() > 0) ? " (HTTP/2 requires Java 21 or above)" : ""));
+      }
+      System.err.println("API limiter: " + AdaptiveLimiter.getShared());
+      System.err.println("API retries: " + retryPolicy);
+      System.err.println("Make and model dictionary: " + StringDictionary.getShared());
+      System.err.println("Coalesced vehicle calls: " + Vehicles.getSharedVehicleCalls());
+      System.err.println("Coalesced dealer calls: " + Dealers.getSharedDealerCalls());
+      if (responseCache != null) {
+        System.err.println("Response cache: " + responseCache);
+      }
+      if (dealerCache != null) {
+        System.err.println("Dealer cache: " + dealerCache);
+      }
+      if (warmup != null) {
+        System.err.println("Warmup: " + warmup);
+      }
+      if (traceFile != null) {
+        System.err.println("Trace: " + Tracer.getShared());
+      }
+      Metrics metrics = Metrics.getShared();
+      for (Metrics.Endpoint endpoint : Metrics.Endpoint.values()) {
+        // The calls end to end (limiter waits, backoff and retries included), then each request on the network
+        System.err.println("API " + endpoint.getLabel() + " calls end to end: " + metrics.getCallLatencies(endpoint)
+          + " errors=" + metrics.getErrors(endpoint) + " retries=" + metrics.getRetries(endpoint));
+        System.err.println("API " + endpoint.getLabel() + " requests: " + metrics.getRequestLatencies(endpoint)
+          + " errors=" + metrics.getRequestErrors(endpoint));
+      }
+    }
+
+    /**
+     * Write the metrics of the run's API calls to the metrics file
+     */
+    private void writeMetrics() {
+      try (Writer out = Files.newBufferedWriter(metricsFile, StandardCharsets.UTF_8)) {
+        Metrics.getShared().writeTo(out);
+      } catch (IOException e) {
+        // The answer has already been submitted, so only the metrics are lost
+        System.err.println("Unable to write the metrics to " + metricsFile + ": " + e.getMessage());
+      }
+    }
+
+    /**
+     * Write the spans of the run and the critical path of each dataset to the trace file
+     */
+    private void writeTrace() {
+      try (Writer out = Files.newBufferedWriter(traceFile, StandardCharsets.UTF_8)) {
+        Tracer.getShared().writeTo(out);
+      } catch (IOException e) {
+        // The answer has already been submitted, so only the trace is lost
+        System.err.println("Unable to write the trace to " + traceFile + ": " + e.getMessage());
+      }
+    }
+
+    @Override
+    public void close() {
+      if (checkpointer != null) {
+        checkpointer.shutdownNow();
+      }
+      if (fetchEngine != null) {
+        fetchEngine.close();
+      }
+      if (responseCache != null) {
+        responseCache.close();
+      }
+      if (metricsFile != null) {
+        writeMetrics();
+      }
+      if (metricsServer != null) {
+        metricsServer.close();
+      }
+      if (traceFile != null) {
+        Tracer.getShared().setEnabled(false);
+        writeTrace();
+      }
+    }
   }
-}
\ No newline at end of file
+}
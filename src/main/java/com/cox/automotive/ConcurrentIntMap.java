@@ -0,0 +1,144 @@
+package com.cox.automotive;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntFunction;
+
+/**
+ * A map keyed by primitive ints for lookups that are frequent (once per vehicle) and inserts that are rare
+ * (once per dealer). Lookups do not lock or box the key. Inserts fill the table in place under a lock, and only
+ * copy it into one twice the size once it is half full, so a new key costs amortized constant time. A slot's key
+ * is written before its value is published, so a reader that sees the value also sees its key.
+ *
+ * @param <V> type of the values
+ * @author jeff.snyder
+ */
+public class ConcurrentIntMap<V> {
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  private volatile Table<V> table = new Table<>(INITIAL_CAPACITY);
+
+  // Written under the lock
+  private volatile int size;
+
+  /**
+   * @return the value for the key, or null if there is none
+   */
+  public V get(final int key) {
+    return table.get(key);
+  }
+
+  /**
+   * Get the value for the key, creating it if there is none. The value is created at most once for a key,
+   * while holding the lock, so creating it should be cheap (starting a lookup rather than waiting for it).
+   *
+   * @param key     key of the value
+   * @param factory creates the value when the key is not there yet
+   * @return the value for the key
+   */
+  public V computeIfAbsent(final int key, final IntFunction<? extends V> factory) {
+    V value = table.get(key);
+    if (value != null) {
+      return value;
+    }
+    synchronized (this) {
+      Table<V> current = table;
+      value = current.get(key);
+      if (value == null) {
+        value = factory.apply(key);
+        if (value == null) {
+          throw new NullPointerException("No value created for key: " + key);
+        }
+        // Stay at most half full, so probe runs are short
+        if ((size + 1) * 2 > current.capacity()) {
+          current = current.grow();
+          table = current;
+        }
+        current.insert(key, value);
+        size++;
+      }
+      return value;
+    }
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return the values, in no particular order
+   */
+  public List<V> values() {
+    Table<V> current = table;
+    List<V> values = new ArrayList<>(size);
+    for (int i = 0; i < current.capacity(); i++) {
+      V value = current.values.get(i);
+      if (value != null) {
+        values.add(value);
+      }
+    }
+    return values;
+  }
+
+  /**
+   * An open addressing table whose slots are only ever filled, never changed or emptied
+   */
+  private static final class Table<V> {
+    private final int[] keys;
+    private final AtomicReferenceArray<V> values;
+
+    Table(final int capacity) {
+      this.keys = new int[capacity];
+      this.values = new AtomicReferenceArray<>(capacity);
+    }
+
+    int capacity() {
+      return keys.length;
+    }
+
+    V get(final int key) {
+      int mask = keys.length - 1;
+      int index = hash(key) & mask;
+      V value;
+      while ((value = values.get(index)) != null) {
+        if (keys[index] == key) {
+          return value;
+        }
+        index = (index + 1) & mask;
+      }
+      return null;
+    }
+
+    /**
+     * @return a table twice the size holding the same entries, to be published once it is complete
+     */
+    Table<V> grow() {
+      Table<V> copy = new Table<>(keys.length << 1);
+      for (int i = 0; i < keys.length; i++) {
+        V value = values.get(i);
+        if (value != null) {
+          copy.insert(keys[i], value);
+        }
+      }
+      return copy;
+    }
+
+    void insert(final int key, final V value) {
+      int mask = keys.length - 1;
+      int index = hash(key) & mask;
+      while (values.get(index) != null) {
+        index = (index + 1) & mask;
+      }
+      keys[index] = key;
+      // The volatile write publishes the key along with the value
+      values.set(index, value);
+    }
+  }
+
+  private static int hash(final int key) {
+    int h = key * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+}
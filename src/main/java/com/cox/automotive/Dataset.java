@@ -1,13 +1,29 @@
 package com.cox.automotive;
 
+import com.google.gson.stream.JsonWriter;
+import com.squareup.okhttp.Call;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.RequestBody;
+import io.swagger.client.ApiClient;
 import io.swagger.client.ApiException;
+import io.swagger.client.Pair;
 import io.swagger.client.api.DataSetApi;
 import io.swagger.client.model.Answer;
 import io.swagger.client.model.AnswerResponse;
 import io.swagger.client.model.DatasetIdResponse;
 import io.swagger.client.model.DealerAnswer;
+import okio.BufferedSink;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Dataset retrieval and answering
@@ -16,6 +32,53 @@ import java.util.List;
  */
 public class Dataset {
 
+  // Adapts the number of calls in flight to what the server can handle
+  private AdaptiveLimiter limiter = AdaptiveLimiter.getShared();
+
+  // Retries transient failures of the answer
+  private RetryPolicy retryPolicy = RetryPolicy.getShared();
+
+  // Records the latency and failures of the API calls
+  private Metrics metrics = Metrics.getShared();
+
+  // Time by which the dataset has to be answered
+  private Deadline deadline = Deadline.none();
+
+  public AdaptiveLimiter getLimiter() {
+    return limiter;
+  }
+
+  public void setLimiter(final AdaptiveLimiter limiter) {
+    this.limiter = limiter;
+  }
+
+  public RetryPolicy getRetryPolicy() {
+    return retryPolicy;
+  }
+
+  /**
+   * @param retryPolicy policy retrying the answer, which should not hedge, as the second answer would be checked too
+   */
+  public void setRetryPolicy(final RetryPolicy retryPolicy) {
+    this.retryPolicy = retryPolicy;
+  }
+
+  public Metrics getMetrics() {
+    return metrics;
+  }
+
+  public void setMetrics(final Metrics metrics) {
+    this.metrics = metrics;
+  }
+
+  public Deadline getDeadline() {
+    return deadline;
+  }
+
+  public void setDeadline(final Deadline deadline) {
+    this.deadline = deadline;
+  }
+
   /**
    * @return get the dataset id for the current run
    */
@@ -24,7 +87,7 @@ public class Dataset {
     final DataSetApi dataSetApi = getDataSetApi();
     try {
       // Get the dataset id
-      DatasetIdResponse response = dataSetApi.dataSetGetDataSetId();
+      DatasetIdResponse response = metrics.call(Metrics.Endpoint.DATASET_ID, dataSetApi::dataSetGetDataSetId);
       if (response == null) {
         throw new ApiException("Invalid response received from API to get the dataset id.");
       }
@@ -43,23 +106,112 @@ public class Dataset {
    *
    * @param datasetId dataset being processed
    * @param dealers answer containing the dealers and their associated vehicles
+   * @return the response to the answer, with its message and total elapsed time
    */
-  public void submitAnswer(final String datasetId, final List<DealerAnswer> dealers) {
+  public AnswerResponse submitAnswer(final String datasetId, final List<DealerAnswer> dealers) {
     // Compile answer and return it
     Answer answer = new Answer();
     answer.setDealers(dealers);
 
     final DataSetApi dataSetApi = getDataSetApi();
     try {
-      AnswerResponse answerResponse = dataSetApi.dataSetPostAnswer(datasetId, answer);
-      System.out.println(answerResponse.getMessage());
-      System.out.println(answerResponse.getTotalMilliseconds());
+      AnswerResponse answerResponse = metrics.call(Metrics.Endpoint.ANSWER,
+        () -> retryPolicy.call(() -> limiter.call(() -> dataSetApi.dataSetPostAnswer(datasetId, answer)), deadline));
+      if (answerResponse == null) {
+        throw new ApiException("Invalid response received from API to answer the dataset.");
+      }
+      return answerResponse;
     } catch (ApiException e) {
       throw new RuntimeException("Unable to set the answer for the dataset: " + datasetId);
     }
   }
 
+  /**
+   * Submit the answer for the final check, writing it to the request dealer by dealer as it is sent (chunked)
+   * rather than serializing the whole answer in memory first
+   *
+   * @param datasetId dataset being processed
+   * @param answer    answer containing the dealers and their associated vehicles
+   * @param gzip      true to compress the request body
+   * @return the response to the answer, with its message and total elapsed time
+   */
+  public AnswerResponse submitAnswer(final String datasetId, final StoredAnswer answer, final boolean gzip) {
+    final ApiClient apiClient = getApiClient();
+    try {
+      // Each attempt builds its call, as a call can only be executed once; the body is written again from the store
+      AnswerResponse answerResponse = metrics.call(Metrics.Endpoint.ANSWER, () -> retryPolicy.call(() -> limiter.call(
+        () -> apiClient.<AnswerResponse>execute(buildAnswerCall(apiClient, datasetId, answer, gzip), AnswerResponse.class)
+          .getData()), deadline));
+      if (answerResponse == null) {
+        throw new ApiException("Invalid response received from API to answer the dataset.");
+      }
+      return answerResponse;
+    } catch (ApiException e) {
+      throw new RuntimeException("Unable to set the answer for the dataset: " + datasetId, e);
+    }
+  }
+
+  /**
+   * Build the call posting the answer through the client, as the generated API does, but with the streaming body
+   * (which the streaming client sends as it is)
+   */
+  private static Call buildAnswerCall(final ApiClient apiClient, final String datasetId, final StoredAnswer answer,
+                                      final boolean gzip) throws ApiException {
+    Map<String, String> headerParams = new HashMap<>();
+    headerParams.put("Accept", "application/json");
+    headerParams.put("Content-Type", "application/json");
+    if (gzip) {
+      headerParams.put("Content-Encoding", "gzip");
+    }
+    return apiClient.buildCall("/api/" + apiClient.escapeString(datasetId) + "/answer", "POST", new ArrayList<Pair>(),
+      new ArrayList<Pair>(), new AnswerBody(answer, gzip), headerParams, new HashMap<String, Object>(), new String[0], null);
+  }
+
+  /**
+   * The answer JSON, written straight from the vehicle store to the connection. Its length is not known
+   * up front, so it is sent with chunked transfer encoding.
+   */
+  static class AnswerBody extends RequestBody {
+
+    private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+
+    private final StoredAnswer answer;
+    private final boolean gzip;
+
+    AnswerBody(final StoredAnswer answer, final boolean gzip) {
+      this.answer = answer;
+      this.gzip = gzip;
+    }
+
+    @Override
+    public MediaType contentType() {
+      return JSON;
+    }
+
+    @Override
+    public long contentLength() {
+      return -1;
+    }
+
+    @Override
+    public void writeTo(final BufferedSink sink) throws IOException {
+      // The sink belongs to the connection, so it is flushed but not closed
+      OutputStream out = gzip ? new GZIPOutputStream(sink.outputStream(), 8192) : sink.outputStream();
+      JsonWriter writer = new JsonWriter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 8192));
+      answer.writeTo(writer);
+      writer.flush();
+      if (out instanceof GZIPOutputStream) {
+        ((GZIPOutputStream) out).finish();
+      }
+      out.flush();
+    }
+  }
+
+  protected ApiClient getApiClient() {
+    return ApiClients.get();
+  }
+
   protected DataSetApi getDataSetApi() {
-    return new DataSetApi();
+    return new DataSetApi(getApiClient());
   }
 }
\ No newline at end of file
@@ -0,0 +1,108 @@
+package com.cox.automotive;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The time by which a dataset has to be processed. All of the waits for the dataset are bounded by it.
+ *
+ * @author jeff.snyder
+ */
+public final class Deadline {
+
+  private static final Deadline NONE = new Deadline(false, 0L, 0L);
+
+  private final boolean bounded;
+  private final long timeoutMillis;
+  private final long deadlineNanos;
+
+  private Deadline(final boolean bounded, final long timeoutMillis, final long deadlineNanos) {
+    this.bounded = bounded;
+    this.timeoutMillis = timeoutMillis;
+    this.deadlineNanos = deadlineNanos;
+  }
+
+  /**
+   * @return a deadline which never expires
+   */
+  public static Deadline none() {
+    return NONE;
+  }
+
+  /**
+   * @param timeout time allowed from now
+   * @param unit    unit of the time allowed
+   * @return a deadline expiring after the given time
+   */
+  public static Deadline after(final long timeout, final TimeUnit unit) {
+    return new Deadline(true, unit.toMillis(timeout), System.nanoTime() + unit.toNanos(timeout));
+  }
+
+  /**
+   * @return true if the deadline has passed
+   */
+  public boolean isExpired() {
+    return bounded && (deadlineNanos - System.nanoTime() <= 0L);
+  }
+
+  /**
+   * @return the nanoseconds left before the deadline (Long.MAX_VALUE when there is no deadline)
+   */
+  public long remainingNanos() {
+    return bounded ? Math.max(0L, deadlineNanos - System.nanoTime()) : Long.MAX_VALUE;
+  }
+
+  /**
+   * Throw if the deadline has passed
+   */
+  public void check() {
+    if (isExpired()) {
+      throw exceeded();
+    }
+  }
+
+  /**
+   * @return the exception for the deadline having passed
+   */
+  public RuntimeException exceeded() {
+    return new RuntimeException("Deadline of " + timeoutMillis + " milliseconds exceeded.");
+  }
+
+  /**
+   * Wait for the future, but no longer than the deadline
+   *
+   * @param future future to wait for
+   * @param <T>    type of the result
+   * @return the result of the future
+   */
+  public <T> T await(final CompletableFuture<T> future) {
+    try {
+      return bounded ? future.get(remainingNanos(), TimeUnit.NANOSECONDS) : future.get();
+    } catch (TimeoutException e) {
+      throw exceeded();
+    } catch (ExecutionException e) {
+      throw FetchEngine.propagate(e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while waiting.", e);
+    }
+  }
+
+  /**
+   * Sleep for the given time, but no longer than the deadline
+   *
+   * @param nanos time to sleep
+   */
+  void sleep(final long nanos) {
+    long sleepNanos = Math.min(nanos, remainingNanos());
+    try {
+      TimeUnit.NANOSECONDS.sleep(sleepNanos);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while waiting.", e);
+    }
+    check();
+  }
+}
@@ -0,0 +1,216 @@
+package com.cox.automotive;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * An in-memory cache of the dealer names, shared by the datasets of a run and bounded by size (least recently used
+ * dealers are evicted first) and by age.
+ * <p>
+ * The API scopes the dealer ids to a dataset, so by default a name is only reused for the dataset it was received
+ * for. Reuse across datasets is opt-in, and even then a name is only handed to another dataset once the same id has
+ * been seen with the same name in a number of distinct datasets. An id seen with two different names is not
+ * shared again for as long as it stays in the cache.
+ *
+ * @author jeff.snyder
+ */
+public class DealerCache {
+
+  public static final int DEFAULT_MAX_SIZE = 10_000;
+  public static final long DEFAULT_TTL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+  public static final int DEFAULT_CONFIRMATIONS = 2;
+
+  private final int maxSize;
+  private final long ttlNanos;
+  private final boolean crossDataset;
+  private final int confirmations;
+  private final LongSupplier clock;
+
+  // Dealers by dataset and id, plus (with cross-dataset reuse) by id alone under a null dataset (guarded by this)
+  private final LinkedHashMap<Key, Entry> entries;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder sharedHits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder conflicts = new LongAdder();
+
+  /**
+   * @param maxSize      maximum number of names kept
+   * @param ttlMillis    time a name is kept after it was received
+   * @param crossDataset true to reuse the names across datasets once they are verified stable
+   */
+  public DealerCache(final int maxSize, final long ttlMillis, final boolean crossDataset) {
+    this(maxSize, ttlMillis, crossDataset, DEFAULT_CONFIRMATIONS, System::nanoTime);
+  }
+
+  /**
+   * @param confirmations number of distinct datasets that have to agree on a name before it is shared
+   * @param clock         source of the time in nanoseconds
+   */
+  DealerCache(final int maxSize, final long ttlMillis, final boolean crossDataset, final int confirmations,
+              final LongSupplier clock) {
+    if (maxSize < 1) {
+      throw new IllegalArgumentException("Dealer cache size must be at least 1: " + maxSize);
+    }
+    if (ttlMillis < 1) {
+      throw new IllegalArgumentException("Dealer cache TTL must be at least 1: " + ttlMillis);
+    }
+    this.maxSize = maxSize;
+    this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+    this.crossDataset = crossDataset;
+    this.confirmations = confirmations;
+    this.clock = clock;
+    this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<Key, Entry> eldest) {
+        return size() > DealerCache.this.maxSize;
+      }
+    };
+  }
+
+  /**
+   * @return the name of the dealer, or null if it is not known for the dataset
+   */
+  public String get(final String datasetId, final int dealerId) {
+    long now = clock.getAsLong();
+    synchronized (this) {
+      Entry entry = live(new Key(datasetId, dealerId), now);
+      if (entry != null) {
+        hits.increment();
+        return entry.name;
+      }
+      if (crossDataset) {
+        Entry shared = live(new Key(null, dealerId), now);
+        if ((shared != null) && !shared.conflicting && (shared.datasetIds.size() >= confirmations)) {
+          sharedHits.increment();
+          return shared.name;
+        }
+      }
+    }
+    misses.increment();
+    return null;
+  }
+
+  /**
+   * Keep the name received for the dealer
+   */
+  public void put(final String datasetId, final int dealerId, final String name) {
+    long now = clock.getAsLong();
+    synchronized (this) {
+      entries.put(new Key(datasetId, dealerId), new Entry(name, now + ttlNanos));
+      if (crossDataset) {
+        confirm(datasetId, dealerId, name, now);
+      }
+    }
+  }
+
+  /**
+   * Count the dataset towards the name of the shared entry, or mark the entry conflicting if the names differ
+   */
+  private void confirm(final String datasetId, final int dealerId, final String name, final long now) {
+    Key key = new Key(null, dealerId);
+    Entry shared = live(key, now);
+    if (shared == null) {
+      shared = new Entry(name, now + ttlNanos);
+      shared.datasetIds = new HashSet<>(4);
+      shared.datasetIds.add(datasetId);
+      entries.put(key, shared);
+    } else if (shared.conflicting) {
+      return;
+    } else if (!equal(shared.name, name)) {
+      shared.conflicting = true;
+      conflicts.increment();
+    } else if ((shared.datasetIds.size() < confirmations) && shared.datasetIds.add(datasetId)) {
+      shared.expiresAt = now + ttlNanos;
+    }
+  }
+
+  private Entry live(final Key key, final long now) {
+    Entry entry = entries.get(key);
+    if ((entry != null) && (now - entry.expiresAt >= 0)) {
+      entries.remove(key);
+      return null;
+    }
+    return entry;
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  public long getHits() {
+    return hits.sum() + sharedHits.sum();
+  }
+
+  /**
+   * @return the number of names handed to a dataset other than the one they were received for
+   */
+  public long getSharedHits() {
+    return sharedHits.sum();
+  }
+
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  /**
+   * @return the number of dealer ids seen with different names in different datasets
+   */
+  public long getConflicts() {
+    return conflicts.sum();
+  }
+
+  @Override
+  public String toString() {
+    return "size=" + size() + " hits=" + getHits() + " sharedHits=" + getSharedHits() + " misses=" + getMisses()
+      + " conflicts=" + getConflicts();
+  }
+
+  private static boolean equal(final String a, final String b) {
+    return (a == null) ? (b == null) : a.equals(b);
+  }
+
+  private static final class Key {
+    private final String datasetId;
+    private final int dealerId;
+
+    Key(final String datasetId, final int dealerId) {
+      this.datasetId = datasetId;
+      this.dealerId = dealerId;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return (dealerId == other.dealerId) && equal(datasetId, other.datasetId);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * dealerId + ((datasetId == null) ? 0 : datasetId.hashCode());
+    }
+  }
+
+  private static final class Entry {
+    private final String name;
+    private long expiresAt;
+
+    // For the shared entries: the datasets that agreed on the name (up to the confirmations needed), and whether
+    // one disagreed
+    private Set<String> datasetIds;
+    private boolean conflicting;
+
+    Entry(final String name, final long expiresAt) {
+      this.name = name;
+      this.expiresAt = expiresAt;
+    }
+  }
+}
@@ -0,0 +1,31 @@
+package com.cox.automotive;
+
+/**
+ * The information retrieved for a dealer (id and name). This is immutable, so it can be shared between threads
+ * once its lookup has completed.
+ *
+ * @author jeff.snyder
+ */
+public final class DealerInfo {
+
+  private final int dealerId;
+  private final String name;
+
+  public DealerInfo(final int dealerId, final String name) {
+    this.dealerId = dealerId;
+    this.name = name;
+  }
+
+  public int getDealerId() {
+    return dealerId;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  public String toString() {
+    return "DealerInfo(" + dealerId + "," + name + ")";
+  }
+}
@@ -1,15 +1,20 @@
 package com.cox.automotive;
 
+import io.swagger.client.ApiCallback;
 import io.swagger.client.ApiException;
 import io.swagger.client.api.DealersApi;
 import io.swagger.client.model.DealerAnswer;
 import io.swagger.client.model.DealersResponse;
 import io.swagger.client.model.VehicleAnswer;
+import io.swagger.client.model.VehicleResponse;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This contains the information about the dealers (name and vehicles) for a particular dataset
@@ -18,58 +23,344 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 public class Dealers {
 
-  // Contains the association of dealer id to its dealer for a dataset
-  // This is a concurrent hash map to allow parallel processing of vehicles being added to the dealer (thread-safe)
-  private final Map<Integer, DealerAnswer> dealerMap = new ConcurrentHashMap<>();
+  // Dealer lookups run on their own pool so the vehicle workers never wait on a dealer round trip
+  private static final Executor LOOKUP_EXECUTOR = createLookupExecutor();
+
+  // Dealer calls in flight for every dataset of the process
+  private static final SingleFlight<SingleFlight.Key, DealersResponse> SHARED_DEALER_CALLS = new SingleFlight<>();
+
+  // Contains the association of dealer id to the lookup of its information for a dataset
+  // Each dealer is looked up exactly once, and every caller sees the same completed result or failure
+  private final ConcurrentIntMap<DealerEntry> dealerIndex = new ConcurrentIntMap<>();
+
+  // The vehicles seen for all of the dealers, in columns; they are only grouped by dealer for the answer
+  private final VehicleStore vehicleStore = new VehicleStore();
+
+  // How the dealer requests are executed
+  private FetchMode fetchMode = FetchMode.BLOCKING;
+
+  // Adapts the number of calls in flight to what the server can handle
+  private AdaptiveLimiter limiter = AdaptiveLimiter.getShared();
+
+  // Retries transient failures (and optionally hedges slow calls)
+  private RetryPolicy retryPolicy = RetryPolicy.getShared();
+
+  // Records the latency, in-flight count and failures of the API calls
+  private Metrics metrics = Metrics.getShared();
+
+  // Time by which the dataset has to be processed
+  private Deadline deadline = Deadline.none();
+
+  // Dedupes the makes and models, which repeat across the vehicles
+  private StringDictionary dictionary = StringDictionary.getShared();
+
+  // Responses received by earlier runs, null to always call the API
+  private ResponseCache responseCache;
+
+  // Dealer names received for the other datasets of the run, null for none
+  private DealerCache dealerCache;
+
+  // Coalesces the identical dealer calls in flight at the same time
+  private SingleFlight<SingleFlight.Key, DealersResponse> dealerCalls = SHARED_DEALER_CALLS;
+
+  public FetchMode getFetchMode() {
+    return fetchMode;
+  }
+
+  public void setFetchMode(final FetchMode fetchMode) {
+    this.fetchMode = fetchMode;
+  }
+
+  public AdaptiveLimiter getLimiter() {
+    return limiter;
+  }
+
+  public void setLimiter(final AdaptiveLimiter limiter) {
+    this.limiter = limiter;
+  }
+
+  public RetryPolicy getRetryPolicy() {
+    return retryPolicy;
+  }
+
+  public void setRetryPolicy(final RetryPolicy retryPolicy) {
+    this.retryPolicy = retryPolicy;
+  }
+
+  public Metrics getMetrics() {
+    return metrics;
+  }
+
+  public void setMetrics(final Metrics metrics) {
+    this.metrics = metrics;
+  }
+
+  public Deadline getDeadline() {
+    return deadline;
+  }
+
+  public void setDeadline(final Deadline deadline) {
+    this.deadline = deadline;
+  }
+
+  public StringDictionary getDictionary() {
+    return dictionary;
+  }
+
+  public void setDictionary(final StringDictionary dictionary) {
+    this.dictionary = dictionary;
+  }
+
+  public ResponseCache getResponseCache() {
+    return responseCache;
+  }
+
+  public void setResponseCache(final ResponseCache responseCache) {
+    this.responseCache = responseCache;
+  }
 
   /**
-   * Adds the vehicle data to the dealer.
+   * @return the dealer calls in flight for every dataset of the process
+   */
+  public static SingleFlight<SingleFlight.Key, DealersResponse> getSharedDealerCalls() {
+    return SHARED_DEALER_CALLS;
+  }
+
+  public void setDealerCalls(final SingleFlight<SingleFlight.Key, DealersResponse> dealerCalls) {
+    this.dealerCalls = dealerCalls;
+  }
+
+  public DealerCache getDealerCache() {
+    return dealerCache;
+  }
+
+  public void setDealerCache(final DealerCache dealerCache) {
+    this.dealerCache = dealerCache;
+  }
+
+  /**
+   * Adds the vehicle data to the dealer. A dealer seen for the first time has its information requested
+   * asynchronously, so this does not wait on the dealer round trip.
    *
    * @param datasetId     current dataset being processed
    * @param dealerId      dealer id associated with the vehicle
    * @param vehicleAnswer vehicle information to be associated with the dealer
    */
   public void updateDealer(final String datasetId, final Integer dealerId, final VehicleAnswer vehicleAnswer) {
-    DealerAnswer dealer = new DealerAnswer();
-    DealerAnswer result = dealerMap.putIfAbsent(dealerId, dealer);
+    addVehicle(datasetId, VehicleStore.toInt(vehicleAnswer.getVehicleId()), VehicleStore.toInt(vehicleAnswer.getYear()),
+      vehicleAnswer.getMake(), vehicleAnswer.getModel(), dealerId);
+  }
 
-    // The result is null only if the answer was not already there, so get the dealership information in this case
-    if (result == null) {
-      // Need to create a new API each time as they are not thread safe
-      final DealersApi dealersApi = getDealersApi();
-      try {
-        // For each unique dealer, get its information
-        DealersResponse dealersResponse = dealersApi.dealersGetDealer(datasetId, dealerId);
-        if (dealersResponse == null) {
-          throw new ApiException("Invalid response received from API to get the dealer.");
-        }
+  /**
+   * Adds the vehicle from its response to its dealer, without creating an answer object for it
+   *
+   * @param datasetId       current dataset being processed
+   * @param vehicleResponse vehicle information that was retrieved
+   */
+  public void addVehicle(final String datasetId, final VehicleResponse vehicleResponse) {
+    addVehicle(datasetId, vehicleResponse.getVehicleId(), VehicleStore.toInt(vehicleResponse.getYear()),
+      vehicleResponse.getMake(), vehicleResponse.getModel(), vehicleResponse.getDealerId());
+  }
 
-        if (!dealerId.equals(dealersResponse.getDealerId())) {
-          throw new ApiException("Wrong dealer in response. (expected, received): (" + dealerId + "," + dealersResponse.getDealerId() + ")");
-        }
+  private void addVehicle(final String datasetId, final int vehicleId, final int year, final String make,
+                          final String model, final Integer dealerId) {
+    if (dealerId == null) {
+      throw new IllegalArgumentException("Vehicle without a dealer in dataset " + datasetId + ": " + VehicleStore.toInteger(vehicleId));
+    }
+    // Check before computing, as computing takes the index lock even when the dealer is already there
+    if (dealerIndex.get(dealerId) == null) {
+      // Creating the entry only starts the lookup, so nothing blocks while the index is being updated
+      dealerIndex.computeIfAbsent(dealerId, id -> new DealerEntry(startLookup(datasetId, id)));
+    }
+    // Only the deduped strings are kept, the ones from the response are collected with it
+    vehicleStore.add(vehicleId, year, dictionary.intern(make), dictionary.intern(model), dealerId);
+  }
 
-        // Update the dealer information with the dealer id and name
-        dealer.setDealerId(dealerId);
-        dealer.setName(dealersResponse.getName());
-      } catch (ApiException e) {
-        throw new RuntimeException("Unable to retrieve dealer information for (dataset, dealer): (" + datasetId + "," + dealerId + ")", e);
+  /**
+   * Get the dealers once all of their information has been retrieved. This should be called once all of the
+   * vehicles have been added, as that is when the answer objects are created from the stored vehicles.
+   *
+   * @return the dealers with their vehicles
+   */
+  public List<DealerAnswer> getDealerAnswers() {
+    return getStoredAnswer().toDealerAnswers();
+  }
+
+  /**
+   * Group the stored vehicles by dealer once all of the dealer information has been retrieved, without creating
+   * any answer objects. Like the dealer answers, this should be called once all of the vehicles have been added.
+   *
+   * @return the answer, which can be written straight to the request
+   */
+  public StoredAnswer getStoredAnswer() {
+    List<DealerEntry> entries = dealerIndex.values();
+    DealerInfo[] dealerInfos = new DealerInfo[entries.size()];
+    long waitStart = Tracer.getShared().begin();
+    try {
+      for (int d = 0; d < dealerInfos.length; d++) {
+        DealerEntry entry = entries.get(d);
+        dealerInfos[d] = deadline.await(entry.lookup);
+        entry.slot = d;
       }
-    } else {
-      // The dealer was already in the map, so use that one as the dealer
-      dealer = result;
+    } finally {
+      Tracer.getShared().end(Tracer.Category.WAIT, "dealer lookups", null, waitStart);
     }
 
-    // Need to make sure each vehicle is added in a thread safe way
-    synchronized (DealerAnswer.class) {
-      dealer.addVehiclesItem(vehicleAnswer);
+    // Counting sort of the rows by dealer, keeping the order the vehicles were added in
+    final int rowCount = vehicleStore.size();
+    int[] offsets = new int[dealerInfos.length + 1];
+    for (int row = 0; row < rowCount; row++) {
+      offsets[dealerIndex.get(vehicleStore.getDealerId(row)).slot + 1]++;
     }
+    for (int d = 0; d < dealerInfos.length; d++) {
+      offsets[d + 1] += offsets[d];
+    }
+    int[] next = Arrays.copyOf(offsets, dealerInfos.length);
+    int[] rows = new int[rowCount];
+    for (int row = 0; row < rowCount; row++) {
+      rows[next[dealerIndex.get(vehicleStore.getDealerId(row)).slot]++] = row;
+    }
+
+    return new StoredAnswer(vehicleStore, dealerInfos, offsets, rows);
   }
 
-  public List<DealerAnswer> getDealerAnswers() {
-    return new ArrayList<>(dealerMap.values());
+  /**
+   * Start retrieving the dealer information without waiting for it
+   *
+   * @param datasetId current dataset being processed
+   * @param dealerId  dealer whose information is to be retrieved
+   * @return a future for the dealer id and name
+   */
+  private CompletableFuture<DealerInfo> startLookup(final String datasetId, final int dealerId) {
+    // The names kept in memory first, then the ones on disk, before calling the API
+    if (dealerCache != null) {
+      String cachedName = dealerCache.get(datasetId, dealerId);
+      if (cachedName != null) {
+        return CompletableFuture.completedFuture(new DealerInfo(dealerId, cachedName));
+      }
+    }
+    if (responseCache != null) {
+      DealersResponse cachedResponse = responseCache.getDealer(datasetId, dealerId);
+      if (cachedResponse != null) {
+        if (dealerCache != null) {
+          dealerCache.put(datasetId, dealerId, cachedResponse.getName());
+        }
+        return CompletableFuture.completedFuture(new DealerInfo(dealerId, cachedResponse.getName()));
+      }
+    }
+
+    if (fetchMode == FetchMode.ASYNC) {
+      final DealersApi dealersApi = getDealersApi();
+      return dealerCalls.callAsync(new SingleFlight.Key("dealers", datasetId, dealerId),
+        () -> metrics.callAsync(Metrics.Endpoint.DEALER, () -> retryPolicy.callAsync(() -> limiter.callAsync(
+          () -> ApiFutures.<DealersResponse>call(callback -> startDealerCall(dealersApi, datasetId, dealerId, callback),
+            dealersResponse -> checkDealerResponse(dealerId, dealersResponse),
+            dealerFailureMessage(datasetId, dealerId))), deadline))
+          .thenApply(dealersResponse -> cacheDealer(datasetId, dealersResponse)))
+        .thenApply(dealersResponse -> new DealerInfo(dealerId, dealersResponse.getName()));
+    }
+    return CompletableFuture.supplyAsync(() -> lookupDealer(datasetId, dealerId), getLookupExecutor());
+  }
+
+  /**
+   * Retrieve the dealer information
+   *
+   * @param datasetId current dataset being processed
+   * @param dealerId  dealer whose information is to be retrieved
+   * @return the dealer id and name
+   */
+  private DealerInfo lookupDealer(final String datasetId, final Integer dealerId) {
+    // The API is a cheap view over the shared, pooled client
+    final DealersApi dealersApi = getDealersApi();
+    try {
+      // For each unique dealer, get its information, sharing a call already in flight for the same dealer of the same
+      // dataset. The key includes the dataset, as the API scopes the dealer ids to it, so other datasets never share it.
+      DealersResponse dealersResponse = dealerCalls.call(new SingleFlight.Key("dealers", datasetId, dealerId),
+        () -> cacheDealer(datasetId, checkDealerResponse(dealerId, metrics.call(Metrics.Endpoint.DEALER,
+          () -> retryPolicy.call(() -> limiter.call(() -> dealersApi.dealersGetDealer(datasetId, dealerId)), deadline)))),
+        deadline);
+      return new DealerInfo(dealerId, dealersResponse.getName());
+    } catch (ApiException e) {
+      throw new RuntimeException(dealerFailureMessage(datasetId, dealerId), e);
+    }
+  }
+
+  /**
+   * Cache the dealer response for the other datasets and later runs
+   *
+   * @param datasetId       current dataset being processed
+   * @param dealersResponse checked response for the dealer
+   * @return the dealer response
+   */
+  private DealersResponse cacheDealer(final String datasetId, final DealersResponse dealersResponse) {
+    if (responseCache != null) {
+      responseCache.putDealer(datasetId, dealersResponse);
+    }
+    if (dealerCache != null) {
+      dealerCache.put(datasetId, dealersResponse.getDealerId(), dealersResponse.getName());
+    }
+    return dealersResponse;
+  }
+
+  /**
+   * Start the dealer call on the client of the API. The call is built without progress listeners, as given a
+   * callback the generated dealersGetDealerAsync adds a network interceptor to the shared client on every call.
+   */
+  protected void startDealerCall(final DealersApi dealersApi, final String datasetId, final Integer dealerId,
+                                 final ApiCallback<DealersResponse> callback) throws ApiException {
+    dealersApi.getApiClient().executeAsync(dealersApi.dealersGetDealerCall(datasetId, dealerId, null, null),
+      DealersResponse.class, callback);
+  }
+
+  private static DealersResponse checkDealerResponse(final Integer dealerId, final DealersResponse dealersResponse) throws ApiException {
+    if (dealersResponse == null) {
+      throw new ApiException("Invalid response received from API to get the dealer.");
+    }
+
+    if (!dealerId.equals(dealersResponse.getDealerId())) {
+      throw new ApiException("Wrong dealer in response. (expected, received): (" + dealerId + "," + dealersResponse.getDealerId() + ")");
+    }
+
+    return dealersResponse;
+  }
+
+  private static String dealerFailureMessage(final String datasetId, final Integer dealerId) {
+    return "Unable to retrieve dealer information for (dataset, dealer): (" + datasetId + "," + dealerId + ")";
   }
 
   protected DealersApi getDealersApi() {
-    return new DealersApi();
+    return new DealersApi(ApiClients.get());
+  }
+
+  protected Executor getLookupExecutor() {
+    if ((fetchMode == FetchMode.VIRTUAL) && FetchExecutors.isVirtualThreadsAvailable()) {
+      return VirtualLookupExecutor.INSTANCE;
+    }
+    return LOOKUP_EXECUTOR;
+  }
+
+  private static Executor createLookupExecutor() {
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(FetchEngine.DEFAULT_CONCURRENCY, FetchEngine.DEFAULT_CONCURRENCY,
+      60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), FetchEngine.threadFactory("dealer-lookup"));
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  /**
+   * The lookup of a dealer, and its position while building the answer
+   */
+  private static final class DealerEntry {
+    private final CompletableFuture<DealerInfo> lookup;
+    private int slot;
+
+    DealerEntry(final CompletableFuture<DealerInfo> lookup) {
+      this.lookup = lookup;
+    }
+  }
+
+  // Holder so the virtual thread executor is only created when the virtual mode is used
+  private static final class VirtualLookupExecutor {
+    private static final Executor INSTANCE = FetchExecutors.newVirtualThreadPerTaskExecutor("dealer-lookup",
+      FetchEngine.DEFAULT_CONCURRENCY);
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,211 @@
+package com.cox.automotive;
+
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Runs blocking API fetches on a dedicated pool with a bounded number of requests in flight.
+ * This keeps the fetches off the common fork join pool, so the wall time depends on the window size
+ * and not on the number of cores.
+ * <p>
+ * One engine can be shared by several datasets processed at the same time: the window is then a global cap,
+ * and as it is a fair semaphore the datasets take turns for the free permits.
+ *
+ * @author jeff.snyder
+ */
+public class FetchEngine implements AutoCloseable {
+
+  public static final int DEFAULT_CONCURRENCY = 32;
+
+  private static final AtomicInteger ENGINE_COUNT = new AtomicInteger();
+
+  private final int concurrency;
+  private final ExecutorService executor;
+
+  // Bounds the number of fetches in flight; a permit is held from submission until the fetch completes
+  // It is fair, so callers sharing the engine are served in the order they asked for a permit
+  private final Semaphore window;
+
+  /**
+   * @param concurrency maximum number of fetches in flight at the same time
+   */
+  public FetchEngine(final int concurrency) {
+    this(concurrency, false);
+  }
+
+  /**
+   * @param concurrency    maximum number of fetches in flight at the same time
+   * @param virtualThreads true to run each fetch on its own virtual thread when the JVM supports them,
+   *                       otherwise a fixed pool of platform threads is used
+   */
+  public FetchEngine(final int concurrency, final boolean virtualThreads) {
+    if (concurrency < 1) {
+      throw new IllegalArgumentException("Concurrency must be at least 1: " + concurrency);
+    }
+    String prefix = "fetch-" + ENGINE_COUNT.incrementAndGet();
+    this.concurrency = concurrency;
+    this.executor = virtualThreads
+      ? FetchExecutors.newVirtualThreadPerTaskExecutor(prefix, concurrency)
+      : Executors.newFixedThreadPool(concurrency, threadFactory(prefix));
+    this.window = new Semaphore(concurrency, true);
+  }
+
+  /**
+   * @return the maximum number of fetches in flight
+   */
+  public int getConcurrency() {
+    return concurrency;
+  }
+
+  /**
+   * Start the worker threads now rather than as the first fetches are submitted (a virtual thread per task
+   * executor has none to start)
+   */
+  public void prestart() {
+    if (executor instanceof ThreadPoolExecutor) {
+      ((ThreadPoolExecutor) executor).prestartAllCoreThreads();
+    }
+  }
+
+  /**
+   * Run the task for each item, with at most the window size in flight, and wait until all of them are done.
+   * Once a task fails no more items are submitted, and the first failure is rethrown.
+   *
+   * @param items items to be processed
+   * @param task  task to run for each item (blocking calls are expected)
+   * @param <T>   type of the items
+   */
+  public <T> void forEach(final Iterable<T> items, final Consumer<? super T> task) {
+    forEach(items, task, Deadline.none());
+  }
+
+  /**
+   * Run the task for each item, with at most the window size in flight, and wait until all of them are done.
+   * Once a task fails or the deadline passes no more items are submitted, and the failure is rethrown.
+   *
+   * @param items    items to be processed, read only as the window has room for them
+   * @param task     task to run for each item (blocking calls are expected)
+   * @param deadline time by which all of the items have to be processed
+   * @param <T>      type of the items
+   */
+  public <T> void forEach(final Iterable<T> items, final Consumer<? super T> task, final Deadline deadline) {
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    // The lane tracks only this call's fetches, so callers sharing the engine do not wait on each other
+    final Semaphore lane = new Semaphore(concurrency);
+
+    final Iterator<T> iterator = items.iterator();
+    while (failure.get() == null) {
+      // The items may be read as they arrive (from a response stream), so a failure reading them is treated like
+      // a failed fetch, and the fetches already started are still waited for
+      final T item;
+      try {
+        if (!iterator.hasNext()) {
+          break;
+        }
+        item = iterator.next();
+      } catch (RuntimeException e) {
+        failure.compareAndSet(null, e);
+        break;
+      }
+      long waitStart = Tracer.getShared().begin();
+      if (!acquire(lane, 1, deadline)) {
+        failure.compareAndSet(null, deadline.exceeded());
+        break;
+      }
+      if (!acquire(window, 1, deadline)) {
+        lane.release();
+        failure.compareAndSet(null, deadline.exceeded());
+        break;
+      }
+      Tracer.getShared().end(Tracer.Category.WAIT, "fetch window", null, waitStart);
+      final CompletableFuture<Void> fetch;
+      try {
+        fetch = CompletableFuture.runAsync(() -> task.accept(item), executor);
+      } catch (RejectedExecutionException e) {
+        window.release();
+        lane.release();
+        throw e;
+      }
+      fetch.whenComplete((ignored, e) -> {
+        if (e != null) {
+          failure.compareAndSet(null, e);
+        }
+        window.release();
+        lane.release();
+      });
+    }
+
+    // Every fetch holds a lane permit until it is done, so holding all of them means everything has completed
+    if (acquire(lane, concurrency, deadline)) {
+      lane.release(concurrency);
+    } else {
+      failure.compareAndSet(null, deadline.exceeded());
+    }
+
+    if (failure.get() != null) {
+      throw propagate(failure.get());
+    }
+  }
+
+  /**
+   * @return true if the permits were acquired, false if the deadline passed first
+   */
+  static boolean acquire(final Semaphore semaphore, final int permits, final Deadline deadline) {
+    try {
+      return semaphore.tryAcquire(permits, deadline.remainingNanos(), TimeUnit.NANOSECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while waiting for the fetches.", e);
+    }
+  }
+
+  @Override
+  public void close() {
+    executor.shutdown();
+  }
+
+  static Throwable unwrap(final Throwable e) {
+    if ((e instanceof CompletionException || e instanceof ExecutionException) && (e.getCause() != null)) {
+      return e.getCause();
+    }
+    return e;
+  }
+
+  /**
+   * @param e failure from a fetch, possibly wrapped by a future
+   * @return the failure as a runtime exception to be thrown (errors are thrown directly)
+   */
+  static RuntimeException propagate(final Throwable e) {
+    Throwable cause = unwrap(e);
+    if (cause instanceof Error) {
+      throw (Error) cause;
+    }
+    if (cause instanceof RuntimeException) {
+      return (RuntimeException) cause;
+    }
+    return new RuntimeException(cause.getMessage(), cause);
+  }
+
+  static ThreadFactory threadFactory(final String prefix) {
+    final AtomicInteger threadCount = new AtomicInteger();
+    return runnable -> {
+      Thread thread = new Thread(runnable, prefix + "-" + threadCount.incrementAndGet());
+      // Do not keep the JVM alive just for idle fetch threads
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+}
@@ -0,0 +1,34 @@
+package com.cox.automotive;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates the executors that depend on the Java version. This is the Java 8 version, which has no virtual threads;
+ * the Java 21 version in the multi-release jar (src/main/java21) replaces it when running on a newer JVM.
+ *
+ * @author jeff.snyder
+ */
+final class FetchExecutors {
+
+  private FetchExecutors() {
+  }
+
+  /**
+   * @return true when the running JVM supports virtual threads
+   */
+  static boolean isVirtualThreadsAvailable() {
+    return false;
+  }
+
+  /**
+   * Without virtual threads, this falls back to a fixed pool of platform threads
+   *
+   * @param prefix  prefix of the thread names
+   * @param threads number of platform threads of the pool used when virtual threads are not available
+   * @return an executor running the tasks on a fixed pool of platform threads
+   */
+  static ExecutorService newVirtualThreadPerTaskExecutor(final String prefix, final int threads) {
+    return Executors.newFixedThreadPool(threads, FetchEngine.threadFactory(prefix));
+  }
+}
@@ -0,0 +1,39 @@
+package com.cox.automotive;
+
+import java.util.Locale;
+
+/**
+ * How the vehicle and dealer requests are executed.
+ *
+ * @author jeff.snyder
+ */
+public enum FetchMode {
+
+  /**
+   * Blocking API calls on a bounded pool of worker threads
+   */
+  BLOCKING,
+
+  /**
+   * Callback based API calls composed with futures, so no worker thread waits on a request
+   */
+  ASYNC,
+
+  /**
+   * Blocking API calls on a new virtual thread per request (Java 21), falling back to {@link #BLOCKING}
+   * when virtual threads are not available
+   */
+  VIRTUAL;
+
+  /**
+   * @param value name of the mode (case insensitive)
+   * @return the matching fetch mode
+   */
+  public static FetchMode parse(final String value) {
+    try {
+      return valueOf(value.toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Unknown fetch mode: " + value);
+    }
+  }
+}
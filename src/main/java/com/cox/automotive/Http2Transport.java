@@ -0,0 +1,41 @@
+package com.cox.automotive;
+
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Response;
+
+import java.io.IOException;
+
+/**
+ * Sends the requests of the generated client over a few multiplexed HTTP/2 connections rather than one HTTP/1.1
+ * connection per request in flight. This is the Java 8 version, which has no HTTP/2 client (OkHttp 2 only speaks
+ * HTTP/2 over TLS with ALPN, and not h2c); the Java 21 version in the multi-release jar (src/main/java21) replaces
+ * it when running on a newer JVM.
+ *
+ * @author jeff.snyder
+ */
+final class Http2Transport implements Interceptor {
+
+  public static final int DEFAULT_CONNECTIONS = 2;
+  public static final int DEFAULT_MAX_STREAMS = 100;
+
+  private Http2Transport() {
+  }
+
+  /**
+   * @param httpClient  client whose timeouts are applied
+   * @param connections number of HTTP/2 connections the requests are spread over
+   * @param maxStreams  maximum number of requests in flight on each connection
+   * @param metrics     records the requests, as the network interceptors of the client are bypassed
+   * @return null, as there is no HTTP/2 client on this JVM, so the client stays on HTTP/1.1
+   */
+  static Http2Transport create(final OkHttpClient httpClient, final int connections, final int maxStreams,
+                               final Metrics metrics) {
+    return null;
+  }
+
+  @Override
+  public Response intercept(final Chain chain) throws IOException {
+    return chain.proceed(chain.request());
+  }
+}
@@ -0,0 +1,120 @@
+package com.cox.automotive;
+
+/**
+ * A set of primitive ints, used to drop duplicate ids without boxing each one.
+ * It uses open addressing with linear probing, and is not thread safe.
+ *
+ * @author jeff.snyder
+ */
+public class IntHashSet {
+
+  private static final int DEFAULT_CAPACITY = 16;
+  private static final float LOAD_FACTOR = 0.5f;
+
+  // 0 marks an empty slot, so the 0 key is tracked on its own
+  private int[] keys;
+  private boolean containsZero;
+  private int size;
+  private int resizeThreshold;
+
+  public IntHashSet() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * @param expectedSize number of keys expected, so the table does not have to grow while they are added
+   */
+  public IntHashSet(final int expectedSize) {
+    if (expectedSize < 0) {
+      throw new IllegalArgumentException("Expected size cannot be negative: " + expectedSize);
+    }
+    allocate(tableSize(expectedSize));
+  }
+
+  /**
+   * @param key key to add
+   * @return true if the key was added, false if it was already in the set
+   */
+  public boolean add(final int key) {
+    if (key == 0) {
+      if (containsZero) {
+        return false;
+      }
+      containsZero = true;
+      size++;
+      return true;
+    }
+
+    int mask = keys.length - 1;
+    int index = hash(key) & mask;
+    while (keys[index] != 0) {
+      if (keys[index] == key) {
+        return false;
+      }
+      index = (index + 1) & mask;
+    }
+    keys[index] = key;
+    if (++size > resizeThreshold) {
+      rehash(keys.length << 1);
+    }
+    return true;
+  }
+
+  public boolean contains(final int key) {
+    if (key == 0) {
+      return containsZero;
+    }
+
+    int mask = keys.length - 1;
+    int index = hash(key) & mask;
+    while (keys[index] != 0) {
+      if (keys[index] == key) {
+        return true;
+      }
+      index = (index + 1) & mask;
+    }
+    return false;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  private void rehash(final int capacity) {
+    int[] oldKeys = keys;
+    allocate(capacity);
+    int mask = keys.length - 1;
+    for (int key : oldKeys) {
+      if (key != 0) {
+        int index = hash(key) & mask;
+        while (keys[index] != 0) {
+          index = (index + 1) & mask;
+        }
+        keys[index] = key;
+      }
+    }
+  }
+
+  private void allocate(final int capacity) {
+    keys = new int[capacity];
+    resizeThreshold = (int) (capacity * LOAD_FACTOR);
+  }
+
+  private static int tableSize(final int expectedSize) {
+    long needed = Math.max(DEFAULT_CAPACITY, (long) Math.ceil(expectedSize / LOAD_FACTOR) + 1);
+    if (needed > (1 << 30)) {
+      throw new IllegalArgumentException("Expected size is too large: " + expectedSize);
+    }
+    return Integer.highestOneBit((int) needed - 1) << 1;
+  }
+
+  // Ids are often sequential, so spread them before masking to keep the probe runs short
+  private static int hash(final int key) {
+    int h = key * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+}
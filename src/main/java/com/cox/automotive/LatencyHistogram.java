@@ -0,0 +1,115 @@
+package com.cox.automotive;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies in log-linear buckets, in the manner of an HDR histogram: each power of two is split
+ * into 32 buckets, so a percentile is within about 3% of the latency recorded. Latencies from 1ns up to about
+ * 18 minutes are tracked, longer ones are counted in the last bucket.
+ * <p>
+ * Recording only increments counters in preallocated arrays, so it does not allocate or lock and the histogram
+ * can sit on the path of every API call.
+ *
+ * @author jeff.snyder
+ */
+public class LatencyHistogram {
+
+  // Values below 2^LINEAR_BITS have a bucket each, above that each power of two has 2^(LINEAR_BITS - 1) buckets
+  private static final int LINEAR_BITS = 6;
+  private static final int LINEAR_BUCKETS = 1 << LINEAR_BITS;
+  private static final int SUB_BUCKETS = LINEAR_BUCKETS >> 1;
+  private static final int MAX_EXPONENT = 40;
+  private static final int BUCKET_COUNT = LINEAR_BUCKETS + (MAX_EXPONENT - LINEAR_BITS) * SUB_BUCKETS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong totalNanos = new AtomicLong();
+  private final AtomicLong maxNanos = new AtomicLong();
+
+  /**
+   * @param nanos latency to record
+   */
+  public void record(final long nanos) {
+    long value = Math.max(0L, nanos);
+    counts.incrementAndGet(bucketIndex(value));
+    count.incrementAndGet();
+    totalNanos.addAndGet(value);
+    long max;
+    while (value > (max = maxNanos.get())) {
+      if (maxNanos.compareAndSet(max, value)) {
+        break;
+      }
+    }
+  }
+
+  public long getCount() {
+    return count.get();
+  }
+
+  public long getMaxNanos() {
+    return maxNanos.get();
+  }
+
+  /**
+   * @return the mean of the latencies recorded, 0 before any
+   */
+  public double getMeanNanos() {
+    long n = count.get();
+    return (n == 0) ? 0.0 : (double) totalNanos.get() / n;
+  }
+
+  /**
+   * @param percentile percentile wanted, between 0 and 1
+   * @return the highest latency of the bucket holding the percentile (capped by the maximum), 0 before any
+   */
+  public long percentileNanos(final double percentile) {
+    long n = count.get();
+    if (n == 0) {
+      return 0L;
+    }
+    long rank = Math.max(1L, (long) Math.ceil(percentile * n));
+    long seen = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      seen += counts.get(i);
+      if (seen >= rank) {
+        return Math.min(highestValue(i), maxNanos.get());
+      }
+    }
+    return maxNanos.get();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("count=%d p50=%.1fms p95=%.1fms p99=%.1fms max=%.1fms", getCount(),
+      toMillis(percentileNanos(0.50)), toMillis(percentileNanos(0.95)), toMillis(percentileNanos(0.99)), toMillis(getMaxNanos()));
+  }
+
+  static double toMillis(final long nanos) {
+    return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+  }
+
+  static int bucketIndex(final long value) {
+    if (value < LINEAR_BUCKETS) {
+      return (int) value;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    if (exponent >= MAX_EXPONENT) {
+      return BUCKET_COUNT - 1;
+    }
+    // The top LINEAR_BITS bits of the value, the first of which is always set
+    int subBucket = (int) (value >>> (exponent - LINEAR_BITS + 1)) - SUB_BUCKETS;
+    return LINEAR_BUCKETS + (exponent - LINEAR_BITS) * SUB_BUCKETS + subBucket;
+  }
+
+  static long highestValue(final int index) {
+    if (index < LINEAR_BUCKETS) {
+      return index;
+    }
+    int exponent = LINEAR_BITS + (index - LINEAR_BUCKETS) / SUB_BUCKETS;
+    int subBucket = SUB_BUCKETS + (index - LINEAR_BUCKETS) % SUB_BUCKETS;
+    int shift = exponent - LINEAR_BITS + 1;
+    return ((long) (subBucket + 1) << shift) - 1;
+  }
+}
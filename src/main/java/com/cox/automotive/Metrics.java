@@ -0,0 +1,313 @@
+package com.cox.automotive;
+
+import com.google.gson.stream.JsonWriter;
+import io.swagger.client.ApiException;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Metrics of the calls to each API endpoint: the end-to-end latency of the calls, the calls in flight, the calls
+ * that failed, and for the HTTP requests under them (counted by {@link MetricsInterceptor}) the number of requests,
+ * their latency, their failures and the bytes sent and received.
+ * <p>
+ * A call's latency is what its caller waits: the wait in the limiter queue, the retry backoff and every attempt.
+ * A request's latency is one attempt on the network, from sending it to its response headers, which is the
+ * figure to compare with the server.
+ * <p>
+ * Recording does not allocate: the endpoints are an enum indexing preallocated counters, and a call is timed with
+ * the start time handed back by {@link #start}.
+ *
+ * @author jeff.snyder
+ */
+public class Metrics {
+
+  /**
+   * The endpoints of the API
+   */
+  public enum Endpoint {
+    DATASET_ID("datasetId"),
+    VEHICLE_IDS("vehicleIds"),
+    VEHICLE("vehicle"),
+    DEALER("dealer"),
+    ANSWER("answer");
+
+    private final String label;
+
+    Endpoint(final String label) {
+      this.label = label;
+    }
+
+    public String getLabel() {
+      return label;
+    }
+
+    /**
+     * @param path path of a request to the API, such as /api/{datasetId}/vehicles/{vehicleId}
+     * @return the endpoint of the request, or null if it is not one of the API's
+     */
+    static Endpoint forPath(final String path) {
+      // /api/datasetId, /api/{id}/vehicles, /api/{id}/vehicles/{vehicleId}, /api/{id}/dealers/{dealerId}, /api/{id}/answer
+      if (path.endsWith("/datasetId")) {
+        return DATASET_ID;
+      }
+      if (path.endsWith("/answer")) {
+        return ANSWER;
+      }
+      if (path.endsWith("/vehicles")) {
+        return VEHICLE_IDS;
+      }
+      if (path.contains("/vehicles/")) {
+        return VEHICLE;
+      }
+      if (path.contains("/dealers/")) {
+        return DEALER;
+      }
+      return null;
+    }
+  }
+
+  private static final Metrics SHARED = new Metrics();
+
+  private final long startNanos = System.nanoTime();
+  private final EndpointMetrics[] endpoints = new EndpointMetrics[Endpoint.values().length];
+
+  public Metrics() {
+    for (int i = 0; i < endpoints.length; i++) {
+      endpoints[i] = new EndpointMetrics();
+    }
+  }
+
+  /**
+   * @return the metrics of every call made by the process
+   */
+  public static Metrics getShared() {
+    return SHARED;
+  }
+
+  /**
+   * Count a call as in flight
+   *
+   * @return the start time of the call, to be handed to {@link #stop}
+   */
+  public long start(final Endpoint endpoint) {
+    endpoints[endpoint.ordinal()].start();
+    return System.nanoTime();
+  }
+
+  /**
+   * Record the latency of a call and count it as no longer in flight
+   *
+   * @param startNanos start time returned by {@link #start}
+   * @param failed     true if the call failed
+   */
+  public void stop(final Endpoint endpoint, final long startNanos, final boolean failed) {
+    endpoints[endpoint.ordinal()].stop(System.nanoTime() - startNanos, failed);
+  }
+
+  /**
+   * Make a blocking call, recording it
+   */
+  public <T> T call(final Endpoint endpoint, final ApiCall<T> call) throws ApiException {
+    long start = start(endpoint);
+    boolean failed = true;
+    try {
+      T response = call.execute();
+      failed = false;
+      return response;
+    } finally {
+      stop(endpoint, start, failed);
+    }
+  }
+
+  /**
+   * Start an asynchronous call, recording it once it completes
+   */
+  public <T> CompletableFuture<T> callAsync(final Endpoint endpoint, final Supplier<CompletableFuture<T>> call) {
+    final long start = start(endpoint);
+    final CompletableFuture<T> future;
+    try {
+      future = call.get();
+    } catch (RuntimeException | Error e) {
+      stop(endpoint, start, true);
+      throw e;
+    }
+    return future.whenComplete((response, failure) -> stop(endpoint, start, failure != null));
+  }
+
+  /**
+   * Count an HTTP request made for the endpoint
+   *
+   * @param latencyNanos  time from sending the request to its response headers (recorded only with a response)
+   * @param sentBytes     bytes of the request body
+   * @param receivedBytes bytes of the response body (-1 if it failed before a response)
+   * @param failed        true if the request failed or its status was an error
+   */
+  void request(final Endpoint endpoint, final long latencyNanos, final long sentBytes, final long receivedBytes,
+               final boolean failed) {
+    endpoints[endpoint.ordinal()].request(latencyNanos, sentBytes, receivedBytes, failed);
+  }
+
+  /**
+   * Count bytes of a response body read after the request was counted
+   */
+  void received(final Endpoint endpoint, final long bytes) {
+    endpoints[endpoint.ordinal()].bytesReceived.add(bytes);
+  }
+
+  /**
+   * @return the end-to-end latency of the calls, waits and retries included
+   */
+  public LatencyHistogram getCallLatencies(final Endpoint endpoint) {
+    return endpoints[endpoint.ordinal()].latencies;
+  }
+
+  /**
+   * @return the latency of each HTTP request on the network
+   */
+  public LatencyHistogram getRequestLatencies(final Endpoint endpoint) {
+    return endpoints[endpoint.ordinal()].requestLatencies;
+  }
+
+  public long getCalls(final Endpoint endpoint) {
+    return endpoints[endpoint.ordinal()].latencies.getCount();
+  }
+
+  public long getErrors(final Endpoint endpoint) {
+    return endpoints[endpoint.ordinal()].errors.sum();
+  }
+
+  public long getInFlight(final Endpoint endpoint) {
+    return endpoints[endpoint.ordinal()].inFlight.get();
+  }
+
+  public long getRequests(final Endpoint endpoint) {
+    return endpoints[endpoint.ordinal()].requests.sum();
+  }
+
+  public long getRequestErrors(final Endpoint endpoint) {
+    return endpoints[endpoint.ordinal()].requestErrors.sum();
+  }
+
+  /**
+   * @return the requests made beyond one per call, for the retries and hedges
+   */
+  public long getRetries(final Endpoint endpoint) {
+    return Math.max(0L, getRequests(endpoint) - getCalls(endpoint) - getInFlight(endpoint));
+  }
+
+  public long getBytesSent(final Endpoint endpoint) {
+    return endpoints[endpoint.ordinal()].bytesSent.sum();
+  }
+
+  public long getBytesReceived(final Endpoint endpoint) {
+    return endpoints[endpoint.ordinal()].bytesReceived.sum();
+  }
+
+  /**
+   * Write the metrics of every endpoint as JSON
+   *
+   * @param out where the JSON is written
+   */
+  public void writeTo(final Writer out) throws IOException {
+    JsonWriter writer = new JsonWriter(out);
+    writer.setIndent("  ");
+    writer.beginObject();
+    writer.name("uptimeMillis").value(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+    writer.name("endpoints").beginObject();
+    for (Endpoint endpoint : Endpoint.values()) {
+      writer.name(endpoint.getLabel()).beginObject();
+      writer.name("calls").value(getCalls(endpoint));
+      writer.name("errors").value(getErrors(endpoint));
+      writer.name("inFlight").value(getInFlight(endpoint));
+      writer.name("maxInFlight").value(endpoints[endpoint.ordinal()].maxInFlight.get());
+      writer.name("requests").value(getRequests(endpoint));
+      writer.name("requestErrors").value(getRequestErrors(endpoint));
+      writer.name("retries").value(getRetries(endpoint));
+      writer.name("bytesSent").value(getBytesSent(endpoint));
+      writer.name("bytesReceived").value(getBytesReceived(endpoint));
+      writeLatencies(writer, "callLatencyMillis", getCallLatencies(endpoint));
+      writeLatencies(writer, "requestLatencyMillis", getRequestLatencies(endpoint));
+      writer.endObject();
+    }
+    writer.endObject();
+    writer.endObject();
+    writer.flush();
+  }
+
+  private static void writeLatencies(final JsonWriter writer, final String name, final LatencyHistogram latencies)
+    throws IOException {
+    writer.name(name).beginObject();
+    writer.name("mean").value(LatencyHistogram.toMillis(Math.round(latencies.getMeanNanos())));
+    writer.name("p50").value(LatencyHistogram.toMillis(latencies.percentileNanos(0.50)));
+    writer.name("p95").value(LatencyHistogram.toMillis(latencies.percentileNanos(0.95)));
+    writer.name("p99").value(LatencyHistogram.toMillis(latencies.percentileNanos(0.99)));
+    writer.name("max").value(LatencyHistogram.toMillis(latencies.getMaxNanos()));
+    writer.endObject();
+  }
+
+  /**
+   * @return the metrics as JSON
+   */
+  public String toJson() {
+    StringWriter out = new StringWriter();
+    try {
+      writeTo(out);
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to write the metrics.", e);
+    }
+    return out.toString();
+  }
+
+  private static final class EndpointMetrics {
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final LatencyHistogram requestLatencies = new LatencyHistogram();
+    private final AtomicLong inFlight = new AtomicLong();
+    private final AtomicLong maxInFlight = new AtomicLong();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder requestErrors = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+
+    void start() {
+      long current = inFlight.incrementAndGet();
+      long max;
+      while (current > (max = maxInFlight.get())) {
+        if (maxInFlight.compareAndSet(max, current)) {
+          break;
+        }
+      }
+    }
+
+    void stop(final long nanos, final boolean failed) {
+      inFlight.decrementAndGet();
+      latencies.record(nanos);
+      if (failed) {
+        errors.increment();
+      }
+    }
+
+    void request(final long latencyNanos, final long sentBytes, final long receivedBytes, final boolean failed) {
+      requests.increment();
+      if (receivedBytes >= 0) {
+        requestLatencies.record(latencyNanos);
+      }
+      if (failed) {
+        requestErrors.increment();
+      }
+      if (sentBytes > 0) {
+        bytesSent.add(sentBytes);
+      }
+      if (receivedBytes > 0) {
+        bytesReceived.add(receivedBytes);
+      }
+    }
+  }
+}
@@ -0,0 +1,139 @@
+package com.cox.automotive;
+
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.RequestBody;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.ForwardingSink;
+import okio.ForwardingSource;
+import okio.Okio;
+
+import java.io.IOException;
+
+/**
+ * Counts the HTTP requests made to each API endpoint, their latency, their failures and the bytes sent and received.
+ * It is a network interceptor, so every attempt of a retried call is counted and timed on its own, and the bytes are
+ * the ones on the wire (compressed, if the body is).
+ *
+ * @author jeff.snyder
+ */
+public class MetricsInterceptor implements Interceptor {
+
+  private final Metrics metrics;
+
+  public MetricsInterceptor(final Metrics metrics) {
+    this.metrics = metrics;
+  }
+
+  @Override
+  public Response intercept(final Chain chain) throws IOException {
+    Request request = chain.request();
+    final Metrics.Endpoint endpoint = Metrics.Endpoint.forPath(request.httpUrl().encodedPath());
+    if (endpoint == null) {
+      return chain.proceed(request);
+    }
+
+    CountingRequestBody countingBody = null;
+    if (request.body() != null) {
+      countingBody = new CountingRequestBody(request.body());
+      request = request.newBuilder().method(request.method(), countingBody).build();
+    }
+
+    final long start = System.nanoTime();
+    final Response response;
+    try {
+      response = chain.proceed(request);
+    } catch (IOException | RuntimeException e) {
+      metrics.request(endpoint, System.nanoTime() - start, (countingBody != null) ? countingBody.bytesWritten : 0L, -1L,
+        true);
+      throw e;
+    }
+    metrics.request(endpoint, System.nanoTime() - start, (countingBody != null) ? countingBody.bytesWritten : 0L, 0L,
+      !response.isSuccessful());
+
+    if (response.body() == null) {
+      return response;
+    }
+    // The response body is counted as it is read
+    return response.newBuilder().body(new CountingResponseBody(response.body(), endpoint)).build();
+  }
+
+  /**
+   * Counts the bytes of a request body as it is written, as a streamed body has no length up front
+   */
+  private static final class CountingRequestBody extends RequestBody {
+    private final RequestBody body;
+    private long bytesWritten;
+
+    CountingRequestBody(final RequestBody body) {
+      this.body = body;
+    }
+
+    @Override
+    public MediaType contentType() {
+      return body.contentType();
+    }
+
+    @Override
+    public long contentLength() throws IOException {
+      return body.contentLength();
+    }
+
+    @Override
+    public void writeTo(final BufferedSink sink) throws IOException {
+      BufferedSink countingSink = Okio.buffer(new ForwardingSink(sink) {
+        @Override
+        public void write(final Buffer source, final long byteCount) throws IOException {
+          bytesWritten += byteCount;
+          super.write(source, byteCount);
+        }
+      });
+      body.writeTo(countingSink);
+      // Hand everything to the connection's sink without closing it
+      countingSink.emit();
+    }
+  }
+
+  private final class CountingResponseBody extends ResponseBody {
+    private final ResponseBody body;
+    private final Metrics.Endpoint endpoint;
+    private BufferedSource source;
+
+    CountingResponseBody(final ResponseBody body, final Metrics.Endpoint endpoint) {
+      this.body = body;
+      this.endpoint = endpoint;
+    }
+
+    @Override
+    public MediaType contentType() {
+      return body.contentType();
+    }
+
+    @Override
+    public long contentLength() throws IOException {
+      return body.contentLength();
+    }
+
+    @Override
+    public BufferedSource source() throws IOException {
+      if (source == null) {
+        source = Okio.buffer(new ForwardingSource(body.source()) {
+          @Override
+          public long read(final Buffer sink, final long byteCount) throws IOException {
+            long read = super.read(sink, byteCount);
+            if (read > 0) {
+              metrics.received(endpoint, read);
+            }
+            return read;
+          }
+        });
+      }
+      return source;
+    }
+  }
+}
@@ -0,0 +1,80 @@
+package com.cox.automotive;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves the metrics as JSON on the loopback interface while the run is going, at http://localhost:{port}/metrics
+ *
+ * @author jeff.snyder
+ */
+public class MetricsServer implements Closeable {
+
+  private final HttpServer server;
+  private final ExecutorService executor;
+
+  private MetricsServer(final HttpServer server, final ExecutorService executor) {
+    this.server = server;
+    this.executor = executor;
+  }
+
+  /**
+   * Start serving the metrics
+   *
+   * @param metrics metrics to serve
+   * @param port    port to listen on (0 for any free port)
+   * @return the server, to be closed once the run is over
+   */
+  public static MetricsServer start(final Metrics metrics, final int port) {
+    try {
+      HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+      server.createContext("/metrics", exchange -> respond(exchange, metrics));
+      // A daemon thread of its own, so serving the metrics neither keeps the JVM alive nor waits on the fetches
+      ExecutorService executor = Executors.newSingleThreadExecutor(FetchEngine.threadFactory("metrics"));
+      server.setExecutor(executor);
+      server.start();
+      return new MetricsServer(server, executor);
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to serve the metrics on port: " + port, e);
+    }
+  }
+
+  /**
+   * @return the port the metrics are served on
+   */
+  public int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  private static void respond(final HttpExchange exchange, final Metrics metrics) throws IOException {
+    try {
+      if (!"GET".equals(exchange.getRequestMethod())) {
+        exchange.sendResponseHeaders(405, -1);
+        return;
+      }
+      byte[] body = metrics.toJson().getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+      exchange.sendResponseHeaders(200, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    } finally {
+      exchange.close();
+    }
+  }
+}
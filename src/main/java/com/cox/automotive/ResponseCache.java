@@ -0,0 +1,372 @@
+package com.cox.automotive;
+
+import io.swagger.client.model.DealersResponse;
+import io.swagger.client.model.VehicleResponse;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only, memory-mapped file of the vehicle and dealer responses already received, keyed by dataset and id,
+ * so a run that is retried or resumed skips the calls that succeeded before. It is the checkpoint of a dataset
+ * in progress: the vehicles received (with their dealer ids) and the dealers resolved.
+ * <p>
+ * The file starts with a magic number, followed by the records:
+ * <pre>
+ * int    payload length (0 marks the end of the records)
+ * int    CRC32 of the payload
+ * byte[] payload: type (1 vehicle, 2 dealer), dataset id, id, then
+ *        vehicle: year, dealer id, make, model
+ *        dealer:  name
+ * </pre>
+ * Strings are a short length (-1 for null) followed by the UTF-8 bytes, missing ints are Integer.MIN_VALUE.
+ * <p>
+ * A record is written before its length, so a record that was cut short has a length of 0 and ends the file.
+ * A record whose CRC does not match (a torn write after a power loss) also ends the file: the startup scan keeps
+ * the records before it, and the next append overwrites it.
+ *
+ * @author jeff.snyder
+ */
+public class ResponseCache implements Closeable {
+
+  private static final int MAGIC = 0x43414331; // "CAC1"
+  private static final int HEADER_SIZE = 4;
+  private static final int RECORD_HEADER_SIZE = 8;
+  private static final int INITIAL_CAPACITY = 1 << 20;
+  private static final int MAX_CAPACITY = Integer.MAX_VALUE;
+
+  private static final byte VEHICLE = 1;
+  private static final byte DEALER = 2;
+
+  private final Path file;
+  private final FileChannel channel;
+
+  // Replaced when the file grows; readers keep using the mapping they started with, which stays valid
+  private volatile MappedByteBuffer buffer;
+
+  // End of the valid records, where the next one is appended (guarded by this)
+  private int position;
+
+  // Offsets of the records of each dataset, by id
+  private final Map<String, Map<Integer, Integer>> vehicleOffsets = new ConcurrentHashMap<>();
+  private final Map<String, Map<Integer, Integer>> dealerOffsets = new ConcurrentHashMap<>();
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  private ResponseCache(final Path file, final FileChannel channel) {
+    this.file = file;
+    this.channel = channel;
+  }
+
+  /**
+   * Open the cache file, creating it if needed, and index the records already in it
+   *
+   * @param file cache file
+   * @return the cache, to be closed once the run is over
+   */
+  public static ResponseCache open(final Path file) {
+    try {
+      FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      ResponseCache cache = new ResponseCache(file, channel);
+      try {
+        cache.load();
+      } catch (IOException | RuntimeException e) {
+        channel.close();
+        throw e;
+      }
+      return cache;
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to open the response cache: " + file, e);
+    }
+  }
+
+  /**
+   * Map the file and scan its records to build the index
+   */
+  private void load() throws IOException {
+    long size = channel.size();
+    if (size > MAX_CAPACITY) {
+      throw new IOException("Response cache is too large: " + size);
+    }
+    // Check the magic number before mapping, which would grow the file
+    if (size > 0) {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      while (header.hasRemaining() && channel.read(header, header.position()) > 0) {
+        // Keep reading until the header is complete or the file ends
+      }
+      if (header.hasRemaining() || header.getInt(0) != MAGIC) {
+        throw new IOException("Not a response cache: " + file);
+      }
+    }
+    buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, INITIAL_CAPACITY));
+
+    if (size == 0) {
+      buffer.putInt(0, MAGIC);
+    }
+
+    int offset = HEADER_SIZE;
+    CRC32 crc = new CRC32();
+    while (offset + RECORD_HEADER_SIZE <= buffer.capacity()) {
+      int length = buffer.getInt(offset);
+      if ((length <= 0) || (length > buffer.capacity() - offset - RECORD_HEADER_SIZE)) {
+        break;
+      }
+      ByteBuffer payload = slice(buffer, offset + RECORD_HEADER_SIZE, length);
+      crc.reset();
+      crc.update(payload.duplicate());
+      if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+        break;
+      }
+      index(payload, offset);
+      offset += RECORD_HEADER_SIZE + length;
+    }
+    position = offset;
+
+    // Clear whatever follows the valid records (such as a torn record), so it cannot be mistaken for one later
+    if (position + 4 <= buffer.capacity()) {
+      buffer.putInt(position, 0);
+    }
+  }
+
+  private void index(final ByteBuffer payload, final int offset) {
+    byte type = payload.get();
+    String datasetId = getString(payload);
+    int id = payload.getInt();
+    offsets(type == VEHICLE ? vehicleOffsets : dealerOffsets, datasetId).put(id, offset);
+  }
+
+  /**
+   * @return the cached response for the vehicle, or null if it has not been received before
+   */
+  public VehicleResponse getVehicle(final String datasetId, final int vehicleId) {
+    ByteBuffer payload = find(vehicleOffsets, datasetId, vehicleId);
+    if (payload == null) {
+      return null;
+    }
+    VehicleResponse vehicleResponse = new VehicleResponse();
+    vehicleResponse.setVehicleId(vehicleId);
+    vehicleResponse.setYear(VehicleStore.toInteger(payload.getInt()));
+    vehicleResponse.setDealerId(VehicleStore.toInteger(payload.getInt()));
+    vehicleResponse.setMake(getString(payload));
+    vehicleResponse.setModel(getString(payload));
+    return vehicleResponse;
+  }
+
+  /**
+   * @return the cached response for the dealer, or null if it has not been received before
+   */
+  public DealersResponse getDealer(final String datasetId, final int dealerId) {
+    ByteBuffer payload = find(dealerOffsets, datasetId, dealerId);
+    if (payload == null) {
+      return null;
+    }
+    DealersResponse dealersResponse = new DealersResponse();
+    dealersResponse.setDealerId(dealerId);
+    dealersResponse.setName(getString(payload));
+    return dealersResponse;
+  }
+
+  public void putVehicle(final String datasetId, final VehicleResponse vehicleResponse) {
+    byte[] make = toBytes(vehicleResponse.getMake());
+    byte[] model = toBytes(vehicleResponse.getModel());
+    ByteBuffer payload = newPayload(VEHICLE, datasetId, vehicleResponse.getVehicleId(), 8 + stringSize(make) + stringSize(model));
+    payload.putInt(VehicleStore.toInt(vehicleResponse.getYear()));
+    payload.putInt(VehicleStore.toInt(vehicleResponse.getDealerId()));
+    putString(payload, make);
+    putString(payload, model);
+    append(vehicleOffsets, datasetId, vehicleResponse.getVehicleId(), payload);
+  }
+
+  public void putDealer(final String datasetId, final DealersResponse dealersResponse) {
+    byte[] name = toBytes(dealersResponse.getName());
+    ByteBuffer payload = newPayload(DEALER, datasetId, dealersResponse.getDealerId(), stringSize(name));
+    putString(payload, name);
+    append(dealerOffsets, datasetId, dealersResponse.getDealerId(), payload);
+  }
+
+  /**
+   * @return the dealers already received for the dataset, by id
+   */
+  public Map<Integer, DealersResponse> getDealers(final String datasetId) {
+    Map<Integer, DealersResponse> dealers = new ConcurrentHashMap<>();
+    for (Integer dealerId : offsets(dealerOffsets, datasetId).keySet()) {
+      dealers.put(dealerId, getDealer(datasetId, dealerId));
+    }
+    return dealers;
+  }
+
+  /**
+   * @return the number of vehicles already received for the dataset
+   */
+  public int getVehicleCount(final String datasetId) {
+    return offsets(vehicleOffsets, datasetId).size();
+  }
+
+  public long getHits() {
+    return hits.sum();
+  }
+
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  /**
+   * @return the number of bytes of valid records
+   */
+  public synchronized int getSize() {
+    return position;
+  }
+
+  /**
+   * Write the records appended so far to the disk. They already survive the process being killed once appended,
+   * this also makes them survive the machine going down.
+   */
+  public void checkpoint() {
+    // The latest mapping covers the whole file, including what was written through the earlier ones
+    buffer.force();
+  }
+
+  @Override
+  public synchronized void close() {
+    try {
+      buffer.force();
+      channel.close();
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to close the response cache: " + file, e);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "file=" + file + " bytes=" + getSize() + " hits=" + getHits() + " misses=" + getMisses();
+  }
+
+  private ByteBuffer find(final Map<String, Map<Integer, Integer>> offsets, final String datasetId, final int id) {
+    Map<Integer, Integer> datasetOffsets = offsets.get(datasetId);
+    Integer offset = (datasetOffsets == null) ? null : datasetOffsets.get(id);
+    if (offset == null) {
+      misses.increment();
+      return null;
+    }
+    hits.increment();
+
+    MappedByteBuffer current = buffer;
+    ByteBuffer payload = slice(current, offset + RECORD_HEADER_SIZE, current.getInt(offset));
+    // Skip the type, dataset id and id, which are known
+    payload.position(payload.position() + 1);
+    payload.position(payload.position() + 2 + Math.max(0, payload.getShort()));
+    payload.getInt();
+    return payload;
+  }
+
+  private synchronized void append(final Map<String, Map<Integer, Integer>> offsets, final String datasetId, final int id,
+                                   final ByteBuffer payload) {
+    payload.flip();
+    int length = payload.remaining();
+    int recordSize = RECORD_HEADER_SIZE + length;
+    // Keep room for the 0 length that ends the records
+    if (!ensureCapacity((long) position + recordSize + 4)) {
+      return;
+    }
+
+    CRC32 crc = new CRC32();
+    crc.update(payload.duplicate());
+
+    MappedByteBuffer current = buffer;
+    ByteBuffer record = current.duplicate();
+    record.position(position + RECORD_HEADER_SIZE);
+    record.put(payload);
+    current.putInt(position + RECORD_HEADER_SIZE + length, 0);
+    current.putInt(position + 4, (int) crc.getValue());
+    // The length goes last, so the record only counts once it is complete
+    current.putInt(position, length);
+
+    offsets(offsets, datasetId).put(id, position);
+    position += recordSize;
+  }
+
+  /**
+   * @return false if the file cannot grow any further (the response is then just not cached)
+   */
+  private boolean ensureCapacity(final long needed) {
+    MappedByteBuffer current = buffer;
+    if (needed <= current.capacity()) {
+      return true;
+    }
+    if (needed > MAX_CAPACITY) {
+      return false;
+    }
+    long capacity = Math.min(MAX_CAPACITY, Math.max(needed, (long) current.capacity() << 1));
+    try {
+      buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+      return true;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  private static Map<Integer, Integer> offsets(final Map<String, Map<Integer, Integer>> offsets, final String datasetId) {
+    return offsets.computeIfAbsent(datasetId, id -> new ConcurrentHashMap<>());
+  }
+
+  private static ByteBuffer newPayload(final byte type, final String datasetId, final int id, final int valuesSize) {
+    byte[] datasetIdBytes = toBytes(datasetId);
+    ByteBuffer payload = ByteBuffer.allocate(1 + stringSize(datasetIdBytes) + 4 + valuesSize);
+    payload.put(type);
+    putString(payload, datasetIdBytes);
+    payload.putInt(id);
+    return payload;
+  }
+
+  private static ByteBuffer slice(final ByteBuffer buffer, final int offset, final int length) {
+    ByteBuffer slice = buffer.duplicate();
+    slice.limit(offset + length);
+    slice.position(offset);
+    return slice;
+  }
+
+  private static byte[] toBytes(final String value) {
+    if (value == null) {
+      return null;
+    }
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    if (bytes.length > Short.MAX_VALUE) {
+      throw new IllegalArgumentException("String is too long to be cached: " + bytes.length + " bytes");
+    }
+    return bytes;
+  }
+
+  private static int stringSize(final byte[] bytes) {
+    return 2 + ((bytes == null) ? 0 : bytes.length);
+  }
+
+  private static void putString(final ByteBuffer payload, final byte[] bytes) {
+    if (bytes == null) {
+      payload.putShort((short) -1);
+    } else {
+      payload.putShort((short) bytes.length);
+      payload.put(bytes);
+    }
+  }
+
+  private static String getString(final ByteBuffer payload) {
+    int length = payload.getShort();
+    if (length < 0) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    payload.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
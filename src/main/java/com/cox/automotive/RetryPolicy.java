@@ -0,0 +1,375 @@
+package com.cox.automotive;
+
+import io.swagger.client.ApiException;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Makes the API calls resilient: transient failures are retried with jittered exponential backoff, and a call
+ * which takes longer than the recent 95th percentile can optionally be hedged with a second request. Only one
+ * response is ever returned per call, so neither retries nor hedges can add a vehicle or dealer twice.
+ *
+ * @author jeff.snyder
+ */
+public class RetryPolicy {
+
+  public static final int DEFAULT_MAX_ATTEMPTS = 3;
+  public static final long DEFAULT_BASE_DELAY_MILLIS = 50L;
+  public static final long DEFAULT_MAX_DELAY_MILLIS = 2000L;
+
+  // Percentile of the recent latencies after which a call is hedged
+  private static final double HEDGE_PERCENTILE = 0.95;
+
+  // Hedged attempts need their own threads, as the caller is waiting on whichever attempt finishes first
+  private static final Executor HEDGE_EXECUTOR = Executors.newCachedThreadPool(FetchEngine.threadFactory("hedge"));
+
+  // Runs the delayed retries and hedges of the asynchronous calls
+  private static final ScheduledExecutorService SCHEDULER =
+    Executors.newSingleThreadScheduledExecutor(FetchEngine.threadFactory("retry-scheduler"));
+
+  private static final RetryPolicy SHARED = new RetryPolicy();
+
+  private final int maxAttempts;
+  private final long baseDelayNanos;
+  private final long maxDelayNanos;
+  private final boolean hedging;
+
+  private final LatencyWindow latencies = new LatencyWindow();
+  private final AtomicLong retries = new AtomicLong();
+  private final AtomicLong hedges = new AtomicLong();
+
+  public RetryPolicy() {
+    this(DEFAULT_MAX_ATTEMPTS, false);
+  }
+
+  /**
+   * @param maxAttempts maximum number of attempts for each call (1 means no retries)
+   * @param hedging     true to send a second request when a call takes longer than the recent 95th percentile
+   */
+  public RetryPolicy(final int maxAttempts, final boolean hedging) {
+    this(maxAttempts, hedging, DEFAULT_BASE_DELAY_MILLIS, DEFAULT_MAX_DELAY_MILLIS);
+  }
+
+  /**
+   * @param maxAttempts     maximum number of attempts for each call (1 means no retries)
+   * @param hedging         true to send a second request when a call takes longer than the recent 95th percentile
+   * @param baseDelayMillis delay before the first retry, doubled for each further retry
+   * @param maxDelayMillis  longest delay between retries
+   */
+  public RetryPolicy(final int maxAttempts, final boolean hedging, final long baseDelayMillis, final long maxDelayMillis) {
+    if (maxAttempts < 1) {
+      throw new IllegalArgumentException("Attempts must be at least 1: " + maxAttempts);
+    }
+    this.maxAttempts = maxAttempts;
+    this.hedging = hedging;
+    this.baseDelayNanos = TimeUnit.MILLISECONDS.toNanos(baseDelayMillis);
+    this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+  }
+
+  /**
+   * @return the policy shared by all of the API calls in the process unless another one is set
+   */
+  public static RetryPolicy getShared() {
+    return SHARED;
+  }
+
+  /**
+   * Make a blocking call, retrying transient failures
+   *
+   * @param call     call to be made
+   * @param deadline deadline of the dataset the call is for
+   * @param <T>      type of the response
+   * @return the response of the call
+   * @throws ApiException when the call fails and cannot be retried
+   */
+  public <T> T call(final ApiCall<T> call, final Deadline deadline) throws ApiException {
+    for (int attempt = 1; ; attempt++) {
+      deadline.check();
+      try {
+        return hedging ? callHedged(call, deadline) : timed(call);
+      } catch (ApiException e) {
+        if ((attempt >= maxAttempts) || !isTransient(e)) {
+          throw e;
+        }
+        retries.incrementAndGet();
+        deadline.sleep(backoffNanos(attempt));
+      }
+    }
+  }
+
+  /**
+   * Start an asynchronous call, retrying transient failures without blocking a thread during the backoff
+   *
+   * @param call     starts the call and returns its future
+   * @param deadline deadline of the dataset the call is for
+   * @param <T>      type of the response
+   * @return a future for the response of the call
+   */
+  public <T> CompletableFuture<T> callAsync(final Supplier<CompletableFuture<T>> call, final Deadline deadline) {
+    CompletableFuture<T> result = new CompletableFuture<>();
+    attemptAsync(call, deadline, 1, result);
+    return result;
+  }
+
+  public int getMaxAttempts() {
+    return maxAttempts;
+  }
+
+  public boolean isHedging() {
+    return hedging;
+  }
+
+  /**
+   * @return the number of retries made
+   */
+  public long getRetries() {
+    return retries.get();
+  }
+
+  /**
+   * @return the number of hedged requests made
+   */
+  public long getHedges() {
+    return hedges.get();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("maxAttempts=%d hedging=%b retries=%d hedges=%d p95=%.1fms",
+      maxAttempts, hedging, getRetries(), getHedges(), latencies.percentileNanos(HEDGE_PERCENTILE) / 1_000_000.0);
+  }
+
+  /**
+   * @param e failure of a call
+   * @return true for the failures worth retrying: I/O errors, timeouts, throttling and server errors
+   */
+  static boolean isTransient(final Throwable e) {
+    for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+      if (cause instanceof IOException) {
+        return true;
+      }
+      if (cause instanceof ApiException) {
+        int code = ((ApiException) cause).getCode();
+        if ((code == 408) || (code == 429) || (code >= 500)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private <T> void attemptAsync(final Supplier<CompletableFuture<T>> call, final Deadline deadline, final int attempt,
+                                final CompletableFuture<T> result) {
+    if (deadline.isExpired()) {
+      result.completeExceptionally(deadline.exceeded());
+      return;
+    }
+
+    CompletableFuture<T> response = hedging ? hedgedAsync(call) : timedAsync(call);
+    response.whenComplete((value, e) -> {
+      if (e == null) {
+        result.complete(value);
+      } else if ((attempt >= maxAttempts) || !isTransient(e)) {
+        result.completeExceptionally(FetchEngine.unwrap(e));
+      } else {
+        retries.incrementAndGet();
+        long delayNanos = Math.min(backoffNanos(attempt), deadline.remainingNanos());
+        SCHEDULER.schedule(() -> attemptAsync(call, deadline, attempt + 1, result), delayNanos, TimeUnit.NANOSECONDS);
+      }
+    });
+  }
+
+  private <T> T callHedged(final ApiCall<T> call, final Deadline deadline) throws ApiException {
+    long hedgeAfterNanos = latencies.percentileNanos(HEDGE_PERCENTILE);
+    if (hedgeAfterNanos <= 0L) {
+      // Not enough latencies seen yet to know when a call is slow
+      return timed(call);
+    }
+
+    CompletableFuture<T> primary = submit(call);
+    try {
+      return primary.get(Math.min(hedgeAfterNanos, deadline.remainingNanos()), TimeUnit.NANOSECONDS);
+    } catch (TimeoutException e) {
+      deadline.check();
+      hedges.incrementAndGet();
+      return await(firstSuccess(primary, submit(call)), deadline);
+    } catch (ExecutionException e) {
+      throw asApiException(e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while waiting.", e);
+    }
+  }
+
+  private <T> CompletableFuture<T> hedgedAsync(final Supplier<CompletableFuture<T>> call) {
+    CompletableFuture<T> primary = timedAsync(call);
+    long hedgeAfterNanos = latencies.percentileNanos(HEDGE_PERCENTILE);
+    if (hedgeAfterNanos <= 0L) {
+      return primary;
+    }
+
+    final CompletableFuture<T> hedge = new CompletableFuture<>();
+    final AtomicBoolean hedgeStarted = new AtomicBoolean();
+    SCHEDULER.schedule(() -> {
+      if (!primary.isDone() && hedgeStarted.compareAndSet(false, true)) {
+        hedges.incrementAndGet();
+        timedAsync(call).whenComplete((value, e) -> {
+          if (e == null) {
+            hedge.complete(value);
+          } else {
+            hedge.completeExceptionally(e);
+          }
+        });
+      }
+    }, hedgeAfterNanos, TimeUnit.NANOSECONDS);
+
+    // If the primary is done before the hedge starts, the hedge never starts and shares the primary's failure
+    primary.whenComplete((value, e) -> {
+      if (hedgeStarted.compareAndSet(false, true) && (e != null)) {
+        hedge.completeExceptionally(e);
+      }
+    });
+
+    return firstSuccess(primary, hedge);
+  }
+
+  private <T> T await(final CompletableFuture<T> future, final Deadline deadline) throws ApiException {
+    try {
+      return future.get(deadline.remainingNanos(), TimeUnit.NANOSECONDS);
+    } catch (TimeoutException e) {
+      throw deadline.exceeded();
+    } catch (ExecutionException e) {
+      throw asApiException(e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while waiting.", e);
+    }
+  }
+
+  private <T> CompletableFuture<T> submit(final ApiCall<T> call) {
+    final CompletableFuture<T> future = new CompletableFuture<>();
+    HEDGE_EXECUTOR.execute(() -> {
+      try {
+        future.complete(timed(call));
+      } catch (Throwable e) {
+        future.completeExceptionally(e);
+      }
+    });
+    return future;
+  }
+
+  private <T> T timed(final ApiCall<T> call) throws ApiException {
+    long start = System.nanoTime();
+    T response = call.execute();
+    latencies.record(System.nanoTime() - start);
+    return response;
+  }
+
+  private <T> CompletableFuture<T> timedAsync(final Supplier<CompletableFuture<T>> call) {
+    final long start = System.nanoTime();
+    return call.get().whenComplete((value, e) -> {
+      if (e == null) {
+        latencies.record(System.nanoTime() - start);
+      }
+    });
+  }
+
+  /**
+   * @param attempt attempt which failed (starting at 1)
+   * @return the delay before the next attempt, with full jitter so the retries of many calls are spread out
+   */
+  private long backoffNanos(final int attempt) {
+    long ceiling = Math.min(maxDelayNanos, baseDelayNanos << Math.min(attempt - 1, 30));
+    return ThreadLocalRandom.current().nextLong(ceiling + 1);
+  }
+
+  /**
+   * @return a future completed by whichever future succeeds first, or by the first failure if both fail
+   */
+  private static <T> CompletableFuture<T> firstSuccess(final CompletableFuture<T> first, final CompletableFuture<T> second) {
+    final CompletableFuture<T> result = new CompletableFuture<>();
+    final AtomicReference<Throwable> firstFailure = new AtomicReference<>();
+    final AtomicLong failures = new AtomicLong();
+    BiConsumer<T, Throwable> onComplete = (value, e) -> {
+      if (e == null) {
+        result.complete(value);
+      } else {
+        firstFailure.compareAndSet(null, FetchEngine.unwrap(e));
+        if (failures.incrementAndGet() == 2) {
+          result.completeExceptionally(firstFailure.get());
+        }
+      }
+    };
+    first.whenComplete(onComplete);
+    second.whenComplete(onComplete);
+    return result;
+  }
+
+  private static ApiException asApiException(final ExecutionException e) {
+    Throwable cause = FetchEngine.unwrap(e);
+    if (cause instanceof ApiException) {
+      return (ApiException) cause;
+    }
+    throw FetchEngine.propagate(cause);
+  }
+
+  /**
+   * The most recent latencies, to estimate the percentile after which a call is hedged
+   */
+  private static final class LatencyWindow {
+
+    private static final int SIZE = 1024;
+    private static final int MIN_SAMPLES = 20;
+
+    // Recompute the percentile only every so many samples, as it needs a sort
+    private static final int RECOMPUTE_INTERVAL = 64;
+
+    private final long[] samples = new long[SIZE];
+    private long count;
+    private volatile long cachedPercentileNanos;
+
+    synchronized void record(final long nanos) {
+      samples[(int) (count++ % SIZE)] = nanos;
+      if ((count % RECOMPUTE_INTERVAL) == 0) {
+        cachedPercentileNanos = 0L;
+      }
+    }
+
+    /**
+     * @param percentile percentile wanted (only one percentile is used, so it is cached as is)
+     * @return the latency at the percentile, or 0 if there are not enough samples yet
+     */
+    long percentileNanos(final double percentile) {
+      long cached = cachedPercentileNanos;
+      if (cached > 0L) {
+        return cached;
+      }
+      synchronized (this) {
+        if (count < MIN_SAMPLES) {
+          return 0L;
+        }
+        if (cachedPercentileNanos == 0L) {
+          int size = (int) Math.min(count, SIZE);
+          long[] sorted = Arrays.copyOf(samples, size);
+          Arrays.sort(sorted);
+          cachedPercentileNanos = Math.max(1L, sorted[Math.min(size - 1, (int) (percentile * size))]);
+        }
+        return cachedPercentileNanos;
+      }
+    }
+  }
+}
@@ -0,0 +1,167 @@
+package com.cox.automotive;
+
+import io.swagger.client.ApiException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces identical calls made at the same time: the first caller for a key makes the call, and the callers
+ * asking for the same key while it is in flight share its result (or failure) rather than calling again.
+ * Placed in front of the retries, it also keeps a retried call from overlapping another caller's call.
+ * <p>
+ * Nothing is kept once a call completes; a later caller makes a new call.
+ *
+ * @param <K> type of the keys identifying identical calls
+ * @param <V> type of the responses
+ * @author jeff.snyder
+ */
+public class SingleFlight<K, V> {
+
+  private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+  private final LongAdder calls = new LongAdder();
+  private final LongAdder sharedCalls = new LongAdder();
+
+  /**
+   * Make a blocking call, unless an identical one is in flight, in which case wait for its result
+   *
+   * @param key      identifies identical calls
+   * @param call     call to be made
+   * @param deadline bounds the wait for a call made by another caller
+   * @return the response of the call
+   * @throws ApiException when the call fails
+   */
+  public V call(final K key, final ApiCall<V> call, final Deadline deadline) throws ApiException {
+    CompletableFuture<V> flight = new CompletableFuture<>();
+    CompletableFuture<V> leader = inFlight.putIfAbsent(key, flight);
+    if (leader != null) {
+      sharedCalls.increment();
+      long waitStart = Tracer.getShared().begin();
+      try {
+        return await(leader, deadline);
+      } finally {
+        Tracer.getShared().end(Tracer.Category.WAIT, "coalesced call", null, waitStart);
+      }
+    }
+
+    calls.increment();
+    try {
+      V response = call.execute();
+      flight.complete(response);
+      return response;
+    } catch (ApiException | RuntimeException | Error e) {
+      flight.completeExceptionally(e);
+      throw e;
+    } finally {
+      inFlight.remove(key, flight);
+    }
+  }
+
+  /**
+   * Start an asynchronous call, unless an identical one is in flight, in which case share its future
+   *
+   * @param key  identifies identical calls
+   * @param call starts the call and returns its future
+   * @return a future for the response of the call
+   */
+  public CompletableFuture<V> callAsync(final K key, final Supplier<CompletableFuture<V>> call) {
+    CompletableFuture<V> flight = new CompletableFuture<>();
+    CompletableFuture<V> leader = inFlight.putIfAbsent(key, flight);
+    if (leader != null) {
+      sharedCalls.increment();
+      // A future of its own, so one caller cannot complete or cancel the others'
+      return leader.thenApply(response -> response);
+    }
+
+    calls.increment();
+    try {
+      call.get().whenComplete((response, failure) -> {
+        inFlight.remove(key, flight);
+        if (failure != null) {
+          flight.completeExceptionally(failure);
+        } else {
+          flight.complete(response);
+        }
+      });
+    } catch (RuntimeException e) {
+      inFlight.remove(key, flight);
+      flight.completeExceptionally(e);
+    }
+    return flight.thenApply(response -> response);
+  }
+
+  /**
+   * @return the number of calls made
+   */
+  public long getCalls() {
+    return calls.sum();
+  }
+
+  /**
+   * @return the number of callers that shared a call made by another caller
+   */
+  public long getSharedCalls() {
+    return sharedCalls.sum();
+  }
+
+  /**
+   * @return the number of calls in flight
+   */
+  public int getInFlight() {
+    return inFlight.size();
+  }
+
+  @Override
+  public String toString() {
+    return "calls=" + getCalls() + " shared=" + getSharedCalls();
+  }
+
+  private static <V> V await(final CompletableFuture<V> leader, final Deadline deadline) throws ApiException {
+    try {
+      return deadline.await(leader);
+    } catch (RuntimeException e) {
+      // Fail the way the call itself would have
+      if (e.getCause() instanceof ApiException) {
+        throw (ApiException) e.getCause();
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Identifies a call by the endpoint, the dataset and the id it is for
+   */
+  public static final class Key {
+    private final String endpoint;
+    private final String datasetId;
+    private final int id;
+
+    public Key(final String endpoint, final String datasetId, final int id) {
+      this.endpoint = endpoint;
+      this.datasetId = datasetId;
+      this.id = id;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return (id == other.id) && endpoint.equals(other.endpoint) && datasetId.equals(other.datasetId);
+    }
+
+    @Override
+    public int hashCode() {
+      return (31 * (31 * endpoint.hashCode() + datasetId.hashCode())) + id;
+    }
+
+    @Override
+    public String toString() {
+      return endpoint + "(" + datasetId + "," + id + ")";
+    }
+  }
+}
@@ -0,0 +1,115 @@
+package com.cox.automotive;
+
+import com.google.gson.stream.JsonWriter;
+import io.swagger.client.model.DealerAnswer;
+import io.swagger.client.model.VehicleAnswer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The answer for a dataset, still in the vehicle store: the resolved dealers and, for each of them, the rows of
+ * its vehicles. It can either create the generated model objects or write the answer JSON directly, dealer by
+ * dealer, so the whole answer never has to exist as objects or as one string.
+ *
+ * @author jeff.snyder
+ */
+public class StoredAnswer {
+
+  private final VehicleStore vehicleStore;
+  private final DealerInfo[] dealers;
+
+  // The vehicles of dealer d are the rows rows[offsets[d]] up to (but not including) rows[offsets[d + 1]]
+  private final int[] offsets;
+  private final int[] rows;
+
+  /**
+   * @param vehicleStore vehicles of the dataset
+   * @param dealers      dealers of the dataset, in the order they are answered
+   * @param offsets      start of each dealer's vehicles in rows, with the total number of rows at the end
+   * @param rows         rows of the vehicles, grouped by dealer
+   */
+  StoredAnswer(final VehicleStore vehicleStore, final DealerInfo[] dealers, final int[] offsets, final int[] rows) {
+    this.vehicleStore = vehicleStore;
+    this.dealers = dealers;
+    this.offsets = offsets;
+    this.rows = rows;
+  }
+
+  public int getDealerCount() {
+    return dealers.length;
+  }
+
+  public int getVehicleCount() {
+    return rows.length;
+  }
+
+  /**
+   * @return the dealers with their vehicles as the generated model objects
+   */
+  public List<DealerAnswer> toDealerAnswers() {
+    List<DealerAnswer> dealerAnswers = new ArrayList<>(dealers.length);
+    for (int d = 0; d < dealers.length; d++) {
+      DealerAnswer dealerAnswer = new DealerAnswer();
+      dealerAnswer.setDealerId(dealers[d].getDealerId());
+      dealerAnswer.setName(dealers[d].getName());
+
+      // Size each dealer's list exactly, so the vehicles are copied once
+      List<VehicleAnswer> vehicles = new ArrayList<>(offsets[d + 1] - offsets[d]);
+      for (int i = offsets[d]; i < offsets[d + 1]; i++) {
+        vehicles.add(toVehicleAnswer(rows[i]));
+      }
+      dealerAnswer.setVehicles(vehicles);
+      dealerAnswers.add(dealerAnswer);
+    }
+    return dealerAnswers;
+  }
+
+  /**
+   * Write the answer as the generated client would serialize it (null fields are left out)
+   *
+   * @param writer where the answer JSON is written
+   */
+  public void writeTo(final JsonWriter writer) throws IOException {
+    writer.beginObject();
+    writer.name("dealers").beginArray();
+    for (int d = 0; d < dealers.length; d++) {
+      writer.beginObject();
+      writer.name("dealerId").value(dealers[d].getDealerId());
+      ApiCodecs.writeString(writer, "name", dealers[d].getName());
+      writer.name("vehicles").beginArray();
+      for (int i = offsets[d]; i < offsets[d + 1]; i++) {
+        writeVehicle(writer, rows[i]);
+      }
+      writer.endArray();
+      writer.endObject();
+    }
+    writer.endArray();
+    writer.endObject();
+  }
+
+  private void writeVehicle(final JsonWriter writer, final int row) throws IOException {
+    writer.beginObject();
+    writeInt(writer, "vehicleId", vehicleStore.getVehicleId(row));
+    writeInt(writer, "year", vehicleStore.getYear(row));
+    ApiCodecs.writeString(writer, "make", vehicleStore.getMake(row));
+    ApiCodecs.writeString(writer, "model", vehicleStore.getModel(row));
+    writer.endObject();
+  }
+
+  private static void writeInt(final JsonWriter writer, final String name, final int value) throws IOException {
+    if (value != VehicleStore.NULL_INT) {
+      writer.name(name).value(value);
+    }
+  }
+
+  private VehicleAnswer toVehicleAnswer(final int row) {
+    VehicleAnswer vehicleAnswer = new VehicleAnswer();
+    vehicleAnswer.setVehicleId(VehicleStore.toInteger(vehicleStore.getVehicleId(row)));
+    vehicleAnswer.setYear(VehicleStore.toInteger(vehicleStore.getYear(row)));
+    vehicleAnswer.setMake(vehicleStore.getMake(row));
+    vehicleAnswer.setModel(vehicleStore.getModel(row));
+    return vehicleAnswer;
+  }
+}
@@ -0,0 +1,73 @@
+package com.cox.automotive;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.MalformedJsonException;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.RequestBody;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+import io.swagger.client.ApiClient;
+import io.swagger.client.ApiException;
+import okio.Buffer;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The generated API client, with the models that have a codec in {@link ApiCodecs} read straight from the response
+ * stream and written straight to the request body, rather than through a string and Gson's reflection. Everything
+ * else, and the way failures are reported, is left to the generated client.
+ *
+ * @author jeff.snyder
+ */
+class StreamingApiClient extends ApiClient {
+
+  @Override
+  public <T> T deserialize(final Response response, final Type returnType) throws ApiException {
+    ApiCodecs.Codec<T> codec = (returnType != null) ? ApiCodecs.<T>forType(returnType) : null;
+    if ((codec == null) || (response == null) || (response.body() == null) || !isJsonMime(contentType(response))) {
+      return super.deserialize(response, returnType);
+    }
+    try (ResponseBody body = response.body()) {
+      return ApiCodecs.read(body.charStream(), codec);
+    } catch (MalformedJsonException | EOFException | IllegalStateException | NumberFormatException e) {
+      // A malformed body fails as it does through Gson
+      throw new JsonSyntaxException(e);
+    } catch (IOException e) {
+      throw new ApiException(e);
+    }
+  }
+
+  @Override
+  public RequestBody serialize(final Object obj, final String contentType) throws ApiException {
+    if (obj instanceof RequestBody) {
+      // A body already built, such as the streaming answer, is sent as it is
+      return (RequestBody) obj;
+    }
+    ApiCodecs.Codec<Object> codec = (obj != null) ? ApiCodecs.forType(obj.getClass()) : null;
+    if ((codec == null) || !isJsonMime(contentType)) {
+      return super.serialize(obj, contentType);
+    }
+    Buffer buffer = new Buffer();
+    try (Writer out = new OutputStreamWriter(buffer.outputStream(), StandardCharsets.UTF_8)) {
+      ApiCodecs.write(out, codec, obj);
+    } catch (IOException e) {
+      throw new ApiException(e);
+    }
+    // The same content type as the generated client sends, which adds the charset when there is none
+    MediaType mediaType = MediaType.parse(contentType);
+    if (mediaType.charset() == null) {
+      mediaType = MediaType.parse(contentType + "; charset=utf-8");
+    }
+    return RequestBody.create(mediaType, buffer.readByteString());
+  }
+
+  private static String contentType(final Response response) {
+    String contentType = response.header("Content-Type");
+    return (contentType != null) ? contentType : "application/json";
+  }
+}
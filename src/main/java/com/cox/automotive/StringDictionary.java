@@ -0,0 +1,99 @@
+package com.cox.automotive;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Dedupes the strings that repeat across the vehicles (makes and models), so every vehicle with the same make
+ * refers to one instance and the copy deserialized from its response can be collected straight away.
+ * <p>
+ * Lookups do not lock. The dictionary stops growing at its maximum size, after which new strings are returned
+ * as they are, so a dataset of unique values cannot grow it without bound.
+ *
+ * @author jeff.snyder
+ */
+public class StringDictionary {
+
+  public static final int DEFAULT_MAX_SIZE = 65_536;
+
+  // Makes and models are much the same from one dataset to the next, so the dictionary is shared by default
+  private static final StringDictionary SHARED = new StringDictionary();
+
+  private final ConcurrentHashMap<String, String> strings = new ConcurrentHashMap<>();
+  private final int maxSize;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  public StringDictionary() {
+    this(DEFAULT_MAX_SIZE);
+  }
+
+  /**
+   * @param maxSize maximum number of distinct strings kept
+   */
+  public StringDictionary(final int maxSize) {
+    if (maxSize < 0) {
+      throw new IllegalArgumentException("Maximum size cannot be negative: " + maxSize);
+    }
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * @return the dictionary shared by every dataset in the process
+   */
+  public static StringDictionary getShared() {
+    return SHARED;
+  }
+
+  /**
+   * @param value string to dedupe (may be null)
+   * @return the instance held by the dictionary for an equal string, or the value itself if it is new
+   */
+  public String intern(final String value) {
+    if (value == null) {
+      return null;
+    }
+    String canonical = strings.get(value);
+    if (canonical != null) {
+      hits.increment();
+      return canonical;
+    }
+
+    misses.increment();
+    if (strings.size() >= maxSize) {
+      return value;
+    }
+    canonical = strings.putIfAbsent(value, value);
+    return (canonical != null) ? canonical : value;
+  }
+
+  /**
+   * @return the number of distinct strings held
+   */
+  public int size() {
+    return strings.size();
+  }
+
+  public long getHits() {
+    return hits.sum();
+  }
+
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  /**
+   * @return the fraction of lookups that found the string already there (0 before any lookup)
+   */
+  public double getHitRate() {
+    long hitCount = hits.sum();
+    long lookups = hitCount + misses.sum();
+    return (lookups == 0) ? 0.0 : (double) hitCount / lookups;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("size=%d hits=%d misses=%d hitRate=%.1f%%", size(), getHits(), getMisses(), getHitRate() * 100.0);
+  }
+}
@@ -0,0 +1,493 @@
+package com.cox.automotive;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records spans of the run (the phases of each dataset, every API call and the waits for a permit or another
+ * call) with the thread and dataset they belong to, and writes them as a Chrome trace, which opens in Perfetto
+ * (ui.perfetto.dev) or chrome://tracing, along with the critical path of each dataset.
+ * <p>
+ * It is off unless enabled: a span is timed with the start time handed back by {@link #begin}, which is 0 when
+ * tracing is off, so a disabled tracer costs a field read at each trace point and allocates nothing.
+ *
+ * @author jeff.snyder
+ */
+public final class Tracer {
+
+  public static final int DEFAULT_MAX_SPANS = 1_000_000;
+
+  // Name of the phase spanning the whole processing of a dataset, which its critical path is computed for
+  public static final String DATASET_PHASE = "dataset";
+
+  // A wait shorter than this did not block, and is left out rather than flooding the trace
+  static final long MIN_WAIT_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+  /**
+   * What a span is
+   */
+  public enum Category {
+    PHASE("phase"),
+    API("api"),
+    WAIT("wait");
+
+    private final String label;
+
+    Category(final String label) {
+      this.label = label;
+    }
+
+    public String getLabel() {
+      return label;
+    }
+  }
+
+  private static final Tracer SHARED = new Tracer(DEFAULT_MAX_SPANS);
+
+  private final long originNanos = System.nanoTime();
+  private final int maxSpans;
+  private final Queue<Span> spans = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger spanCount = new AtomicInteger();
+  private final LongAdder droppedSpans = new LongAdder();
+
+  private volatile boolean enabled;
+
+  /**
+   * @param maxSpans maximum number of spans kept, the ones beyond it are counted as dropped
+   */
+  public Tracer(final int maxSpans) {
+    if (maxSpans < 1) {
+      throw new IllegalArgumentException("Maximum spans must be at least 1: " + maxSpans);
+    }
+    this.maxSpans = maxSpans;
+  }
+
+  /**
+   * @return the tracer of the process
+   */
+  public static Tracer getShared() {
+    return SHARED;
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public void setEnabled(final boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  /**
+   * Start a span
+   *
+   * @return the start time of the span, to be handed to {@link #end}, or 0 when tracing is off
+   */
+  public long begin() {
+    return enabled ? System.nanoTime() : 0L;
+  }
+
+  /**
+   * End a span on the current thread
+   *
+   * @param name       what the span is, such as the name of the phase
+   * @param datasetId  dataset the span belongs to, or null when the thread does not know it (a wait is then
+   *                   attributed to the dataset through the thread it blocked)
+   * @param beginNanos start time returned by {@link #begin}
+   */
+  public void end(final Category category, final String name, final String datasetId, final long beginNanos) {
+    end(category, name, datasetId, -1, 0, beginNanos);
+  }
+
+  /**
+   * End a span on the current thread
+   *
+   * @param id         id of the vehicle or dealer the span is for, -1 for none
+   * @param status     HTTP status of an API call, 0 for none
+   * @param beginNanos start time returned by {@link #begin}
+   */
+  public void end(final Category category, final String name, final String datasetId, final int id, final int status,
+                  final long beginNanos) {
+    if (beginNanos == 0L) {
+      return;
+    }
+    long endNanos = System.nanoTime();
+    if ((category == Category.WAIT) && ((endNanos - beginNanos) < MIN_WAIT_NANOS)) {
+      return;
+    }
+    Thread thread = Thread.currentThread();
+    record(category, name, datasetId, id, status, thread.getId(), thread.getName(), beginNanos, endNanos);
+  }
+
+  /**
+   * Record a span that has ended
+   */
+  void record(final Category category, final String name, final String datasetId, final int id, final int status,
+              final long threadId, final String threadName, final long beginNanos, final long endNanos) {
+    if (spanCount.incrementAndGet() > maxSpans) {
+      spanCount.decrementAndGet();
+      droppedSpans.increment();
+      return;
+    }
+    spans.add(new Span(category, name, datasetId, id, status, threadId, threadName, beginNanos, endNanos));
+  }
+
+  /**
+   * @return the number of spans recorded
+   */
+  public int getSpanCount() {
+    return spanCount.get();
+  }
+
+  /**
+   * @return the number of spans dropped once the maximum was reached
+   */
+  public long getDroppedSpans() {
+    return droppedSpans.sum();
+  }
+
+  /**
+   * The critical path of a dataset is the chain of API calls that its end waited on, found walking back from the
+   * end of the dataset: the call that finished last before that point, then the one that finished last before
+   * that call started, and so on. The time between two calls of the chain is spent in the wait blocking the thread
+   * of the later call when there is one (a permit, a coalesced call, the dealer lookups), otherwise in the
+   * innermost phase of the dataset (queueing for a fetch thread, building and writing the answer).
+   *
+   * @param datasetId dataset that was processed
+   * @return the critical path of the last processing of the dataset, or null if it was not traced
+   */
+  public CriticalPath getCriticalPath(final String datasetId) {
+    List<Span> all = new ArrayList<>(spans);
+    Span root = null;
+    for (Span span : all) {
+      if ((span.category == Category.PHASE) && DATASET_PHASE.equals(span.name) && datasetId.equals(span.datasetId)
+        && ((root == null) || (span.endNanos > root.endNanos))) {
+        root = span;
+      }
+    }
+    if (root == null) {
+      return null;
+    }
+
+    List<Span> calls = new ArrayList<>();
+    List<Span> waits = new ArrayList<>();
+    List<Span> phases = new ArrayList<>();
+    for (Span span : all) {
+      if ((span == root) || (span.beginNanos < root.beginNanos) || (span.endNanos > root.endNanos)) {
+        continue;
+      }
+      if (span.category == Category.API) {
+        if (datasetId.equals(span.datasetId)) {
+          calls.add(span);
+        }
+      } else if (span.category == Category.WAIT) {
+        if ((span.datasetId == null) || datasetId.equals(span.datasetId)) {
+          waits.add(span);
+        }
+      } else if (datasetId.equals(span.datasetId)) {
+        phases.add(span);
+      }
+    }
+    calls.sort(Comparator.comparingLong((Span span) -> span.endNanos).reversed());
+
+    List<Segment> segments = new ArrayList<>();
+    long cursor = root.endNanos;
+    long blockedThreadId = root.threadId;
+    // Calls are taken in order of their end, and as the cursor only moves back a call ending after it is never taken
+    int next = 0;
+    while (true) {
+      while ((next < calls.size()) && (calls.get(next).endNanos > cursor)) {
+        next++;
+      }
+      if (next == calls.size()) {
+        addGap(segments, root.beginNanos, cursor, blockedThreadId, root, waits, phases);
+        break;
+      }
+      Span call = calls.get(next++);
+      addGap(segments, call.endNanos, cursor, blockedThreadId, root, waits, phases);
+      segments.add(new Segment(call.category, call.name, call.id, call.beginNanos, call.endNanos));
+      cursor = call.beginNanos;
+      blockedThreadId = call.threadId;
+    }
+    Collections.reverse(segments);
+    return new CriticalPath(datasetId, root.beginNanos, root.endNanos, segments);
+  }
+
+  /**
+   * Attribute the time between two calls of the critical path, by what was going on in the middle of it
+   */
+  private static void addGap(final List<Segment> segments, final long beginNanos, final long endNanos,
+                             final long blockedThreadId, final Span root, final List<Span> waits,
+                             final List<Span> phases) {
+    if (endNanos <= beginNanos) {
+      return;
+    }
+    long middle = beginNanos + (endNanos - beginNanos) / 2;
+    Span wait = innermost(waits, middle, blockedThreadId);
+    Span owner = (wait != null) ? wait : innermost(phases, middle, -1L);
+    if (owner == null) {
+      owner = root;
+    }
+    segments.add(new Segment(owner.category, owner.name, -1, beginNanos, endNanos));
+  }
+
+  /**
+   * @param threadId thread the span has to be on when it has no dataset, -1 for any
+   * @return the shortest of the spans covering the time, or null if none does
+   */
+  private static Span innermost(final List<Span> candidates, final long nanos, final long threadId) {
+    Span innermost = null;
+    for (Span span : candidates) {
+      if ((span.beginNanos <= nanos) && (nanos <= span.endNanos)
+        && ((span.datasetId != null) || (threadId < 0) || (span.threadId == threadId))
+        && ((innermost == null) || (span.durationNanos() < innermost.durationNanos()))) {
+        innermost = span;
+      }
+    }
+    return innermost;
+  }
+
+  /**
+   * Write the spans as a Chrome trace (the JSON object format), with the critical path of each dataset on a track
+   * of its own
+   *
+   * @param out where the JSON is written
+   */
+  public void writeTo(final Writer out) throws IOException {
+    List<Span> all = new ArrayList<>(spans);
+    all.sort(Comparator.comparingLong((Span span) -> span.beginNanos));
+
+    JsonWriter writer = new JsonWriter(out);
+    writer.beginObject();
+    writer.name("displayTimeUnit").value("ms");
+    writer.name("traceEvents").beginArray();
+
+    writeMetadata(writer, "process_name", 1, 0L, "challenge");
+    Map<Long, String> threads = new LinkedHashMap<>();
+    List<String> datasetIds = new ArrayList<>();
+    for (Span span : all) {
+      threads.putIfAbsent(span.threadId, span.threadName);
+      if ((span.category == Category.PHASE) && DATASET_PHASE.equals(span.name) && !datasetIds.contains(span.datasetId)) {
+        datasetIds.add(span.datasetId);
+      }
+    }
+    for (Map.Entry<Long, String> thread : threads.entrySet()) {
+      writeMetadata(writer, "thread_name", 1, thread.getKey(), thread.getValue());
+    }
+    for (Span span : all) {
+      writer.beginObject();
+      writer.name("name").value(span.name);
+      writer.name("cat").value(span.category.getLabel());
+      writeComplete(writer, 1, span.threadId, span.beginNanos, span.endNanos);
+      writer.name("args").beginObject();
+      if (span.datasetId != null) {
+        writer.name("dataset").value(span.datasetId);
+      }
+      if (span.id >= 0) {
+        writer.name("id").value(span.id);
+      }
+      if (span.status != 0) {
+        writer.name("status").value(span.status);
+      }
+      writer.endObject();
+      writer.endObject();
+    }
+
+    // One track for the critical path of each dataset
+    writeMetadata(writer, "process_name", 2, 0L, "critical path");
+    for (int d = 0; d < datasetIds.size(); d++) {
+      CriticalPath criticalPath = getCriticalPath(datasetIds.get(d));
+      writeMetadata(writer, "thread_name", 2, d + 1, datasetIds.get(d));
+      for (Segment segment : criticalPath.getSegments()) {
+        writer.beginObject();
+        writer.name("name").value(segment.getName());
+        writer.name("cat").value("critical," + segment.getCategory().getLabel());
+        writeComplete(writer, 2, d + 1, segment.getBeginNanos(), segment.getEndNanos());
+        writer.name("args").beginObject();
+        if (segment.getId() >= 0) {
+          writer.name("id").value(segment.getId());
+        }
+        writer.endObject();
+        writer.endObject();
+      }
+    }
+
+    writer.endArray();
+    writer.name("otherData").beginObject();
+    writer.name("droppedSpans").value(getDroppedSpans());
+    writer.endObject();
+    writer.endObject();
+    writer.flush();
+  }
+
+  private void writeComplete(final JsonWriter writer, final int pid, final long tid, final long beginNanos,
+                             final long endNanos) throws IOException {
+    writer.name("ph").value("X");
+    writer.name("ts").value((beginNanos - originNanos) / 1000.0);
+    writer.name("dur").value((endNanos - beginNanos) / 1000.0);
+    writer.name("pid").value(pid);
+    writer.name("tid").value(tid);
+  }
+
+  private static void writeMetadata(final JsonWriter writer, final String name, final int pid, final long tid,
+                                    final String value) throws IOException {
+    writer.beginObject();
+    writer.name("name").value(name);
+    writer.name("ph").value("M");
+    writer.name("pid").value(pid);
+    writer.name("tid").value(tid);
+    writer.name("args").beginObject().name("name").value(value).endObject();
+    writer.endObject();
+  }
+
+  @Override
+  public String toString() {
+    return "spans=" + getSpanCount() + " dropped=" + getDroppedSpans();
+  }
+
+  private static final class Span {
+    private final Category category;
+    private final String name;
+    private final String datasetId;
+    private final int id;
+    private final int status;
+    private final long threadId;
+    private final String threadName;
+    private final long beginNanos;
+    private final long endNanos;
+
+    Span(final Category category, final String name, final String datasetId, final int id, final int status,
+         final long threadId, final String threadName, final long beginNanos, final long endNanos) {
+      this.category = category;
+      this.name = name;
+      this.datasetId = datasetId;
+      this.id = id;
+      this.status = status;
+      this.threadId = threadId;
+      this.threadName = threadName;
+      this.beginNanos = beginNanos;
+      this.endNanos = endNanos;
+    }
+
+    long durationNanos() {
+      return endNanos - beginNanos;
+    }
+  }
+
+  /**
+   * A stretch of the critical path: an API call, or the wait or phase the time between two calls went to
+   */
+  public static final class Segment {
+    private final Category category;
+    private final String name;
+    private final int id;
+    private final long beginNanos;
+    private final long endNanos;
+
+    Segment(final Category category, final String name, final int id, final long beginNanos, final long endNanos) {
+      this.category = category;
+      this.name = name;
+      this.id = id;
+      this.beginNanos = beginNanos;
+      this.endNanos = endNanos;
+    }
+
+    public Category getCategory() {
+      return category;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * @return the id of the vehicle or dealer of an API call, -1 for none
+     */
+    public int getId() {
+      return id;
+    }
+
+    public long getBeginNanos() {
+      return beginNanos;
+    }
+
+    public long getEndNanos() {
+      return endNanos;
+    }
+
+    public long getDurationNanos() {
+      return endNanos - beginNanos;
+    }
+  }
+
+  /**
+   * The critical path of a dataset, from the start to the end of its processing
+   */
+  public static final class CriticalPath {
+    private final String datasetId;
+    private final long beginNanos;
+    private final long endNanos;
+    private final List<Segment> segments;
+
+    CriticalPath(final String datasetId, final long beginNanos, final long endNanos, final List<Segment> segments) {
+      this.datasetId = datasetId;
+      this.beginNanos = beginNanos;
+      this.endNanos = endNanos;
+      this.segments = Collections.unmodifiableList(segments);
+    }
+
+    public String getDatasetId() {
+      return datasetId;
+    }
+
+    public long getDurationNanos() {
+      return endNanos - beginNanos;
+    }
+
+    /**
+     * @return the segments in the order they happened, covering the whole processing of the dataset
+     */
+    public List<Segment> getSegments() {
+      return segments;
+    }
+
+    /**
+     * @return the time of the critical path spent in each call, wait and phase, the longest first
+     */
+    @Override
+    public String toString() {
+      Map<String, long[]> totals = new LinkedHashMap<>();
+      for (Segment segment : segments) {
+        long[] total = totals.computeIfAbsent(segment.getCategory().getLabel() + " " + segment.getName(), key -> new long[2]);
+        total[0] += segment.getDurationNanos();
+        total[1]++;
+      }
+      List<Map.Entry<String, long[]>> entries = new ArrayList<>(totals.entrySet());
+      entries.sort((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]));
+
+      StringBuilder builder = new StringBuilder();
+      builder.append(TimeUnit.NANOSECONDS.toMillis(getDurationNanos())).append("ms =");
+      for (int i = 0; i < entries.size(); i++) {
+        Map.Entry<String, long[]> entry = entries.get(i);
+        builder.append((i == 0) ? " " : ", ").append(entry.getKey()).append(' ')
+          .append(TimeUnit.NANOSECONDS.toMillis(entry.getValue()[0])).append("ms");
+        if (entry.getValue()[1] > 1) {
+          builder.append(" x").append(entry.getValue()[1]);
+        }
+      }
+      return builder.toString();
+    }
+  }
+}
@@ -0,0 +1,156 @@
+package com.cox.automotive;
+
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Records a span for each request to the API, from the request until its response body is read to the end or
+ * closed, with the dataset and the vehicle or dealer id taken from the path. It is an application interceptor
+ * ahead of the HTTP/2 transport, so each attempt of a retried call is a span of its own; with tracing off it
+ * only checks the tracer.
+ *
+ * @author jeff.snyder
+ */
+public class TracingInterceptor implements Interceptor {
+
+  private final Tracer tracer;
+
+  public TracingInterceptor(final Tracer tracer) {
+    this.tracer = tracer;
+  }
+
+  @Override
+  public Response intercept(final Chain chain) throws IOException {
+    Request request = chain.request();
+    long begin = tracer.begin();
+    if (begin == 0L) {
+      return chain.proceed(request);
+    }
+    Metrics.Endpoint endpoint = Metrics.Endpoint.forPath(request.httpUrl().encodedPath());
+    if (endpoint == null) {
+      return chain.proceed(request);
+    }
+
+    // /api/{datasetId}/vehicles, /api/{datasetId}/vehicles/{vehicleId}, /api/{datasetId}/dealers/{dealerId}, ...
+    List<String> segments = request.httpUrl().pathSegments();
+    int last = segments.size() - 1;
+    String datasetId = null;
+    int id = -1;
+    if ((endpoint == Metrics.Endpoint.VEHICLE) || (endpoint == Metrics.Endpoint.DEALER)) {
+      datasetId = (last >= 2) ? segments.get(last - 2) : null;
+      id = parseId(segments.get(last));
+    } else if (endpoint != Metrics.Endpoint.DATASET_ID) {
+      datasetId = (last >= 1) ? segments.get(last - 1) : null;
+    }
+
+    final Response response;
+    try {
+      response = chain.proceed(request);
+    } catch (IOException | RuntimeException e) {
+      tracer.end(Tracer.Category.API, endpoint.getLabel(), datasetId, id, 0, begin);
+      throw e;
+    }
+    if (response.body() == null) {
+      tracer.end(Tracer.Category.API, endpoint.getLabel(), datasetId, id, response.code(), begin);
+      return response;
+    }
+    return response.newBuilder()
+      .body(new TracedResponseBody(response.body(), endpoint, datasetId, id, response.code(), begin))
+      .build();
+  }
+
+  private static int parseId(final String segment) {
+    try {
+      return Integer.parseInt(segment);
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * Ends the span of the call once its body has been read to the end or closed
+   */
+  private final class TracedResponseBody extends ResponseBody {
+    private final ResponseBody body;
+    private final Metrics.Endpoint endpoint;
+    private final String datasetId;
+    private final int id;
+    private final int status;
+    private final long begin;
+    private BufferedSource source;
+    private boolean ended;
+
+    TracedResponseBody(final ResponseBody body, final Metrics.Endpoint endpoint, final String datasetId, final int id,
+                       final int status, final long begin) {
+      this.body = body;
+      this.endpoint = endpoint;
+      this.datasetId = datasetId;
+      this.id = id;
+      this.status = status;
+      this.begin = begin;
+    }
+
+    @Override
+    public MediaType contentType() {
+      return body.contentType();
+    }
+
+    @Override
+    public long contentLength() throws IOException {
+      return body.contentLength();
+    }
+
+    @Override
+    public BufferedSource source() throws IOException {
+      if (source == null) {
+        source = Okio.buffer(new ForwardingSource(body.source()) {
+          @Override
+          public long read(final Buffer sink, final long byteCount) throws IOException {
+            long read = super.read(sink, byteCount);
+            if (read < 0) {
+              end();
+            }
+            return read;
+          }
+
+          @Override
+          public void close() throws IOException {
+            try {
+              super.close();
+            } finally {
+              end();
+            }
+          }
+        });
+      }
+      return source;
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        body.close();
+      } finally {
+        end();
+      }
+    }
+
+    private void end() {
+      // The body is read by one thread at a time
+      if (!ended) {
+        ended = true;
+        tracer.end(Tracer.Category.API, endpoint.getLabel(), datasetId, id, status, begin);
+      }
+    }
+  }
+}
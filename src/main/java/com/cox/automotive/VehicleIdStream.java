@@ -0,0 +1,230 @@
+package com.cox.automotive;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.squareup.okhttp.Call;
+import com.squareup.okhttp.Response;
+import io.swagger.client.ApiClient;
+import io.swagger.client.ApiException;
+import io.swagger.client.Pair;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads the vehicle ids of a dataset while the response is still arriving, so the vehicle fetches can start
+ * with the first ids rather than after the whole list has been deserialized.
+ * Null and duplicate ids are skipped, and only a primitive set of the ids seen so far is kept.
+ * <p>
+ * The ids can only be iterated once, and the stream has to be closed to release the connection.
+ *
+ * @author jeff.snyder
+ */
+public class VehicleIdStream implements Iterable<Integer>, Closeable {
+
+  private static final String VEHICLE_IDS = "vehicleIds";
+
+  private final String datasetId;
+  private final JsonReader reader;
+  private final Deadline deadline;
+  private final IntHashSet seen = new IntHashSet(1024);
+
+  private boolean iterated;
+  private boolean inArray;
+  private boolean finished;
+
+  // The id read ahead by hasNext, valid while pending is true
+  private int nextId;
+  private boolean pending;
+
+  /**
+   * @param datasetId dataset the ids belong to
+   * @param reader    body of the vehicle ids response
+   */
+  VehicleIdStream(final String datasetId, final Reader reader) {
+    this(datasetId, reader, Deadline.none());
+  }
+
+  /**
+   * @param datasetId dataset the ids belong to
+   * @param reader    body of the vehicle ids response
+   * @param deadline  time by which the dataset has to be processed, checked as the ids are read
+   */
+  VehicleIdStream(final String datasetId, final Reader reader, final Deadline deadline) {
+    this.datasetId = datasetId;
+    this.reader = new JsonReader(reader);
+    this.deadline = deadline;
+  }
+
+  /**
+   * Request the vehicle ids of the dataset. Only the request is retried, as once ids have been handed out
+   * the response cannot be replayed.
+   *
+   * @param apiClient   client whose connection pool and base path are used
+   * @param datasetId   current dataset being processed
+   * @param retryPolicy retries the request if it fails transiently
+   * @param limiter     limits the number of calls in flight
+   * @param metrics     records the call (up to the response headers, the ids are read as the vehicles are fetched)
+   * @param deadline    time by which the dataset has to be processed, also checked as the ids are read
+   * @return the stream of ids, to be closed once read
+   */
+  public static VehicleIdStream open(final ApiClient apiClient, final String datasetId, final RetryPolicy retryPolicy,
+                                     final AdaptiveLimiter limiter, final Metrics metrics, final Deadline deadline) {
+    try {
+      return new VehicleIdStream(datasetId, metrics.call(Metrics.Endpoint.VEHICLE_IDS,
+        () -> retryPolicy.call(() -> limiter.call(() -> execute(buildCall(apiClient, datasetId))), deadline)), deadline);
+    } catch (ApiException e) {
+      throw new RuntimeException(failureMessage(datasetId), e);
+    }
+  }
+
+  /**
+   * Build the call through the client, as the generated API does, so its default headers are sent. Each attempt
+   * builds its own, as a call can only be executed once.
+   */
+  private static Call buildCall(final ApiClient apiClient, final String datasetId) throws ApiException {
+    Map<String, String> headerParams = new HashMap<>();
+    headerParams.put("Accept", "application/json");
+    return apiClient.buildCall("/api/" + apiClient.escapeString(datasetId) + "/vehicles", "GET", new ArrayList<Pair>(),
+      new ArrayList<Pair>(), null, headerParams, new HashMap<String, Object>(), new String[0], null);
+  }
+
+  /**
+   * @return the body of the response, once the status shows it holds the ids
+   */
+  private static Reader execute(final Call call) throws ApiException {
+    try {
+      Response response = call.execute();
+      if (!response.isSuccessful()) {
+        String body = response.body().string();
+        throw new ApiException(response.message(), response.code(), response.headers().toMultimap(), body);
+      }
+      return response.body().charStream();
+    } catch (IOException e) {
+      throw new ApiException(e);
+    }
+  }
+
+  /**
+   * @return the number of distinct ids read so far (all of them once the iteration is done)
+   */
+  public int getCount() {
+    return seen.size();
+  }
+
+  @Override
+  public Iterator<Integer> iterator() {
+    if (iterated) {
+      throw new IllegalStateException("The vehicle ids can only be read once.");
+    }
+    iterated = true;
+
+    return new Iterator<Integer>() {
+      @Override
+      public boolean hasNext() {
+        return advance();
+      }
+
+      @Override
+      public Integer next() {
+        if (!advance()) {
+          throw new NoSuchElementException();
+        }
+        pending = false;
+        return nextId;
+      }
+    };
+  }
+
+  /**
+   * Read ahead to the next id that has not been seen
+   *
+   * @return true if there is an id, false at the end of the list
+   */
+  private boolean advance() {
+    if (pending) {
+      return true;
+    }
+    if (finished) {
+      return false;
+    }
+    // Checked before each id, as a blocking read is only bounded by the read timeout of the client
+    if (deadline.isExpired()) {
+      finished = true;
+      throw deadline.exceeded();
+    }
+    try {
+      if (!inArray && !openArray()) {
+        finish();
+        return false;
+      }
+      while (reader.hasNext()) {
+        if (reader.peek() == JsonToken.NULL) {
+          reader.nextNull();
+        } else {
+          int id = reader.nextInt();
+          if (seen.add(id)) {
+            nextId = id;
+            pending = true;
+            return true;
+          }
+        }
+      }
+      reader.endArray();
+      inArray = false;
+      finish();
+      return false;
+    } catch (IOException | IllegalStateException | NumberFormatException e) {
+      finished = true;
+      throw new RuntimeException(failureMessage(datasetId), e);
+    }
+  }
+
+  /**
+   * Move to the start of the id array
+   *
+   * @return false if the response has no ids (a missing or null list is the same as an empty one)
+   */
+  private boolean openArray() throws IOException {
+    reader.beginObject();
+    while (reader.hasNext()) {
+      if (VEHICLE_IDS.equals(reader.nextName()) && (reader.peek() == JsonToken.BEGIN_ARRAY)) {
+        reader.beginArray();
+        inArray = true;
+        return true;
+      }
+      reader.skipValue();
+    }
+    return false;
+  }
+
+  // Read the rest of the response so the connection can go back to the pool
+  private void finish() throws IOException {
+    while (reader.hasNext()) {
+      reader.nextName();
+      reader.skipValue();
+    }
+    reader.endObject();
+    finished = true;
+    reader.close();
+  }
+
+  @Override
+  public void close() {
+    try {
+      reader.close();
+    } catch (IOException e) {
+      // Nothing else is read from the response
+    }
+  }
+
+  private static String failureMessage(final String datasetId) {
+    return "Unable to retrieve the vehicles for dataset: " + datasetId;
+  }
+}
@@ -0,0 +1,107 @@
+package com.cox.automotive;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Holds the vehicles of a dataset in columns (int arrays for the ids, years and dealers) rather than as an object
+ * for each vehicle, so adding a vehicle allocates nothing once its chunk exists.
+ * <p>
+ * Vehicles can be added from any number of threads: each add reserves a row and writes only to it. The rows are
+ * read once all of the adds are done (after the fetches have been waited for), which makes them visible.
+ *
+ * @author jeff.snyder
+ */
+public class VehicleStore {
+
+  // Stands for a missing (null) id or year in the int columns
+  public static final int NULL_INT = Integer.MIN_VALUE;
+
+  private static final int CHUNK_BITS = 12;
+  private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+  private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+  private final AtomicInteger size = new AtomicInteger();
+
+  // Chunks are created as the rows reach them, so a large store never has to copy its columns to grow
+  private volatile Chunk[] chunks = new Chunk[16];
+
+  /**
+   * Add a vehicle
+   *
+   * @return the row of the vehicle
+   */
+  public int add(final int vehicleId, final int year, final String make, final String model, final int dealerId) {
+    int row = size.getAndIncrement();
+    Chunk chunk = chunk(row >>> CHUNK_BITS);
+    int offset = row & CHUNK_MASK;
+    chunk.vehicleIds[offset] = vehicleId;
+    chunk.years[offset] = year;
+    chunk.makes[offset] = make;
+    chunk.models[offset] = model;
+    chunk.dealerIds[offset] = dealerId;
+    return row;
+  }
+
+  /**
+   * @return the number of vehicles added
+   */
+  public int size() {
+    return size.get();
+  }
+
+  public int getVehicleId(final int row) {
+    return chunks[row >>> CHUNK_BITS].vehicleIds[row & CHUNK_MASK];
+  }
+
+  public int getYear(final int row) {
+    return chunks[row >>> CHUNK_BITS].years[row & CHUNK_MASK];
+  }
+
+  public String getMake(final int row) {
+    return chunks[row >>> CHUNK_BITS].makes[row & CHUNK_MASK];
+  }
+
+  public String getModel(final int row) {
+    return chunks[row >>> CHUNK_BITS].models[row & CHUNK_MASK];
+  }
+
+  public int getDealerId(final int row) {
+    return chunks[row >>> CHUNK_BITS].dealerIds[row & CHUNK_MASK];
+  }
+
+  public static int toInt(final Integer value) {
+    return (value == null) ? NULL_INT : value;
+  }
+
+  public static Integer toInteger(final int value) {
+    return (value == NULL_INT) ? null : value;
+  }
+
+  private Chunk chunk(final int index) {
+    Chunk[] current = chunks;
+    // A chunk seen without the lock is complete, as its columns are final
+    if ((index < current.length) && (current[index] != null)) {
+      return current[index];
+    }
+    synchronized (this) {
+      current = chunks;
+      if (index >= current.length) {
+        current = Arrays.copyOf(current, Math.max(index + 1, current.length << 1));
+      }
+      if (current[index] == null) {
+        current[index] = new Chunk();
+      }
+      chunks = current;
+      return current[index];
+    }
+  }
+
+  private static final class Chunk {
+    private final int[] vehicleIds = new int[CHUNK_SIZE];
+    private final int[] years = new int[CHUNK_SIZE];
+    private final String[] makes = new String[CHUNK_SIZE];
+    private final String[] models = new String[CHUNK_SIZE];
+    private final int[] dealerIds = new int[CHUNK_SIZE];
+  }
+}
@@ -1,16 +1,19 @@
 package com.cox.automotive;
 
+import io.swagger.client.ApiCallback;
 import io.swagger.client.ApiException;
 import io.swagger.client.api.VehiclesApi;
 import io.swagger.client.model.DealerAnswer;
-import io.swagger.client.model.VehicleAnswer;
 import io.swagger.client.model.VehicleIdsResponse;
 import io.swagger.client.model.VehicleResponse;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Objects;
-import java.util.stream.Collectors;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * This is used for vehicle processing.
@@ -19,6 +22,151 @@ import java.util.stream.Collectors;
  */
 public class Vehicles {
 
+  // Vehicle calls in flight for every dataset of the process
+  private static final SingleFlight<SingleFlight.Key, VehicleResponse> SHARED_VEHICLE_CALLS = new SingleFlight<>();
+
+  // Maximum number of vehicle fetches in flight at the same time
+  private int concurrency = FetchEngine.DEFAULT_CONCURRENCY;
+
+  // How the vehicle and dealer requests are executed
+  private FetchMode fetchMode = FetchMode.BLOCKING;
+
+  // Adapts the number of calls in flight to what the server can handle
+  private AdaptiveLimiter limiter = AdaptiveLimiter.getShared();
+
+  // Retries transient failures (and optionally hedges slow calls)
+  private RetryPolicy retryPolicy = RetryPolicy.getShared();
+
+  // Records the latency, in-flight count and failures of the API calls
+  private Metrics metrics = Metrics.getShared();
+
+  // Time by which the dataset has to be processed
+  private Deadline deadline = Deadline.none();
+
+  // Engine shared with other datasets, null to run the fetches on an engine of its own
+  private FetchEngine sharedFetchEngine;
+
+  // Responses received by earlier runs, null to always call the API
+  private ResponseCache responseCache;
+
+  // Coalesces the identical vehicle calls in flight at the same time
+  private SingleFlight<SingleFlight.Key, VehicleResponse> vehicleCalls = SHARED_VEHICLE_CALLS;
+
+  // Dealer names shared with the other datasets of the run, null for none
+  private DealerCache dealerCache;
+
+  // Number of vehicles of the last dataset restored from the response cache rather than requested
+  private int restoredVehicleCount;
+
+  /**
+   * @return the maximum number of vehicle fetches in flight at the same time
+   */
+  public int getConcurrency() {
+    return concurrency;
+  }
+
+  /**
+   * @param concurrency the maximum number of vehicle fetches in flight at the same time
+   */
+  public void setConcurrency(final int concurrency) {
+    if (concurrency < 1) {
+      throw new IllegalArgumentException("Concurrency must be at least 1: " + concurrency);
+    }
+    this.concurrency = concurrency;
+  }
+
+  public FetchMode getFetchMode() {
+    return fetchMode;
+  }
+
+  public void setFetchMode(final FetchMode fetchMode) {
+    this.fetchMode = fetchMode;
+  }
+
+  public AdaptiveLimiter getLimiter() {
+    return limiter;
+  }
+
+  public void setLimiter(final AdaptiveLimiter limiter) {
+    this.limiter = limiter;
+  }
+
+  public RetryPolicy getRetryPolicy() {
+    return retryPolicy;
+  }
+
+  public void setRetryPolicy(final RetryPolicy retryPolicy) {
+    this.retryPolicy = retryPolicy;
+  }
+
+  public Metrics getMetrics() {
+    return metrics;
+  }
+
+  public void setMetrics(final Metrics metrics) {
+    this.metrics = metrics;
+  }
+
+  public Deadline getDeadline() {
+    return deadline;
+  }
+
+  public void setDeadline(final Deadline deadline) {
+    this.deadline = deadline;
+  }
+
+  public FetchEngine getSharedFetchEngine() {
+    return sharedFetchEngine;
+  }
+
+  /**
+   * @param sharedFetchEngine engine shared with other datasets (it is not closed once the vehicles are fetched),
+   *                          or null to create one for each dataset
+   */
+  public void setSharedFetchEngine(final FetchEngine sharedFetchEngine) {
+    this.sharedFetchEngine = sharedFetchEngine;
+  }
+
+  public ResponseCache getResponseCache() {
+    return responseCache;
+  }
+
+  /**
+   * @param responseCache cache of the vehicle and dealer responses, or null for none
+   */
+  public void setResponseCache(final ResponseCache responseCache) {
+    this.responseCache = responseCache;
+  }
+
+  /**
+   * @return the vehicle calls in flight for every dataset of the process
+   */
+  public static SingleFlight<SingleFlight.Key, VehicleResponse> getSharedVehicleCalls() {
+    return SHARED_VEHICLE_CALLS;
+  }
+
+  public void setVehicleCalls(final SingleFlight<SingleFlight.Key, VehicleResponse> vehicleCalls) {
+    this.vehicleCalls = vehicleCalls;
+  }
+
+  public DealerCache getDealerCache() {
+    return dealerCache;
+  }
+
+  /**
+   * @param dealerCache cache of the dealer names shared by the datasets of the run, or null for none
+   */
+  public void setDealerCache(final DealerCache dealerCache) {
+    this.dealerCache = dealerCache;
+  }
+
+  /**
+   * @return the number of vehicles of the last dataset that were restored from the response cache
+   */
+  public int getRestoredVehicleCount() {
+    return restoredVehicleCount;
+  }
+
   /**
    * Get the list of vehicle ids associated with the dataset
    *
@@ -27,11 +175,12 @@ public class Vehicles {
    * @return a list of integers which are the vehicle ids (no duplicates, no null values)
    */
   public List<Integer> getVehicleIds(final String datasetId) {
-    // Need to create a new API each time as they are not thread safe
+    // The API is a cheap view over the shared, pooled client
     final VehiclesApi vehiclesApi = getVehiclesApi();
     try {
       // Get vehicles for dataset
-      VehicleIdsResponse response = vehiclesApi.vehiclesGetIds(datasetId);
+      VehicleIdsResponse response = metrics.call(Metrics.Endpoint.VEHICLE_IDS,
+        () -> retryPolicy.call(() -> limiter.call(() -> vehiclesApi.vehiclesGetIds(datasetId)), deadline));
       if (response == null) {
         throw new ApiException("Invalid response received from API to get the vehicle ids.");
       }
@@ -41,42 +190,217 @@ public class Vehicles {
       }
 
       // Remove any duplicate or null values from the list before returning it
-      return response.getVehicleIds().stream()
-        .filter(Objects::nonNull)
-        .distinct()
-        .collect(Collectors.toList());
+      List<Integer> vehicleIds = new ArrayList<>(response.getVehicleIds().size());
+      IntHashSet seen = new IntHashSet(response.getVehicleIds().size());
+      for (Integer vehicleId : response.getVehicleIds()) {
+        if ((vehicleId != null) && seen.add(vehicleId)) {
+          vehicleIds.add(vehicleId);
+        }
+      }
+      return vehicleIds;
     } catch (ApiException e) {
       throw new RuntimeException("Unable to retrieve the vehicles for dataset: " + datasetId, e);
     }
   }
 
+  /**
+   * Start reading the vehicle ids associated with the dataset. The ids are handed out as they arrive, so passing the
+   * stream to {@link #getDealersWithTheirVehicles} starts the vehicle fetches before the whole list has been read.
+   *
+   * @param datasetId current dataset being processed
+   * @return the vehicle ids (no duplicates, no null values), to be closed once read
+   */
+  public VehicleIdStream streamVehicleIds(final String datasetId) {
+    return VehicleIdStream.open(ApiClients.get(), datasetId, retryPolicy, limiter, metrics, deadline);
+  }
+
   /**
    * Get the dealers with their associated vehicles
    *
    * @param datasetId current dataset being processed
-   * @param vehicleIds list of vehicle ids to be processed
+   * @param vehicleIds vehicle ids to be processed, either a list or a stream that is read as the vehicles are fetched
    * @return a list of dealers containing the vehicles associated with them
    */
-  public List<DealerAnswer> getDealersWithTheirVehicles(final String datasetId, final List<Integer> vehicleIds) {
+  public List<DealerAnswer> getDealersWithTheirVehicles(final String datasetId, final Iterable<Integer> vehicleIds) {
+    return fetchDealers(datasetId, vehicleIds).getDealerAnswers();
+  }
+
+  /**
+   * Get the dealers with their associated vehicles, still in the vehicle store, so the answer can be written
+   * without creating an object for each dealer and vehicle
+   *
+   * @param datasetId current dataset being processed
+   * @param vehicleIds vehicle ids to be processed, either a list or a stream that is read as the vehicles are fetched
+   * @return the answer with the dealers and their vehicles
+   */
+  public StoredAnswer getStoredAnswer(final String datasetId, final Iterable<Integer> vehicleIds) {
+    return fetchDealers(datasetId, vehicleIds).getStoredAnswer();
+  }
+
+  /**
+   * Fetch every vehicle and add it to its dealer
+   *
+   * @param datasetId current dataset being processed
+   * @param vehicleIds vehicle ids to be processed
+   * @return the dealers with all of the vehicles added
+   */
+  private Dealers fetchDealers(final String datasetId, final Iterable<Integer> vehicleIds) {
 
     final Dealers dealers = getDealers();
+    dealers.setFetchMode(fetchMode);
+    dealers.setLimiter(limiter);
+    dealers.setRetryPolicy(retryPolicy);
+    dealers.setMetrics(metrics);
+    dealers.setDeadline(deadline);
+    dealers.setResponseCache(responseCache);
+    dealers.setDealerCache(dealerCache);
+
+    // Only the vehicles missing from the cache are fetched, so a resumed dataset just fetches its tail
+    restoredVehicleCount = 0;
+    final Iterable<Integer> missingIds = (responseCache != null) ? restoreCachedVehicles(datasetId, vehicleIds, dealers) : vehicleIds;
+
+    long fetchStart = Tracer.getShared().begin();
+    try {
+      if (fetchMode == FetchMode.ASYNC) {
+        fetchVehiclesAsync(datasetId, missingIds, dealers);
+      } else {
+        // The vehicle calls are blocking, so run them on their own bounded pool rather than the common fork join pool
+        if (sharedFetchEngine != null) {
+          fetchVehicles(sharedFetchEngine, datasetId, missingIds, dealers);
+        } else {
+          try (FetchEngine fetchEngine = getFetchEngine()) {
+            fetchVehicles(fetchEngine, datasetId, missingIds, dealers);
+          }
+        }
+      }
+    } finally {
+      Tracer.getShared().end(Tracer.Category.PHASE, "fetch vehicles", datasetId, fetchStart);
+    }
+
+    return dealers;
+  }
+
+  /**
+   * Add the vehicles already in the response cache to their dealers as their ids are read, on the thread reading
+   * them, and hand out the ids of the others. It reads the ids lazily, so a stream of ids is still only read once.
+   *
+   * @param datasetId  current dataset being processed
+   * @param vehicleIds vehicle ids to be processed
+   * @param dealers    dealers the cached vehicles are added to
+   * @return the ids of the vehicles that still have to be fetched
+   */
+  private Iterable<Integer> restoreCachedVehicles(final String datasetId, final Iterable<Integer> vehicleIds, final Dealers dealers) {
+    return () -> new Iterator<Integer>() {
+      private final Iterator<Integer> ids = vehicleIds.iterator();
+
+      // The missing id read ahead by hasNext, valid while pending is true
+      private Integer nextId;
+      private boolean pending;
+
+      @Override
+      public boolean hasNext() {
+        while (!pending && ids.hasNext()) {
+          Integer vehicleId = ids.next();
+          VehicleResponse cachedResponse = (vehicleId != null) ? responseCache.getVehicle(datasetId, vehicleId) : null;
+          if (cachedResponse != null) {
+            dealers.addVehicle(datasetId, cachedResponse);
+            restoredVehicleCount++;
+          } else {
+            nextId = vehicleId;
+            pending = true;
+          }
+        }
+        return pending;
+      }
+
+      @Override
+      public Integer next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        pending = false;
+        return nextId;
+      }
+    };
+  }
+
+  /**
+   * Fetch all of the vehicles with the blocking API, adding each one to its dealer as its response arrives
+   *
+   * @param fetchEngine engine bounding the number of requests in flight
+   * @param datasetId current dataset being processed
+   * @param vehicleIds list of vehicle ids to be processed
+   * @param dealers dealers the vehicles are added to
+   */
+  private void fetchVehicles(final FetchEngine fetchEngine, final String datasetId, final Iterable<Integer> vehicleIds, final Dealers dealers) {
+    fetchEngine.forEach(vehicleIds, vehicleId -> {
+      VehicleResponse vehicleResponse = getVehicleInfo(datasetId, vehicleId);
 
-    vehicleIds.parallelStream()
-      .forEach(vehicleId -> {
-        VehicleResponse vehicleResponse = getVehicleInfo(datasetId, vehicleId);
+      // Add the vehicle information to the dealer
+      dealers.addVehicle(datasetId, vehicleResponse);
+    }, deadline);
+  }
+
+  /**
+   * Fetch all of the vehicles with the asynchronous API, adding each one to its dealer as its response arrives.
+   * At most the concurrency is in flight for the dataset (the calling thread waits for a free slot, no thread
+   * waits on a request), and the shared client's per host limit bounds the requests of all datasets.
+   *
+   * @param datasetId current dataset being processed
+   * @param vehicleIds list of vehicle ids to be processed
+   * @param dealers dealers the vehicles are added to
+   */
+  private void fetchVehiclesAsync(final String datasetId, final Iterable<Integer> vehicleIds, final Dealers dealers) {
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
 
-        // Create the vehicle answer to associate with the dealer
-        VehicleAnswer vehicleAnswer = new VehicleAnswer();
-        vehicleAnswer.setMake(vehicleResponse.getMake());
-        vehicleAnswer.setModel(vehicleResponse.getModel());
-        vehicleAnswer.setVehicleId(vehicleResponse.getVehicleId());
-        vehicleAnswer.setYear(vehicleResponse.getYear());
+    // A permit is held from the start of a fetch until it completes
+    final Semaphore window = new Semaphore(concurrency);
 
-        // Add the vehicle information to the dealer
-        dealers.updateDealer(datasetId, vehicleResponse.getDealerId(), vehicleAnswer);
+    final Iterator<Integer> iterator = vehicleIds.iterator();
+    while (failure.get() == null) {
+      // The ids may be read as they arrive (from a response stream), so a failure reading them is treated like a
+      // failed fetch, and the fetches already started are still waited for
+      final Integer vehicleId;
+      try {
+        if (!iterator.hasNext()) {
+          break;
+        }
+        vehicleId = iterator.next();
+      } catch (RuntimeException e) {
+        failure.compareAndSet(null, e);
+        break;
+      }
+      if (!FetchEngine.acquire(window, 1, deadline)) {
+        failure.compareAndSet(null, deadline.exceeded());
+        break;
+      }
+      final CompletableFuture<Void> fetch;
+      try {
+        fetch = getVehicleInfoAsync(datasetId, vehicleId)
+          .thenAccept(vehicleResponse -> dealers.addVehicle(datasetId, vehicleResponse));
+      } catch (RuntimeException e) {
+        window.release();
+        failure.compareAndSet(null, e);
+        break;
+      }
+      fetch.whenComplete((ignored, e) -> {
+        if (e != null) {
+          failure.compareAndSet(null, e);
+        }
+        window.release();
       });
+    }
+
+    // Every fetch holds a permit until it is done, so holding all of them means everything has completed
+    if (FetchEngine.acquire(window, concurrency, deadline)) {
+      window.release(concurrency);
+    } else {
+      failure.compareAndSet(null, deadline.exceeded());
+    }
 
-    return dealers.getDealerAnswers();
+    if (failure.get() != null) {
+      throw FetchEngine.propagate(failure.get());
+    }
   }
 
   /**
@@ -87,30 +411,84 @@ public class Vehicles {
    * @return the vehicle response which contains the vehicle information
    */
   private VehicleResponse getVehicleInfo(final String datasetId, final Integer vehicleId) {
-    // Need to create a new API each time as they are not thread safe
+    // The API is a cheap view over the shared, pooled client
     final VehiclesApi vehiclesApi = getVehiclesApi();
     try {
-      // For each vehicle, get its information
-      VehicleResponse vehicleResponse = vehiclesApi.vehiclesGetVehicle(datasetId, vehicleId);
-      if (vehicleResponse == null) {
-        throw new ApiException("Invalid response received from API to get the vehicle.");
-      }
+      // For each vehicle, get its information, sharing a call already in flight for the same vehicle of the same
+      // dataset. The key includes the dataset, as the API scopes the vehicle ids to it, so other datasets never share it.
+      return vehicleCalls.call(new SingleFlight.Key("vehicles", datasetId, vehicleId), () -> {
+        VehicleResponse vehicleResponse = checkVehicleResponse(vehicleId, metrics.call(Metrics.Endpoint.VEHICLE,
+          () -> retryPolicy.call(() -> limiter.call(() -> vehiclesApi.vehiclesGetVehicle(datasetId, vehicleId)), deadline)));
+        if (responseCache != null) {
+          responseCache.putVehicle(datasetId, vehicleResponse);
+        }
+        return vehicleResponse;
+      }, deadline);
+    } catch (ApiException e) {
+      throw new RuntimeException(vehicleFailureMessage(datasetId, vehicleId), e);
+    }
+  }
 
-      if (! vehicleId.equals(vehicleResponse.getVehicleId())) {
-        throw new ApiException("Wrong vehicle in response. (expected, received): (" + vehicleId + "," + vehicleResponse.getVehicleId() + ")");
+  /**
+   * Start retrieving the vehicle information without waiting for it
+   *
+   * @param datasetId current dataset being processed
+   * @param vehicleId the vehicle id whose information is to be retrieved
+   * @return a future for the vehicle response which contains the vehicle information
+   */
+  private CompletableFuture<VehicleResponse> getVehicleInfoAsync(final String datasetId, final Integer vehicleId) {
+    final VehiclesApi vehiclesApi = getVehiclesApi();
+    return vehicleCalls.callAsync(new SingleFlight.Key("vehicles", datasetId, vehicleId), () -> {
+      CompletableFuture<VehicleResponse> fetch = metrics.callAsync(Metrics.Endpoint.VEHICLE, () -> retryPolicy.callAsync(
+        () -> limiter.callAsync(
+          () -> ApiFutures.<VehicleResponse>call(callback -> startVehicleCall(vehiclesApi, datasetId, vehicleId, callback),
+            vehicleResponse -> checkVehicleResponse(vehicleId, vehicleResponse),
+            vehicleFailureMessage(datasetId, vehicleId))), deadline));
+      if (responseCache == null) {
+        return fetch;
       }
+      return fetch.thenApply(vehicleResponse -> {
+        responseCache.putVehicle(datasetId, vehicleResponse);
+        return vehicleResponse;
+      });
+    });
+  }
 
-      return vehicleResponse;
-    } catch (ApiException e) {
-      throw new RuntimeException("Unable to retrieve vehicle information for (dataset, id): (" + datasetId + "," + vehicleId + ")", e);
+  /**
+   * Start the vehicle call on the client of the API. The call is built without progress listeners, as given a
+   * callback the generated vehiclesGetVehicleAsync adds a network interceptor to the shared client on every call.
+   */
+  protected void startVehicleCall(final VehiclesApi vehiclesApi, final String datasetId, final Integer vehicleId,
+                                  final ApiCallback<VehicleResponse> callback) throws ApiException {
+    vehiclesApi.getApiClient().executeAsync(vehiclesApi.vehiclesGetVehicleCall(datasetId, vehicleId, null, null),
+      VehicleResponse.class, callback);
+  }
+
+  private static VehicleResponse checkVehicleResponse(final Integer vehicleId, final VehicleResponse vehicleResponse) throws ApiException {
+    if (vehicleResponse == null) {
+      throw new ApiException("Invalid response received from API to get the vehicle.");
     }
+
+    if (! vehicleId.equals(vehicleResponse.getVehicleId())) {
+      throw new ApiException("Wrong vehicle in response. (expected, received): (" + vehicleId + "," + vehicleResponse.getVehicleId() + ")");
+    }
+
+    return vehicleResponse;
+  }
+
+  private static String vehicleFailureMessage(final String datasetId, final Integer vehicleId) {
+    return "Unable to retrieve vehicle information for (dataset, id): (" + datasetId + "," + vehicleId + ")";
   }
 
   protected VehiclesApi getVehiclesApi() {
-     return new VehiclesApi();
+    return new VehiclesApi(ApiClients.get());
   }
 
   protected Dealers getDealers() {
     return new Dealers();
   }
+
+  protected FetchEngine getFetchEngine() {
+    return new FetchEngine(concurrency, fetchMode == FetchMode.VIRTUAL);
+  }
 }
\ No newline at end of file
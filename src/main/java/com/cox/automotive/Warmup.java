@@ -0,0 +1,160 @@
+package com.cox.automotive;
+
+import com.squareup.okhttp.Callback;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import io.swagger.client.ApiClient;
+import io.swagger.client.model.Answer;
+import io.swagger.client.model.DealerAnswer;
+import io.swagger.client.model.VehicleAnswer;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Does the startup work of a run while the dataset id request is in flight, so the first wave of vehicle requests
+ * goes out on open connections, to threads that are already running, through JSON codecs that are already loaded:
+ * <ul>
+ * <li>opens connections to the API (with their TLS handshake for an https base path) with HEAD requests made at
+ * the same time, which leave them idle in the shared pool;</li>
+ * <li>starts the threads of the fetch engine;</li>
+ * <li>reads and writes a sample of each model with the codecs of the client, so their classes are loaded.</li>
+ * </ul>
+ * Nothing here fails the run: a connection that cannot be opened is only counted.
+ *
+ * @author jeff.snyder
+ */
+public class Warmup {
+
+  private final long startNanos = System.nanoTime();
+  private final int connections;
+  private final AtomicInteger openedConnections = new AtomicInteger();
+  private final AtomicInteger failedConnections = new AtomicInteger();
+  private final CountDownLatch done;
+  private volatile long elapsedNanos;
+
+  private Warmup(final int connections) {
+    this.connections = connections;
+    // One count for each connection, and one for the codecs
+    this.done = new CountDownLatch(connections + 1);
+  }
+
+  /**
+   * Start warming up, without waiting for it
+   *
+   * @param apiClient   client whose connection pool is filled
+   * @param connections number of connections to open
+   * @param fetchEngine engine whose threads are started (null for none)
+   * @return the warmup in progress
+   */
+  public static Warmup start(final ApiClient apiClient, final int connections, final FetchEngine fetchEngine) {
+    final Warmup warmup = new Warmup(connections);
+    if (fetchEngine != null) {
+      fetchEngine.prestart();
+    }
+    warmup.openConnections(apiClient.getHttpClient(), apiClient.getBasePath());
+    FetchEngine.threadFactory("warmup").newThread(() -> {
+      try {
+        warmCodecs();
+      } finally {
+        warmup.countDown();
+      }
+    }).start();
+    return warmup;
+  }
+
+  /**
+   * Wait for the warmup to finish
+   *
+   * @return true if it finished, false if the timeout passed first
+   */
+  public boolean await(final long timeout, final TimeUnit unit) throws InterruptedException {
+    return done.await(timeout, unit);
+  }
+
+  public int getOpenedConnections() {
+    return openedConnections.get();
+  }
+
+  public int getFailedConnections() {
+    return failedConnections.get();
+  }
+
+  @Override
+  public String toString() {
+    if (done.getCount() > 0) {
+      return "in progress, connections=" + openedConnections.get() + "/" + connections;
+    }
+    return String.format("connections=%d/%d failed=%d in %dms", openedConnections.get(), connections,
+      failedConnections.get(), TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+  }
+
+  private void openConnections(final OkHttpClient httpClient, final String basePath) {
+    // Enqueued together, so (up to the dispatcher's limit per host) they are in flight at once and each opens a connection
+    for (int i = 0; i < connections; i++) {
+      Request request = new Request.Builder().url(basePath).head().build();
+      httpClient.newCall(request).enqueue(new Callback() {
+        @Override
+        public void onFailure(final Request request, final IOException e) {
+          failedConnections.incrementAndGet();
+          countDown();
+        }
+
+        @Override
+        public void onResponse(final Response response) throws IOException {
+          // Whatever the status, the connection is open, and closing the (empty) body returns it to the pool
+          response.body().close();
+          openedConnections.incrementAndGet();
+          countDown();
+        }
+      });
+    }
+  }
+
+  private void countDown() {
+    done.countDown();
+    if (done.getCount() == 0) {
+      elapsedNanos = System.nanoTime() - startNanos;
+    }
+  }
+
+  /**
+   * Read a sample of each response and write a sample answer with the codecs the client uses
+   *
+   * @return the JSON of the sample answer
+   */
+  static String warmCodecs() {
+    try {
+      ApiCodecs.read(new StringReader("{\"datasetId\":\"AAA\"}"), ApiCodecs.DATASET_ID_RESPONSE);
+      ApiCodecs.read(new StringReader("{\"vehicleIds\":[1,2]}"), ApiCodecs.VEHICLE_IDS_RESPONSE);
+      ApiCodecs.read(new StringReader("{\"vehicleId\":1,\"year\":2001,\"make\":\"Pontiac\",\"model\":\"Grand Am\",\"dealerId\":1}"),
+        ApiCodecs.VEHICLE_RESPONSE);
+      ApiCodecs.read(new StringReader("{\"dealerId\":1,\"name\":\"Joes Car Palace\"}"), ApiCodecs.DEALERS_RESPONSE);
+      ApiCodecs.read(new StringReader("{\"success\":true,\"message\":\"Congratulations.\",\"totalMilliseconds\":1}"),
+        ApiCodecs.ANSWER_RESPONSE);
+
+      VehicleAnswer vehicle = new VehicleAnswer();
+      vehicle.setVehicleId(1);
+      vehicle.setYear(2001);
+      vehicle.setMake("Pontiac");
+      vehicle.setModel("Grand Am");
+      DealerAnswer dealer = new DealerAnswer();
+      dealer.setDealerId(1);
+      dealer.setName("Joes Car Palace");
+      dealer.setVehicles(Collections.singletonList(vehicle));
+      Answer answer = new Answer();
+      answer.setDealers(Collections.singletonList(dealer));
+      StringWriter json = new StringWriter();
+      ApiCodecs.write(json, ApiCodecs.ANSWER, answer);
+      return json.toString();
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to warm up the codecs.", e);
+    }
+  }
+}
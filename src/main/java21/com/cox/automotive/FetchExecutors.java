@@ -0,0 +1,32 @@
+package com.cox.automotive;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates the executors that depend on the Java version. This is the Java 21 version, packaged under
+ * META-INF/versions/21 of the multi-release jar, which provides virtual threads.
+ *
+ * @author jeff.snyder
+ */
+final class FetchExecutors {
+
+  private FetchExecutors() {
+  }
+
+  /**
+   * @return true when the running JVM supports virtual threads
+   */
+  static boolean isVirtualThreadsAvailable() {
+    return true;
+  }
+
+  /**
+   * @param prefix  prefix of the thread names
+   * @param threads number of platform threads of the pool used when virtual threads are not available (unused here)
+   * @return an executor starting a new virtual thread for each task
+   */
+  static ExecutorService newVirtualThreadPerTaskExecutor(final String prefix, final int threads) {
+    return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(prefix + "-", 1).factory());
+  }
+}
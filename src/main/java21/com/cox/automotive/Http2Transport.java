@@ -0,0 +1,477 @@
+package com.cox.automotive;
+
+import com.squareup.okhttp.Headers;
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.RequestBody;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+import okio.BufferedSink;
+import okio.Okio;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Sends the requests of the generated client over a few multiplexed HTTP/2 connections rather than one HTTP/1.1
+ * connection per request in flight. This is the Java 21 version, packaged under META-INF/versions/21 of the
+ * multi-release jar, which hands the requests to the JDK's HTTP client: h2 is negotiated with ALPN over TLS, and
+ * h2c with an upgrade over plain HTTP (a server that declines it is spoken to in HTTP/1.1).
+ * <p>
+ * Each connection is its own JDK client (a client keeps one HTTP/2 connection to a host), taken in turn, and has
+ * at most maxStreams requests in flight; a request waits for a stream when every connection is full. A stream is
+ * held until the response body is read to the end or closed. Responses are asked for gzip or deflate and decoded
+ * here, as the JDK client does not. Request bodies are handed to the connection as they are written rather than
+ * buffered whole, so the streamed answer goes out in data frames, with no Content-Length, as it is produced.
+ * <p>
+ * The transport blocks the thread of the call until the response headers arrive, so an asynchronous call holds a
+ * dispatcher thread meanwhile; {@link ApiClients} raises the dispatcher limits to the connections times the streams
+ * when the transport is used, so the dispatcher does not cap the streams below maxStreams.
+ *
+ * @author jeff.snyder
+ */
+final class Http2Transport implements Interceptor {
+
+  public static final int DEFAULT_CONNECTIONS = 2;
+  public static final int DEFAULT_MAX_STREAMS = 100;
+
+  // Set by the JDK client itself, which refuses them, and the encodings, which are the ones decoded here
+  private static final Set<String> RESTRICTED_HEADERS = new HashSet<>(Arrays.asList(
+    "connection", "content-length", "expect", "host", "upgrade", "accept-encoding"));
+
+  private final HttpClient[] clients;
+  private final Semaphore[] streams;
+  private final int maxStreams;
+  private final Duration readTimeout;
+  private final Metrics metrics;
+
+  private final AtomicInteger next = new AtomicInteger();
+  private final AtomicLongArray requests;
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final AtomicInteger peakInFlight = new AtomicInteger();
+  private final LongAdder http2Responses = new LongAdder();
+  private final LongAdder http1Responses = new LongAdder();
+
+  private Http2Transport(final HttpClient[] clients, final int maxStreams, final Duration readTimeout,
+                         final Metrics metrics) {
+    this.clients = clients;
+    this.maxStreams = maxStreams;
+    this.readTimeout = readTimeout;
+    this.metrics = metrics;
+    this.streams = new Semaphore[clients.length];
+    for (int i = 0; i < streams.length; i++) {
+      streams[i] = new Semaphore(maxStreams);
+    }
+    this.requests = new AtomicLongArray(clients.length);
+  }
+
+  /**
+   * @param httpClient  client whose timeouts are applied
+   * @param connections number of HTTP/2 connections the requests are spread over
+   * @param maxStreams  maximum number of requests in flight on each connection
+   * @param metrics     records the requests, as the network interceptors of the client are bypassed
+   * @return the transport, to be added as an application interceptor of the client
+   */
+  static Http2Transport create(final OkHttpClient httpClient, final int connections, final int maxStreams,
+                               final Metrics metrics) {
+    if (connections < 1) {
+      throw new IllegalArgumentException("HTTP/2 connections must be at least 1: " + connections);
+    }
+    if (maxStreams < 1) {
+      throw new IllegalArgumentException("HTTP/2 streams per connection must be at least 1: " + maxStreams);
+    }
+    HttpClient[] clients = new HttpClient[connections];
+    for (int i = 0; i < connections; i++) {
+      HttpClient.Builder builder = HttpClient.newBuilder()
+        .version(HttpClient.Version.HTTP_2)
+        .followRedirects(httpClient.getFollowRedirects() ? HttpClient.Redirect.NORMAL : HttpClient.Redirect.NEVER);
+      if (httpClient.getConnectTimeout() > 0) {
+        builder.connectTimeout(Duration.ofMillis(httpClient.getConnectTimeout()));
+      }
+      clients[i] = builder.build();
+    }
+    Duration readTimeout = (httpClient.getReadTimeout() > 0) ? Duration.ofMillis(httpClient.getReadTimeout()) : null;
+    return new Http2Transport(clients, maxStreams, readTimeout, metrics);
+  }
+
+  @Override
+  public Response intercept(final Chain chain) throws IOException {
+    Request request = chain.request();
+    Metrics.Endpoint endpoint = Metrics.Endpoint.forPath(request.httpUrl().encodedPath());
+
+    AtomicLong sentBytes = new AtomicLong();
+    HttpRequest httpRequest = toHttpRequest(request, sentBytes);
+
+    int lane = acquireStream();
+    long start = System.nanoTime();
+    boolean released = false;
+    try {
+      HttpResponse<InputStream> httpResponse;
+      try {
+        httpResponse = clients[lane].send(httpRequest, HttpResponse.BodyHandlers.ofInputStream());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for the response to " + request.httpUrl());
+      }
+      requests.incrementAndGet(lane);
+      boolean http2 = httpResponse.version() == HttpClient.Version.HTTP_2;
+      (http2 ? http2Responses : http1Responses).increment();
+
+      // From here the body gives back the stream
+      released = true;
+      InputStream stream = new StreamInputStream(httpResponse.body(), endpoint, lane);
+      Response response = toResponse(request, httpResponse, http2, stream);
+      if (endpoint != null) {
+        metrics.request(endpoint, System.nanoTime() - start, sentBytes.get(), 0L, !response.isSuccessful());
+      }
+      return response;
+    } catch (IOException | RuntimeException e) {
+      if (endpoint != null) {
+        metrics.request(endpoint, System.nanoTime() - start, sentBytes.get(), -1L, true);
+      }
+      throw e;
+    } finally {
+      if (!released) {
+        releaseStream(lane);
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder perConnection = new StringBuilder();
+    for (int i = 0; i < requests.length(); i++) {
+      perConnection.append((i == 0) ? "" : ",").append(requests.get(i));
+    }
+    return String.format("HTTP/2 connections=%d maxStreams=%d requests=[%s] peakStreams=%d http2=%d http1=%d",
+      clients.length, maxStreams, perConnection, peakInFlight.get(), http2Responses.sum(), http1Responses.sum());
+  }
+
+  /**
+   * Take a stream on the next connection with one free, waiting on the next connection in turn if none has
+   *
+   * @return the index of the connection
+   */
+  private int acquireStream() throws InterruptedIOException {
+    int first = Math.floorMod(next.getAndIncrement(), clients.length);
+    int lane = -1;
+    for (int i = 0; i < clients.length; i++) {
+      int candidate = (first + i) % clients.length;
+      if (streams[candidate].tryAcquire()) {
+        lane = candidate;
+        break;
+      }
+    }
+    if (lane < 0) {
+      try {
+        streams[first].acquire();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for an HTTP/2 stream");
+      }
+      lane = first;
+    }
+    peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+    return lane;
+  }
+
+  private void releaseStream(final int lane) {
+    inFlight.decrementAndGet();
+    streams[lane].release();
+  }
+
+  /**
+   * @param sentBytes counts the bytes of the request body as they are written
+   */
+  private HttpRequest toHttpRequest(final Request request, final AtomicLong sentBytes) throws IOException {
+    HttpRequest.Builder builder = HttpRequest.newBuilder(request.uri());
+    if (readTimeout != null) {
+      builder.timeout(readTimeout);
+    }
+    Headers headers = request.headers();
+    for (int i = 0; i < headers.size(); i++) {
+      if (!RESTRICTED_HEADERS.contains(headers.name(i).toLowerCase(Locale.ROOT))) {
+        builder.header(headers.name(i), headers.value(i));
+      }
+    }
+    RequestBody requestBody = request.body();
+    if ((requestBody != null) && (requestBody.contentType() != null) && (request.header("Content-Type") == null)) {
+      builder.header("Content-Type", requestBody.contentType().toString());
+    }
+    // Decoded here, as OkHttp would have if it was sending the request
+    builder.header("Accept-Encoding", "gzip, deflate");
+
+    HttpRequest.BodyPublisher publisher = (requestBody != null)
+      ? new StreamingBodyPublisher(requestBody, sentBytes)
+      : HttpRequest.BodyPublishers.noBody();
+    return builder.method(request.method(), publisher).build();
+  }
+
+  /**
+   * @param body the response body as received, closed if the response cannot be built
+   */
+  private Response toResponse(final Request request, final HttpResponse<InputStream> httpResponse,
+                              final boolean http2, final InputStream body) throws IOException {
+    try {
+      Headers.Builder headers = new Headers.Builder();
+      String contentEncoding = null;
+      for (Map.Entry<String, List<String>> header : httpResponse.headers().map().entrySet()) {
+        String name = header.getKey();
+        if (name.startsWith(":")) {
+          continue;
+        }
+        if ("content-encoding".equalsIgnoreCase(name)) {
+          contentEncoding = header.getValue().isEmpty() ? null : header.getValue().get(0).trim();
+          continue;
+        }
+        for (String value : header.getValue()) {
+          headers.add(name, value);
+        }
+      }
+      int code = httpResponse.statusCode();
+      boolean hasBody = !"HEAD".equals(request.method()) && (code != 204) && (code != 304);
+      boolean decoded = hasBody && (contentEncoding != null) && !"identity".equalsIgnoreCase(contentEncoding);
+      if (decoded) {
+        // The length is of the encoded body
+        headers.removeAll("Content-Length");
+      }
+
+      InputStream in = body;
+      if (decoded) {
+        if ("gzip".equalsIgnoreCase(contentEncoding)) {
+          in = new GZIPInputStream(body);
+        } else if ("deflate".equalsIgnoreCase(contentEncoding)) {
+          in = inflate(body);
+        } else {
+          throw new IOException("Unsupported content encoding of " + request.httpUrl() + ": " + contentEncoding);
+        }
+      }
+
+      Headers responseHeaders = headers.build();
+      String contentType = responseHeaders.get("Content-Type");
+      long contentLength = -1L;
+      if (!decoded && (responseHeaders.get("Content-Length") != null)) {
+        try {
+          contentLength = Long.parseLong(responseHeaders.get("Content-Length"));
+        } catch (NumberFormatException e) {
+          contentLength = -1L;
+        }
+      }
+      return new Response.Builder()
+        .request(request)
+        .protocol(http2 ? Protocol.HTTP_2 : Protocol.HTTP_1_1)
+        .code(code)
+        .message(reasonPhrase(code))
+        .headers(responseHeaders)
+        .body(ResponseBody.create((contentType != null) ? MediaType.parse(contentType) : null, contentLength,
+          Okio.buffer(Okio.source(in))))
+        .build();
+    } catch (IOException | RuntimeException e) {
+      body.close();
+      throw e;
+    }
+  }
+
+  /**
+   * HTTP/2 has no reason phrase, so the standard one of the status is given to the client, which uses it as the
+   * message of a failed call
+   */
+  static String reasonPhrase(final int code) {
+    return switch (code) {
+      case 200 -> "OK";
+      case 201 -> "Created";
+      case 202 -> "Accepted";
+      case 204 -> "No Content";
+      case 301 -> "Moved Permanently";
+      case 302 -> "Found";
+      case 304 -> "Not Modified";
+      case 307 -> "Temporary Redirect";
+      case 308 -> "Permanent Redirect";
+      case 400 -> "Bad Request";
+      case 401 -> "Unauthorized";
+      case 403 -> "Forbidden";
+      case 404 -> "Not Found";
+      case 405 -> "Method Not Allowed";
+      case 408 -> "Request Timeout";
+      case 409 -> "Conflict";
+      case 413 -> "Payload Too Large";
+      case 415 -> "Unsupported Media Type";
+      case 429 -> "Too Many Requests";
+      case 500 -> "Internal Server Error";
+      case 501 -> "Not Implemented";
+      case 502 -> "Bad Gateway";
+      case 503 -> "Service Unavailable";
+      case 504 -> "Gateway Timeout";
+      default -> "";
+    };
+  }
+
+  /**
+   * Deflate is meant to be zlib wrapped, but some servers send the raw stream, which has no zlib header
+   */
+  private static InputStream inflate(final InputStream in) throws IOException {
+    PushbackInputStream pushback = new PushbackInputStream(in, 2);
+    byte[] header = new byte[2];
+    int read = pushback.readNBytes(header, 0, 2);
+    pushback.unread(header, 0, read);
+    // A zlib header has the deflate method in its low bits and is a multiple of 31
+    boolean zlib = (read == 2) && ((header[0] & 0x0f) == 8)
+      && ((((header[0] & 0xff) << 8) | (header[1] & 0xff)) % 31 == 0);
+    return new InflaterInputStream(pushback, new Inflater(!zlib));
+  }
+
+  /**
+   * Publishes the request body to the JDK client as it is written. Each subscription (the client subscribes again
+   * to resend a request) writes the body on a virtual thread of its own, which blocks while the connection is
+   * behind, so at most a few chunks of the body are in memory at a time.
+   */
+  private static final class StreamingBodyPublisher implements HttpRequest.BodyPublisher {
+    // Chunks of up to a segment (8 KiB) written ahead of the connection
+    private static final int MAX_BUFFERED_CHUNKS = 16;
+
+    private final RequestBody body;
+    private final long contentLength;
+    private final AtomicLong sentBytes;
+
+    StreamingBodyPublisher(final RequestBody body, final AtomicLong sentBytes) throws IOException {
+      this.body = body;
+      this.contentLength = body.contentLength();
+      this.sentBytes = sentBytes;
+    }
+
+    @Override
+    public long contentLength() {
+      // -1 when unknown, which the client sends without a Content-Length
+      return contentLength;
+    }
+
+    @Override
+    public void subscribe(final Flow.Subscriber<? super ByteBuffer> subscriber) {
+      final SubmissionPublisher<ByteBuffer> chunks = new SubmissionPublisher<>(ForkJoinPool.commonPool(), MAX_BUFFERED_CHUNKS);
+      chunks.subscribe(subscriber);
+      Thread.ofVirtual().name("http2-request-body").start(() -> {
+        try (BufferedSink sink = Okio.buffer(Okio.sink(new ChunkOutputStream(chunks, sentBytes)))) {
+          body.writeTo(sink);
+        } catch (IOException | RuntimeException e) {
+          chunks.closeExceptionally(e);
+          return;
+        }
+        chunks.close();
+      });
+    }
+  }
+
+  /**
+   * Submits each write as a chunk of the request body, blocking while the subscriber has no room for it
+   */
+  private static final class ChunkOutputStream extends OutputStream {
+    private final SubmissionPublisher<ByteBuffer> chunks;
+    private final AtomicLong sentBytes;
+
+    ChunkOutputStream(final SubmissionPublisher<ByteBuffer> chunks, final AtomicLong sentBytes) {
+      this.chunks = chunks;
+      this.sentBytes = sentBytes;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+      write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+      if (len == 0) {
+        return;
+      }
+      // The client cancels its subscription when the request fails or the response comes first
+      if (!chunks.hasSubscribers()) {
+        throw new IOException("The request body is no longer being sent");
+      }
+      chunks.submit(ByteBuffer.wrap(Arrays.copyOfRange(b, off, off + len)));
+      sentBytes.addAndGet(len);
+    }
+  }
+
+  /**
+   * The response body as received, counting its bytes and giving back its stream once read to the end or closed
+   */
+  private final class StreamInputStream extends FilterInputStream {
+    private final Metrics.Endpoint endpoint;
+    private final int lane;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    StreamInputStream(final InputStream in, final Metrics.Endpoint endpoint, final int lane) {
+      super(in);
+      this.endpoint = endpoint;
+      this.lane = lane;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      counted((b < 0) ? -1 : 1);
+      return b;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+      return counted(super.read(b, off, len));
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        super.close();
+      } finally {
+        release();
+      }
+    }
+
+    private int counted(final int read) {
+      if (read > 0) {
+        if (endpoint != null) {
+          metrics.received(endpoint, read);
+        }
+      } else if (read < 0) {
+        release();
+      }
+      return read;
+    }
+
+    private void release() {
+      if (released.compareAndSet(false, true)) {
+        releaseStream(lane);
+      }
+    }
+  }
+}
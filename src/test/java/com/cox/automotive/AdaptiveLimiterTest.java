@@ -0,0 +1,165 @@
+package com.cox.automotive;
+
+import io.swagger.client.ApiException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntToLongFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test the adaptive limit of calls in flight
+ *
+ * @author jeff.snyder
+ */
+class AdaptiveLimiterTest {
+
+  @Test
+  void limit_growsWhileLatencyIsFlat() throws Exception {
+    AdaptiveLimiter limiter = new AdaptiveLimiter(4, 1, 100);
+
+    // Keep the limit in use so it is allowed to grow
+    for (int i = 0; i < 200; i++) {
+      AdaptiveLimiter.Permit[] permits = new AdaptiveLimiter.Permit[limiter.getLimit()];
+      for (int p = 0; p < permits.length; p++) {
+        permits[p] = limiter.acquire();
+      }
+      for (AdaptiveLimiter.Permit permit : permits) {
+        limiter.release(permit, true);
+      }
+    }
+
+    assertTrue(limiter.getLimit() > 4, "Limit did not grow: " + limiter);
+    assertEquals(0, limiter.getInFlight());
+  }
+
+  @Test
+  void limit_shrinksOnErrors() throws Exception {
+    AdaptiveLimiter limiter = new AdaptiveLimiter(50, 1, 100);
+
+    for (int i = 0; i < 20; i++) {
+      assertThrows(ApiException.class, () -> limiter.call(() -> {
+        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        throw new ApiException(503, "Service unavailable");
+      }));
+    }
+
+    assertTrue(limiter.getLimit() < 50, "Limit did not shrink: " + limiter);
+    assertEquals(0, limiter.getInFlight());
+  }
+
+  @Test
+  void limit_holdsUnderJitteredLatency() {
+    AtomicLong clock = new AtomicLong();
+    AdaptiveLimiter limiter = new AdaptiveLimiter(32, 1, 100, clock::get);
+    Random random = new Random(42);
+
+    // 50 +/- 40 ms and no errors: the recent latency stays near its average, however far above the fastest call
+    simulate(limiter, clock, 5_000, inFlight -> TimeUnit.MILLISECONDS.toNanos(10 + random.nextInt(81)));
+
+    assertTrue(limiter.getLimit() >= 32, "Limit shrank: " + limiter);
+    assertEquals(0, limiter.getInFlight());
+  }
+
+  @Test
+  void limit_shrinksWhenLatencyRises() {
+    AtomicLong clock = new AtomicLong();
+    AdaptiveLimiter limiter = new AdaptiveLimiter(32, 1, 100, clock::get);
+    Random random = new Random(42);
+
+    simulate(limiter, clock, 2_000, inFlight -> TimeUnit.MILLISECONDS.toNanos(5 + random.nextInt(11)));
+    int steadyLimit = limiter.getLimit();
+
+    // The server slows down with the load, so the latency rises with the calls in flight
+    simulate(limiter, clock, 300, inFlight -> TimeUnit.MILLISECONDS.toNanos(10L * inFlight / 8 + random.nextInt(3)));
+
+    assertTrue(limiter.getLimit() < steadyLimit, "Limit did not shrink from " + steadyLimit + ": " + limiter);
+  }
+
+  @Test
+  void acquireAsync_waitsForARelease() throws Exception {
+    AdaptiveLimiter limiter = new AdaptiveLimiter(1, 1, 1);
+
+    AdaptiveLimiter.Permit permit = limiter.acquire();
+    CompletableFuture<AdaptiveLimiter.Permit> waiter = limiter.acquireAsync();
+    assertFalse(waiter.isDone());
+
+    limiter.release(permit, true);
+    assertTrue(waiter.isDone());
+    assertEquals(1, limiter.getInFlight());
+
+    limiter.release(waiter.join(), true);
+    assertEquals(0, limiter.getInFlight());
+  }
+
+  @Test
+  void callAsync_releasesOnCompletion() throws Exception {
+    AdaptiveLimiter limiter = new AdaptiveLimiter(2, 1, 2);
+
+    CompletableFuture<String> response = new CompletableFuture<>();
+    CompletableFuture<String> call = limiter.callAsync(() -> response);
+    assertEquals(1, limiter.getInFlight());
+
+    response.complete("done");
+    assertEquals("done", call.join());
+    assertEquals(0, limiter.getInFlight());
+  }
+
+  @Test
+  void setLimit_startsAtTheConcurrencyAndLetsWaitersIn() throws Exception {
+    AdaptiveLimiter limiter = new AdaptiveLimiter(1, 1, 100);
+
+    AdaptiveLimiter.Permit permit = limiter.acquire();
+    CompletableFuture<AdaptiveLimiter.Permit> waiter = limiter.acquireAsync();
+    assertFalse(waiter.isDone());
+
+    limiter.setLimit(32);
+    assertEquals(32, limiter.getLimit());
+    assertTrue(waiter.isDone());
+
+    limiter.setLimit(500);
+    assertEquals(100, limiter.getLimit());
+
+    limiter.release(permit, true);
+    limiter.release(waiter.join(), true);
+    assertEquals(0, limiter.getInFlight());
+    assertEquals(FetchEngine.DEFAULT_CONCURRENCY, new AdaptiveLimiter().getLimit());
+  }
+
+  /**
+   * Make calls against a simulated server, keeping the whole limit in use as a busy fetch window does
+   *
+   * @param latency round trip in nanoseconds of a call, from the number of calls in flight
+   */
+  private static void simulate(final AdaptiveLimiter limiter, final AtomicLong clock, final int calls,
+                               final IntToLongFunction latency) {
+    PriorityQueue<long[]> responses = new PriorityQueue<>(Comparator.comparingLong((long[] response) -> response[0]));
+    List<AdaptiveLimiter.Permit> permits = new ArrayList<>();
+    for (int i = 0; i < calls; i++) {
+      while (limiter.getInFlight() < limiter.getLimit()) {
+        permits.add(limiter.acquire());
+        responses.add(new long[] {clock.get() + latency.applyAsLong(limiter.getInFlight()), permits.size() - 1});
+      }
+      long[] response = responses.poll();
+      clock.set(response[0]);
+      limiter.release(permits.get((int) response[1]), true);
+    }
+    while (!responses.isEmpty()) {
+      long[] response = responses.poll();
+      clock.set(response[0]);
+      limiter.release(permits.get((int) response[1]), true);
+    }
+  }
+}
@@ -0,0 +1,34 @@
+package com.cox.automotive;
+
+import com.squareup.okhttp.OkHttpClient;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test the shared API client
+ *
+ * @author jeff.snyder
+ */
+class ApiClientsTest {
+
+  @Test
+  void get_sharedClientWithOnlyItsOwnInterceptors() {
+    try {
+      ApiClients.setBasePath("http://127.0.0.1:1");
+      OkHttpClient httpClient = ApiClients.get().getHttpClient();
+
+      assertSame(httpClient, ApiClients.get().getHttpClient());
+      assertEquals("http://127.0.0.1:1", ApiClients.get().getBasePath());
+      assertEquals(1, httpClient.networkInterceptors().size());
+      assertTrue(httpClient.networkInterceptors().get(0) instanceof MetricsInterceptor);
+      assertEquals(1, httpClient.interceptors().size());
+      assertTrue(httpClient.interceptors().get(0) instanceof TracingInterceptor);
+      assertEquals(ApiClients.getMaxConnectionsPerHost(), httpClient.getDispatcher().getMaxRequestsPerHost());
+    } finally {
+      ApiClients.setBasePath(null);
+    }
+  }
+}
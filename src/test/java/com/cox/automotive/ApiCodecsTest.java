@@ -0,0 +1,165 @@
+package com.cox.automotive;
+
+import com.google.gson.Gson;
+import io.swagger.client.model.Answer;
+import io.swagger.client.model.AnswerResponse;
+import io.swagger.client.model.DatasetIdResponse;
+import io.swagger.client.model.DealerAnswer;
+import io.swagger.client.model.DealersResponse;
+import io.swagger.client.model.VehicleAnswer;
+import io.swagger.client.model.VehicleIdsResponse;
+import io.swagger.client.model.VehicleResponse;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Test that the streaming codecs read and write the same JSON as Gson
+ *
+ * @author jeff.snyder
+ */
+class ApiCodecsTest {
+
+  private final Gson gson = new Gson();
+
+  @Test
+  void vehicleResponse_roundTrip() throws Exception {
+    VehicleResponse vehicle = new VehicleResponse();
+    vehicle.setVehicleId(1);
+    vehicle.setYear(1989);
+    vehicle.setMake("Pontiac");
+    vehicle.setModel("Grand Am \"GT\" \u00e9 <ltd> & co");
+    vehicle.setDealerId(7);
+
+    assertRoundTrip(vehicle, ApiCodecs.VEHICLE_RESPONSE, VehicleResponse.class);
+  }
+
+  @Test
+  void vehicleResponse_nullFieldsLeftOut() throws Exception {
+    VehicleResponse vehicle = new VehicleResponse();
+    vehicle.setVehicleId(2);
+    vehicle.setMake("Pontiac");
+
+    assertEquals("{\"vehicleId\":2,\"make\":\"Pontiac\"}", write(ApiCodecs.VEHICLE_RESPONSE, vehicle));
+    assertRoundTrip(vehicle, ApiCodecs.VEHICLE_RESPONSE, VehicleResponse.class);
+  }
+
+  @Test
+  void vehicleResponse_readLikeGson() throws Exception {
+    // Unknown fields, explicit nulls, a number as a string and a string as a number
+    String json = "{\"extra\":{\"vehicleId\":9,\"list\":[1,{}]},\"vehicleId\":\"3\",\"year\":null,\"make\":12,\"dealerId\":7}";
+
+    VehicleResponse vehicle = read(json, ApiCodecs.VEHICLE_RESPONSE);
+    assertEquals(gson.fromJson(json, VehicleResponse.class), vehicle);
+    assertEquals(3, (int) vehicle.getVehicleId());
+    assertNull(vehicle.getYear());
+    assertEquals("12", vehicle.getMake());
+  }
+
+  @Test
+  void dealersResponse_roundTrip() throws Exception {
+    DealersResponse dealer = new DealersResponse();
+    dealer.setDealerId(7);
+    dealer.setName("Joes Car Palace");
+
+    assertRoundTrip(dealer, ApiCodecs.DEALERS_RESPONSE, DealersResponse.class);
+  }
+
+  @Test
+  void vehicleIdsResponse_roundTrip() throws Exception {
+    VehicleIdsResponse response = new VehicleIdsResponse();
+    response.setVehicleIds(Arrays.asList(1, 2, null, 2));
+
+    assertRoundTrip(response, ApiCodecs.VEHICLE_IDS_RESPONSE, VehicleIdsResponse.class);
+    assertRoundTrip(new VehicleIdsResponse(), ApiCodecs.VEHICLE_IDS_RESPONSE, VehicleIdsResponse.class);
+  }
+
+  @Test
+  void datasetIdResponse_roundTrip() throws Exception {
+    DatasetIdResponse response = new DatasetIdResponse();
+    response.setDatasetId("AAA");
+
+    assertRoundTrip(response, ApiCodecs.DATASET_ID_RESPONSE, DatasetIdResponse.class);
+  }
+
+  @Test
+  void answer_roundTrip() throws Exception {
+    VehicleAnswer vehicle = new VehicleAnswer();
+    vehicle.setVehicleId(1);
+    vehicle.setYear(1989);
+    vehicle.setMake("Pontiac");
+    vehicle.setModel("Grand Am");
+    DealerAnswer dealer = new DealerAnswer();
+    dealer.setDealerId(7);
+    dealer.setName("Joes Car Palace");
+    dealer.setVehicles(Arrays.asList(vehicle, new VehicleAnswer()));
+    DealerAnswer emptyDealer = new DealerAnswer();
+    emptyDealer.setDealerId(8);
+    emptyDealer.setVehicles(Collections.<VehicleAnswer>emptyList());
+    Answer answer = new Answer();
+    answer.setDealers(Arrays.asList(dealer, emptyDealer));
+
+    assertRoundTrip(answer, ApiCodecs.ANSWER, Answer.class);
+  }
+
+  @Test
+  void answerResponse_roundTrip() throws Exception {
+    AnswerResponse response = new AnswerResponse();
+    response.setSuccess(false);
+    response.setMessage("Wrong number of dealers.");
+    response.setTotalMilliseconds(1111);
+
+    assertRoundTrip(response, ApiCodecs.ANSWER_RESPONSE, AnswerResponse.class);
+    assertEquals(true, read("{\"success\":\"TRUE\"}", ApiCodecs.ANSWER_RESPONSE).isSuccess());
+  }
+
+  @Test
+  void read_emptyOrNullDocument() throws Exception {
+    assertNull(read("", ApiCodecs.VEHICLE_RESPONSE));
+    assertNull(read("null", ApiCodecs.VEHICLE_RESPONSE));
+  }
+
+  @Test
+  void read_invalidDocument() {
+    assertThrows(IllegalStateException.class, () -> read("[1,2,3]", ApiCodecs.VEHICLE_RESPONSE));
+    assertThrows(NumberFormatException.class, () -> read("{\"vehicleId\":\"A\"}", ApiCodecs.VEHICLE_RESPONSE));
+    assertThrows(IOException.class, () -> read("{\"vehicleId\":1,", ApiCodecs.VEHICLE_RESPONSE));
+  }
+
+  @Test
+  void forType() {
+    assertSame(ApiCodecs.VEHICLE_RESPONSE, ApiCodecs.forType(VehicleResponse.class));
+    assertSame(ApiCodecs.ANSWER, ApiCodecs.forType(Answer.class));
+    assertNull(ApiCodecs.forType(String.class));
+  }
+
+  /**
+   * The codec reads what Gson writes, and Gson reads what the codec writes, which is the same JSON
+   */
+  private <T> void assertRoundTrip(final T value, final ApiCodecs.Codec<T> codec, final Class<T> type) throws IOException {
+    String json = write(codec, value);
+
+    assertEquals(gson.toJson(value), json);
+    assertEquals(value, gson.fromJson(json, type));
+    assertEquals(value, read(gson.toJson(value), codec));
+  }
+
+  private static <T> String write(final ApiCodecs.Codec<T> codec, final T value) throws IOException {
+    StringWriter out = new StringWriter();
+    ApiCodecs.write(out, codec, value);
+    return out.toString();
+  }
+
+  private static <T> T read(final String json, final ApiCodecs.Codec<T> codec) throws IOException {
+    return ApiCodecs.read(new StringReader(json), codec);
+  }
+}
@@ -0,0 +1,82 @@
+package com.cox.automotive;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Test the primitive int map used to index the dealers
+ *
+ * @author jeff.snyder
+ */
+class ConcurrentIntMapTest {
+
+  @Test
+  void computeIfAbsent_createsOncePerKeyAndGrows() {
+    ConcurrentIntMap<String> map = new ConcurrentIntMap<>();
+    AtomicInteger created = new AtomicInteger();
+
+    for (int i = 0; i < 10_000; i++) {
+      map.computeIfAbsent(i * 7 - 5_000, key -> {
+        created.incrementAndGet();
+        return "dealer " + key;
+      });
+    }
+    String first = map.get(-5_000);
+    assertSame(first, map.computeIfAbsent(-5_000, key -> "other"));
+
+    assertEquals(10_000, created.get());
+    assertEquals(10_000, map.size());
+    assertEquals(10_000, new HashSet<>(map.values()).size());
+    assertEquals("dealer 2000", map.get(2000));
+    assertNull(map.get(2001));
+  }
+
+  @Test
+  void get_whileAnotherThreadInserts() throws Exception {
+    ConcurrentIntMap<Integer> map = new ConcurrentIntMap<>();
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Integer>> readers = new ArrayList<>();
+      for (int r = 0; r < 3; r++) {
+        readers.add(executor.submit(() -> {
+          // Every value seen belongs to its key, whichever table it was read from
+          int seen = 0;
+          while (map.size() < 5_000) {
+            for (int key = 0; key < 5_000; key++) {
+              Integer value = map.get(key);
+              if (value != null) {
+                assertEquals(key, (int) value);
+                seen++;
+              }
+            }
+          }
+          return seen;
+        }));
+      }
+      executor.submit(() -> {
+        for (int key = 0; key < 5_000; key++) {
+          map.computeIfAbsent(key, Integer::valueOf);
+        }
+      }).get(10, TimeUnit.SECONDS);
+      for (Future<Integer> reader : readers) {
+        reader.get(10, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertEquals(5_000, map.size());
+  }
+}
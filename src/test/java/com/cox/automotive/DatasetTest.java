@@ -1,18 +1,28 @@
 package com.cox.automotive;
 
+import com.sun.net.httpserver.HttpServer;
 import io.swagger.client.ApiException;
 import io.swagger.client.api.DataSetApi;
 import io.swagger.client.model.AnswerResponse;
 import io.swagger.client.model.DatasetIdResponse;
 import io.swagger.client.model.DealerAnswer;
+import okio.Buffer;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.mockito.Spy;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.zip.GZIPInputStream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -112,4 +122,87 @@ class DatasetTest {
 
     dataset.submitAnswer(datasetId, dealerAnswers);
   }
-}
\ No newline at end of file
+
+  @Test
+  void answerBody_writtenCompressed() throws Exception {
+    VehicleStore vehicleStore = new VehicleStore();
+    vehicleStore.add(1, 1989, "Pontiac", "Grand Am", 7);
+    vehicleStore.add(2, VehicleStore.NULL_INT, "Pontiac", null, 7);
+    StoredAnswer answer = new StoredAnswer(vehicleStore, new DealerInfo[] {new DealerInfo(7, "Joes Car Palace")},
+      new int[] {0, 2}, new int[] {0, 1});
+
+    Dataset.AnswerBody answerBody = new Dataset.AnswerBody(answer, true);
+    Buffer buffer = new Buffer();
+    answerBody.writeTo(buffer);
+
+    // Sent chunked, as the length is only known once it has been written
+    assertEquals(-1, answerBody.contentLength());
+    try (Reader reader = new InputStreamReader(new GZIPInputStream(buffer.inputStream()), StandardCharsets.UTF_8)) {
+      StringBuilder json = new StringBuilder();
+      char[] chars = new char[1024];
+      int length;
+      while ((length = reader.read(chars)) != -1) {
+        json.append(chars, 0, length);
+      }
+      assertEquals("{\"dealers\":[{\"dealerId\":7,\"name\":\"Joes Car Palace\",\"vehicles\":["
+        + "{\"vehicleId\":1,\"year\":1989,\"make\":\"Pontiac\",\"model\":\"Grand Am\"},"
+        + "{\"vehicleId\":2,\"make\":\"Pontiac\"}]}]}", json.toString());
+    }
+  }
+
+  @Test
+  void submitAnswerStreamed_retriedThroughTheClient() throws Exception {
+    VehicleStore vehicleStore = new VehicleStore();
+    vehicleStore.add(1, 1989, "Pontiac", "Grand Am", 7);
+    StoredAnswer answer = new StoredAnswer(vehicleStore, new DealerInfo[] {new DealerInfo(7, "Joes Car Palace")},
+      new int[] {0, 1}, new int[] {0});
+
+    List<String> bodies = new ArrayList<>();
+    List<String> transferEncodings = new ArrayList<>();
+    HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext("/api/AAA/answer", exchange -> {
+      bodies.add(read(new GZIPInputStream(exchange.getRequestBody())));
+      transferEncodings.add(exchange.getRequestHeaders().getFirst("Transfer-Encoding"));
+      // The first attempt fails transiently, and is retried
+      byte[] response = ((bodies.size() == 1) ? "{}"
+        : "{\"success\":true,\"message\":\"Congratulations.\",\"totalMilliseconds\":12}").getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().add("Content-Type", "application/json");
+      exchange.sendResponseHeaders((bodies.size() == 1) ? 503 : 200, response.length);
+      exchange.getResponseBody().write(response);
+      exchange.close();
+    });
+    server.start();
+    try {
+      StreamingApiClient apiClient = new StreamingApiClient();
+      apiClient.setBasePath("http://127.0.0.1:" + server.getAddress().getPort());
+      AdaptiveLimiter limiter = new AdaptiveLimiter(1, 1, 1);
+      doReturn(apiClient).when(dataset).getApiClient();
+      dataset.setLimiter(limiter);
+      dataset.setRetryPolicy(new RetryPolicy(3, false, 1L, 5L));
+
+      AnswerResponse answerResponse = dataset.submitAnswer("AAA", answer, true);
+
+      assertEquals("Congratulations.", answerResponse.getMessage());
+      assertEquals(2, bodies.size());
+      assertEquals(bodies.get(0), bodies.get(1));
+      assertEquals("{\"dealers\":[{\"dealerId\":7,\"name\":\"Joes Car Palace\",\"vehicles\":["
+        + "{\"vehicleId\":1,\"year\":1989,\"make\":\"Pontiac\",\"model\":\"Grand Am\"}]}]}", bodies.get(1));
+      assertEquals("chunked", transferEncodings.get(1));
+      assertEquals(0, limiter.getInFlight());
+    } finally {
+      server.stop(0);
+    }
+  }
+
+  private static String read(final InputStream in) throws IOException {
+    try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+      StringBuilder text = new StringBuilder();
+      char[] chars = new char[1024];
+      int length;
+      while ((length = reader.read(chars)) != -1) {
+        text.append(chars, 0, length);
+      }
+      return text.toString();
+    }
+  }
+}
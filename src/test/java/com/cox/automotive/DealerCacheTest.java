@@ -0,0 +1,86 @@
+package com.cox.automotive;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Test the in-memory cache of the dealer names
+ *
+ * @author jeff.snyder
+ */
+class DealerCacheTest {
+
+  private final AtomicLong now = new AtomicLong();
+
+  @Test
+  void get_scopedToDataset() {
+    DealerCache dealerCache = new DealerCache(10, 1000, false, 2, now::get);
+    dealerCache.put("AAA", 1, "Joes Car Palace");
+    dealerCache.put("BBB", 1, "Joes Car Palace");
+
+    assertEquals("Joes Car Palace", dealerCache.get("AAA", 1));
+    assertNull(dealerCache.get("CCC", 1));
+    assertEquals(1, dealerCache.getHits());
+    assertEquals(1, dealerCache.getMisses());
+  }
+
+  @Test
+  void get_sharedOnceConfirmedByDistinctDatasets() {
+    DealerCache dealerCache = new DealerCache(10, 1000, true, 2, now::get);
+
+    dealerCache.put("AAA", 1, "Joes Car Palace");
+    dealerCache.put("AAA", 1, "Joes Car Palace");
+    assertNull(dealerCache.get("CCC", 1));
+
+    dealerCache.put("BBB", 1, "Joes Car Palace");
+    assertEquals("Joes Car Palace", dealerCache.get("CCC", 1));
+    assertEquals(1, dealerCache.getSharedHits());
+  }
+
+  @Test
+  void get_conflictingNamesNotShared() {
+    DealerCache dealerCache = new DealerCache(10, 1000, true, 2, now::get);
+
+    dealerCache.put("AAA", 1, "Joes Car Palace");
+    dealerCache.put("BBB", 1, "Bobs Autos");
+    dealerCache.put("CCC", 1, "Joes Car Palace");
+
+    assertNull(dealerCache.get("DDD", 1));
+    assertEquals("Bobs Autos", dealerCache.get("BBB", 1));
+    assertEquals(1, dealerCache.getConflicts());
+  }
+
+  @Test
+  void get_expiredAfterTtl() {
+    DealerCache dealerCache = new DealerCache(10, 1000, false, 2, now::get);
+    dealerCache.put("AAA", 1, "Joes Car Palace");
+
+    now.addAndGet(TimeUnit.MILLISECONDS.toNanos(999));
+    assertEquals("Joes Car Palace", dealerCache.get("AAA", 1));
+
+    now.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+    assertNull(dealerCache.get("AAA", 1));
+    assertEquals(0, dealerCache.size());
+  }
+
+  @Test
+  void put_leastRecentlyUsedEvicted() {
+    DealerCache dealerCache = new DealerCache(2, 1000, false, 2, now::get);
+    dealerCache.put("AAA", 1, "Joes Car Palace");
+    dealerCache.put("AAA", 2, "Bobs Autos");
+
+    // Using the first dealer leaves the second one as the least recently used
+    dealerCache.get("AAA", 1);
+    dealerCache.put("AAA", 3, "Carls Cars");
+
+    assertEquals(2, dealerCache.size());
+    assertEquals("Joes Car Palace", dealerCache.get("AAA", 1));
+    assertNull(dealerCache.get("AAA", 2));
+    assertEquals("Carls Cars", dealerCache.get("AAA", 3));
+  }
+}
@@ -1,18 +1,45 @@
 package com.cox.automotive;
 
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import io.swagger.client.ApiCallback;
 import io.swagger.client.ApiException;
 import io.swagger.client.api.DealersApi;
+import io.swagger.client.model.Answer;
+import io.swagger.client.model.DealerAnswer;
 import io.swagger.client.model.DealersResponse;
 import io.swagger.client.model.VehicleAnswer;
+import io.swagger.client.model.VehicleResponse;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.mockito.Spy;
 
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntConsumer;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -42,7 +69,9 @@ class DealersTest {
     doReturn(dealersApi).when(dealers).getDealersApi();
     when(dealersApi.dealersGetDealer(datasetId, dealerId)).thenThrow(new ApiException());
 
-    assertThrows(RuntimeException.class, () -> dealers.updateDealer(datasetId, dealerId, vehicleAnswer));
+    // The dealer is looked up asynchronously, so the failure shows up when the dealers are answered
+    dealers.updateDealer(datasetId, dealerId, vehicleAnswer);
+    assertThrows(RuntimeException.class, () -> dealers.getDealerAnswers());
   }
 
   @Test
@@ -54,7 +83,9 @@ class DealersTest {
     doReturn(dealersApi).when(dealers).getDealersApi();
     when(dealersApi.dealersGetDealer(datasetId, dealerId)).thenReturn(null);
 
-    assertThrows(RuntimeException.class, () -> dealers.updateDealer(datasetId, dealerId, vehicleAnswer));
+    // The dealer is looked up asynchronously, so the failure shows up when the dealers are answered
+    dealers.updateDealer(datasetId, dealerId, vehicleAnswer);
+    assertThrows(RuntimeException.class, () -> dealers.getDealerAnswers());
   }
 
   @Test
@@ -74,7 +105,9 @@ class DealersTest {
     doReturn(dealersApi).when(dealers).getDealersApi();
     when(dealersApi.dealersGetDealer(datasetId, dealerId)).thenReturn(dealersResponse);
 
-    assertThrows(RuntimeException.class, () -> dealers.updateDealer(datasetId, dealerId, vehicleAnswer));
+    // The dealer is looked up asynchronously, so the failure shows up when the dealers are answered
+    dealers.updateDealer(datasetId, dealerId, vehicleAnswer);
+    assertThrows(RuntimeException.class, () -> dealers.getDealerAnswers());
   }
 
   @Test
@@ -96,7 +129,46 @@ class DealersTest {
 
     dealers.updateDealer(datasetId, dealerId, vehicleAnswer);
 
-    assertEquals(1, dealers.getDealerAnswers().size());
+    List<DealerAnswer> dealerAnswers = dealers.getDealerAnswers();
+    assertEquals(1, dealerAnswers.size());
+    assertEquals(dealerId, dealerAnswers.get(0).getDealerId());
+    assertEquals(dealersResponse.getName(), dealerAnswers.get(0).getName());
+    assertEquals(1, dealerAnswers.get(0).getVehicles().size());
+  }
+
+  @Test
+  public void updateDealer_dealerCacheSharedWithNextDataset() throws Exception {
+    final Integer dealerId = 1;
+    final VehicleAnswer vehicleAnswer = new VehicleAnswer();
+    vehicleAnswer.setVehicleId(1);
+
+    DealersResponse dealersResponse = new DealersResponse();
+    dealersResponse.setDealerId(dealerId);
+    dealersResponse.setName("Joes Car Palace");
+
+    doReturn(dealersApi).when(dealers).getDealersApi();
+    when(dealersApi.dealersGetDealer(anyString(), anyInt())).thenReturn(dealersResponse);
+
+    DealerCache dealerCache = new DealerCache(DealerCache.DEFAULT_MAX_SIZE, DealerCache.DEFAULT_TTL_MILLIS, true);
+    dealers.setDealerCache(dealerCache);
+    dealers.updateDealer("AAA", dealerId, vehicleAnswer);
+    dealers.getDealerAnswers();
+
+    // A second dataset confirms the name, so a third reuses it without a request
+    Dealers secondDealers = spy(new Dealers());
+    doReturn(dealersApi).when(secondDealers).getDealersApi();
+    secondDealers.setDealerCache(dealerCache);
+    secondDealers.updateDealer("BBB", dealerId, vehicleAnswer);
+    secondDealers.getDealerAnswers();
+
+    Dealers thirdDealers = spy(new Dealers());
+    doReturn(dealersApi).when(thirdDealers).getDealersApi();
+    thirdDealers.setDealerCache(dealerCache);
+    thirdDealers.updateDealer("CCC", dealerId, vehicleAnswer);
+
+    assertEquals("Joes Car Palace", thirdDealers.getDealerAnswers().get(0).getName());
+    verify(dealersApi, never()).dealersGetDealer("CCC", dealerId);
+    assertEquals(1, dealerCache.getSharedHits());
   }
 
   @Test
@@ -145,8 +217,15 @@ class DealersTest {
     dealersResponse.setDealerId(dealerId);
     dealersResponse.setName("Joes Car Palace");
 
+    Integer newDealerId = dealerId + 1;
+    DealersResponse dealersResponse2 = new DealersResponse();
+    dealersResponse2.setDealerId(newDealerId);
+    dealersResponse2.setName("King Pontiac");
+
+    // Both dealers are stubbed up front, as the lookup of the first one runs on another thread
     doReturn(dealersApi).when(dealers).getDealersApi();
     when(dealersApi.dealersGetDealer(datasetId, dealerId)).thenReturn(dealersResponse);
+    when(dealersApi.dealersGetDealer(datasetId, newDealerId)).thenReturn(dealersResponse2);
 
     dealers.updateDealer(datasetId, dealerId, vehicleAnswer);
 
@@ -156,14 +235,222 @@ class DealersTest {
     vehicleAnswer.setModel("Sunbird");
     vehicleAnswer.setMake("Pontiac");
 
-    Integer newDealerId = dealerId + 1;
-    DealersResponse dealersResponse2 = new DealersResponse();
-    dealersResponse2.setDealerId(newDealerId);
-    dealersResponse2.setName("King Pontiac");
-
-    when(dealersApi.dealersGetDealer(datasetId, newDealerId)).thenReturn(dealersResponse2);
     dealers.updateDealer(datasetId, newDealerId, vehicleAnswer);
 
     assertEquals(2, dealers.getDealerAnswers().size());
   }
-}
\ No newline at end of file
+
+  @Test
+  public void addVehicle_answerCreatedFromStoredVehicles() throws Exception {
+    final String datasetId = "AAA";
+
+    doReturn(dealersApi).when(dealers).getDealersApi();
+    when(dealersApi.dealersGetDealer(anyString(), anyInt())).thenAnswer(invocation -> {
+      DealersResponse dealersResponse = new DealersResponse();
+      dealersResponse.setDealerId(invocation.getArgument(1));
+      dealersResponse.setName("Dealer " + invocation.getArgument(1));
+      return dealersResponse;
+    });
+    dealers.setDictionary(new StringDictionary());
+
+    dealers.addVehicle(datasetId, vehicleResponse(1, 1989, "Pontiac", "Grand Am", 10));
+    dealers.addVehicle(datasetId, vehicleResponse(2, null, "Ford", null, 20));
+    dealers.addVehicle(datasetId, vehicleResponse(3, 2000, new String("Pontiac"), "Sunbird", 10));
+
+    List<DealerAnswer> dealerAnswers = dealers.getDealerAnswers();
+    assertEquals(2, dealerAnswers.size());
+    DealerAnswer first = (dealerAnswers.get(0).getDealerId() == 10) ? dealerAnswers.get(0) : dealerAnswers.get(1);
+    DealerAnswer second = (first == dealerAnswers.get(0)) ? dealerAnswers.get(1) : dealerAnswers.get(0);
+
+    assertEquals("Dealer 10", first.getName());
+    assertEquals(2, first.getVehicles().size());
+    VehicleAnswer vehicleAnswer = first.getVehicles().get(0);
+    assertEquals(Integer.valueOf(1), vehicleAnswer.getVehicleId());
+    assertEquals(Integer.valueOf(1989), vehicleAnswer.getYear());
+    assertEquals("Pontiac", vehicleAnswer.getMake());
+    assertEquals("Grand Am", vehicleAnswer.getModel());
+    assertEquals(Integer.valueOf(3), first.getVehicles().get(1).getVehicleId());
+    // The make is deduped, so both vehicles refer to the same string
+    assertSame(vehicleAnswer.getMake(), first.getVehicles().get(1).getMake());
+
+    assertEquals(Integer.valueOf(20), second.getDealerId());
+    assertEquals(1, second.getVehicles().size());
+    assertNull(second.getVehicles().get(0).getYear());
+    assertNull(second.getVehicles().get(0).getModel());
+
+    // Written straight from the store, the answer is the same as the one built from the model objects
+    StringWriter json = new StringWriter();
+    dealers.getStoredAnswer().writeTo(new JsonWriter(json));
+    assertEquals(dealerAnswers, new Gson().fromJson(json.toString(), Answer.class).getDealers());
+  }
+
+  @Test
+  public void updateDealerAsync_validResponse() throws Exception {
+    final String datasetId = "AAA";
+    final Integer dealerId = 1;
+    final VehicleAnswer vehicleAnswer = new VehicleAnswer();
+    vehicleAnswer.setVehicleId(1);
+
+    DealersResponse dealersResponse = new DealersResponse();
+    dealersResponse.setDealerId(dealerId);
+    dealersResponse.setName("Joes Car Palace");
+
+    doReturn(dealersApi).when(dealers).getDealersApi();
+    doAnswer(invocation -> {
+      ApiCallback<DealersResponse> callback = invocation.getArgument(3);
+      callback.onSuccess(dealersResponse, 200, Collections.emptyMap());
+      return null;
+    }).when(dealers).startDealerCall(any(), anyString(), anyInt(), any());
+
+    dealers.setFetchMode(FetchMode.ASYNC);
+    dealers.updateDealer(datasetId, dealerId, vehicleAnswer);
+
+    List<DealerAnswer> dealerAnswers = dealers.getDealerAnswers();
+    assertEquals(1, dealerAnswers.size());
+    assertEquals(dealersResponse.getName(), dealerAnswers.get(0).getName());
+    verify(dealersApi, times(0)).dealersGetDealer(anyString(), anyInt());
+  }
+
+  @Test
+  public void updateDealer_doesNotWaitOnDealerLookup() throws Exception {
+    final String datasetId = "AAA";
+    final Integer dealerId = 1;
+    final long latencyMillis = 500L;
+
+    VehicleAnswer vehicleAnswer = new VehicleAnswer();
+    vehicleAnswer.setVehicleId(1);
+
+    DealersResponse dealersResponse = new DealersResponse();
+    dealersResponse.setDealerId(dealerId);
+    dealersResponse.setName("Joes Car Palace");
+
+    doReturn(dealersApi).when(dealers).getDealersApi();
+    when(dealersApi.dealersGetDealer(datasetId, dealerId)).thenAnswer(invocation -> {
+      Thread.sleep(latencyMillis);
+      return dealersResponse;
+    });
+
+    long start = System.nanoTime();
+    dealers.updateDealer(datasetId, dealerId, vehicleAnswer);
+    long updateMillis = (System.nanoTime() - start) / 1_000_000L;
+
+    assertTrue(updateMillis < latencyMillis, "Update waited " + updateMillis + " milliseconds for the dealer");
+    assertEquals(dealersResponse.getName(), dealers.getDealerAnswers().get(0).getName());
+  }
+
+  @Test
+  public void updateDealerConcurrently_lookedUpOnce() throws Exception {
+    final String datasetId = "AAA";
+    final Integer dealerId = 1;
+    final int vehicleCount = 100;
+
+    DealersResponse dealersResponse = new DealersResponse();
+    dealersResponse.setDealerId(dealerId);
+    dealersResponse.setName("Joes Car Palace");
+
+    doReturn(dealersApi).when(dealers).getDealersApi();
+    when(dealersApi.dealersGetDealer(datasetId, dealerId)).thenAnswer(invocation -> {
+      Thread.sleep(50L);
+      return dealersResponse;
+    });
+
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<?>> updates = new ArrayList<>();
+      for (int i = 1; i <= vehicleCount; i++) {
+        VehicleAnswer vehicleAnswer = new VehicleAnswer();
+        vehicleAnswer.setVehicleId(i);
+        updates.add(executor.submit(() -> dealers.updateDealer(datasetId, dealerId, vehicleAnswer)));
+      }
+      for (Future<?> update : updates) {
+        update.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    List<DealerAnswer> dealerAnswers = dealers.getDealerAnswers();
+    assertEquals(1, dealerAnswers.size());
+    assertEquals(dealersResponse.getName(), dealerAnswers.get(0).getName());
+    assertEquals(vehicleCount, dealerAnswers.get(0).getVehicles().size());
+    verify(dealersApi, times(1)).dealersGetDealer(datasetId, dealerId);
+  }
+
+  @Test
+  public void updateDealer_contention() throws Exception {
+    final String datasetId = "AAA";
+    final int threadCount = 8;
+    final int dealerCount = 4;
+    final int updatesPerThread = 500;
+    final int totalUpdates = threadCount * updatesPerThread;
+
+    // Not the spy, so that every thread is not also recording its invocations
+    final Dealers contendedDealers = new Dealers() {
+      @Override
+      protected DealersApi getDealersApi() {
+        return dealersApi;
+      }
+    };
+    when(dealersApi.dealersGetDealer(anyString(), anyInt())).thenAnswer(invocation -> {
+      DealersResponse dealersResponse = new DealersResponse();
+      dealersResponse.setDealerId(invocation.getArgument(1));
+      dealersResponse.setName("Dealer " + invocation.getArgument(1));
+      return dealersResponse;
+    });
+
+    runContended(threadCount, updatesPerThread, index -> {
+      VehicleAnswer vehicleAnswer = new VehicleAnswer();
+      vehicleAnswer.setVehicleId(index);
+      contendedDealers.updateDealer(datasetId, index % dealerCount + 1, vehicleAnswer);
+    });
+
+    List<DealerAnswer> dealerAnswers = contendedDealers.getDealerAnswers();
+    assertEquals(dealerCount, dealerAnswers.size());
+    int vehicleCount = 0;
+    for (DealerAnswer dealerAnswer : dealerAnswers) {
+      assertEquals(totalUpdates / dealerCount, dealerAnswer.getVehicles().size());
+      vehicleCount += dealerAnswer.getVehicles().size();
+    }
+    assertEquals(totalUpdates, vehicleCount);
+    verify(dealersApi, times(dealerCount)).dealersGetDealer(anyString(), anyInt());
+  }
+
+  private static VehicleResponse vehicleResponse(final Integer vehicleId, final Integer year, final String make,
+                                                 final String model, final Integer dealerId) {
+    VehicleResponse vehicleResponse = new VehicleResponse();
+    vehicleResponse.setVehicleId(vehicleId);
+    vehicleResponse.setYear(year);
+    vehicleResponse.setMake(make);
+    vehicleResponse.setModel(model);
+    vehicleResponse.setDealerId(dealerId);
+    return vehicleResponse;
+  }
+
+  /**
+   * Run the update from all of the threads at once
+   */
+  private static void runContended(final int threadCount, final int updatesPerThread, final IntConsumer update) throws Exception {
+    final CountDownLatch start = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+    try {
+      List<Future<?>> workers = new ArrayList<>();
+      for (int t = 0; t < threadCount; t++) {
+        final int first = t * updatesPerThread;
+        workers.add(executor.submit(() -> {
+          start.await();
+          for (int i = 0; i < updatesPerThread; i++) {
+            update.accept(first + i);
+          }
+          return null;
+        }));
+      }
+
+      start.countDown();
+      for (Future<?> worker : workers) {
+        worker.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
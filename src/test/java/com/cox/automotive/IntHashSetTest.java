@@ -0,0 +1,53 @@
+package com.cox.automotive;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test the primitive int set used to drop duplicate ids
+ *
+ * @author jeff.snyder
+ */
+class IntHashSetTest {
+
+  @Test
+  void add_duplicatesIgnored() {
+    IntHashSet set = new IntHashSet();
+
+    assertTrue(set.add(7));
+    assertTrue(set.add(0));
+    assertTrue(set.add(-3));
+    assertFalse(set.add(7));
+    assertFalse(set.add(0));
+    assertFalse(set.add(-3));
+
+    assertEquals(3, set.size());
+    assertTrue(set.contains(0));
+    assertTrue(set.contains(-3));
+    assertFalse(set.contains(8));
+  }
+
+  @Test
+  void add_growsPastExpectedSize() {
+    IntHashSet set = new IntHashSet(4);
+    Set<Integer> expected = new HashSet<>();
+    Random random = new Random(42);
+
+    for (int i = 0; i < 100_000; i++) {
+      int key = random.nextInt(50_000) - 25_000;
+      assertEquals(expected.add(key), set.add(key));
+    }
+
+    assertEquals(expected.size(), set.size());
+    for (int key : expected) {
+      assertTrue(set.contains(key));
+    }
+  }
+}
@@ -0,0 +1,55 @@
+package com.cox.automotive;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test the log-linear histogram of the latencies
+ *
+ * @author jeff.snyder
+ */
+class LatencyHistogramTest {
+
+  @Test
+  void bucketIndex_bucketWithinOneThirtySecondOfValue() {
+    for (long value = 1; value < TimeUnit.MINUTES.toNanos(10); value += 1 + value / 7) {
+      long highest = LatencyHistogram.highestValue(LatencyHistogram.bucketIndex(value));
+      assertTrue(highest >= value, "Bucket below value: " + value);
+      assertTrue(highest - value <= value / 32.0, "Bucket too wide for value: " + value);
+    }
+  }
+
+  @Test
+  void bucketIndex_bucketsFollowEachOther() {
+    for (int index = 1; index < 1000; index++) {
+      assertEquals(index, LatencyHistogram.bucketIndex(LatencyHistogram.highestValue(index - 1) + 1));
+    }
+  }
+
+  @Test
+  void percentileNanos() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int millis = 1; millis <= 100; millis++) {
+      histogram.record(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    assertEquals(100, histogram.getCount());
+    assertEquals(TimeUnit.MILLISECONDS.toNanos(100), histogram.getMaxNanos());
+    assertEquals(50.5, LatencyHistogram.toMillis(Math.round(histogram.getMeanNanos())), 0.001);
+    assertEquals(50.0, LatencyHistogram.toMillis(histogram.percentileNanos(0.50)), 1.5);
+    assertEquals(95.0, LatencyHistogram.toMillis(histogram.percentileNanos(0.95)), 3.0);
+    assertEquals(100.0, LatencyHistogram.toMillis(histogram.percentileNanos(1.0)), 0.001);
+  }
+
+  @Test
+  void percentileNanos_emptyHistogram() {
+    LatencyHistogram histogram = new LatencyHistogram();
+
+    assertEquals(0, histogram.percentileNanos(0.99));
+    assertEquals(0.0, histogram.getMeanNanos());
+  }
+}
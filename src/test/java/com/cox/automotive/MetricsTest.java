@@ -0,0 +1,113 @@
+package com.cox.automotive;
+
+import io.swagger.client.ApiException;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test the metrics of the API calls
+ *
+ * @author jeff.snyder
+ */
+class MetricsTest {
+
+  @Test
+  void call_countsCallsAndErrors() throws Exception {
+    Metrics metrics = new Metrics();
+
+    assertEquals("Grand Am", metrics.call(Metrics.Endpoint.VEHICLE, () -> "Grand Am"));
+    assertThrows(ApiException.class, () -> metrics.call(Metrics.Endpoint.VEHICLE, () -> {
+      throw new ApiException(503, "Service Unavailable");
+    }));
+
+    assertEquals(2, metrics.getCalls(Metrics.Endpoint.VEHICLE));
+    assertEquals(1, metrics.getErrors(Metrics.Endpoint.VEHICLE));
+    assertEquals(0, metrics.getInFlight(Metrics.Endpoint.VEHICLE));
+    assertEquals(0, metrics.getCalls(Metrics.Endpoint.DEALER));
+  }
+
+  @Test
+  void callAsync_inFlightUntilComplete() {
+    Metrics metrics = new Metrics();
+    CompletableFuture<String> response = new CompletableFuture<>();
+
+    metrics.callAsync(Metrics.Endpoint.DEALER, () -> response);
+    assertEquals(1, metrics.getInFlight(Metrics.Endpoint.DEALER));
+    assertEquals(0, metrics.getCalls(Metrics.Endpoint.DEALER));
+
+    response.complete("Joes Car Palace");
+    assertEquals(0, metrics.getInFlight(Metrics.Endpoint.DEALER));
+    assertEquals(1, metrics.getCalls(Metrics.Endpoint.DEALER));
+    assertEquals(0, metrics.getErrors(Metrics.Endpoint.DEALER));
+  }
+
+  @Test
+  void getRetries_requestsBeyondOnePerCall() throws Exception {
+    Metrics metrics = new Metrics();
+
+    metrics.call(Metrics.Endpoint.VEHICLE, () -> {
+      metrics.request(Metrics.Endpoint.VEHICLE, 1_000_000L, 0, -1, true);
+      metrics.request(Metrics.Endpoint.VEHICLE, 2_000_000L, 0, 52, false);
+      return "Grand Am";
+    });
+
+    assertEquals(2, metrics.getRequests(Metrics.Endpoint.VEHICLE));
+    assertEquals(1, metrics.getRetries(Metrics.Endpoint.VEHICLE));
+    assertEquals(52, metrics.getBytesReceived(Metrics.Endpoint.VEHICLE));
+  }
+
+  @Test
+  void getRequestLatencies_apartFromTheCallLatency() throws Exception {
+    Metrics metrics = new Metrics();
+
+    metrics.call(Metrics.Endpoint.VEHICLE, () -> {
+      metrics.request(Metrics.Endpoint.VEHICLE, 1_000_000L, 0, -1, true);
+      long backoffEnd = System.nanoTime() + 50_000_000L;
+      while (System.nanoTime() < backoffEnd) {
+        LockSupport.parkNanos(backoffEnd - System.nanoTime());
+      }
+      metrics.request(Metrics.Endpoint.VEHICLE, 2_000_000L, 0, 52, false);
+      return "Grand Am";
+    });
+
+    LatencyHistogram calls = metrics.getCallLatencies(Metrics.Endpoint.VEHICLE);
+    LatencyHistogram requests = metrics.getRequestLatencies(Metrics.Endpoint.VEHICLE);
+    assertEquals(1, calls.getCount());
+    assertTrue(calls.getMaxNanos() >= 50_000_000L, "Call took " + calls);
+    // Only the request with a response is timed, and the backoff between the attempts is not in it
+    assertEquals(1, requests.getCount());
+    assertTrue(requests.getMaxNanos() < 3_000_000L, "Request took " + requests);
+    assertEquals(1, metrics.getRequestErrors(Metrics.Endpoint.VEHICLE));
+  }
+
+  @Test
+  void forPath() {
+    assertEquals(Metrics.Endpoint.DATASET_ID, Metrics.Endpoint.forPath("/api/datasetId"));
+    assertEquals(Metrics.Endpoint.VEHICLE_IDS, Metrics.Endpoint.forPath("/api/AAA/vehicles"));
+    assertEquals(Metrics.Endpoint.VEHICLE, Metrics.Endpoint.forPath("/api/AAA/vehicles/1"));
+    assertEquals(Metrics.Endpoint.DEALER, Metrics.Endpoint.forPath("/api/AAA/dealers/1"));
+    assertEquals(Metrics.Endpoint.ANSWER, Metrics.Endpoint.forPath("/api/AAA/answer"));
+    assertNull(Metrics.Endpoint.forPath("/swagger/docs/v1"));
+  }
+
+  @Test
+  void toJson_everyEndpoint() throws Exception {
+    Metrics metrics = new Metrics();
+    metrics.call(Metrics.Endpoint.DATASET_ID, () -> "AAA");
+
+    String json = metrics.toJson();
+    for (Metrics.Endpoint endpoint : Metrics.Endpoint.values()) {
+      assertTrue(json.contains("\"" + endpoint.getLabel() + "\""), json);
+    }
+    assertTrue(json.contains("\"callLatencyMillis\""), json);
+    assertTrue(json.contains("\"requestLatencyMillis\""), json);
+    assertTrue(json.contains("\"p99\""), json);
+  }
+}
@@ -0,0 +1,142 @@
+package com.cox.automotive;
+
+import io.swagger.client.model.DealersResponse;
+import io.swagger.client.model.VehicleResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Test the on-disk cache of the vehicle and dealer responses
+ *
+ * @author jeff.snyder
+ */
+class ResponseCacheTest {
+
+  private Path file;
+
+  @BeforeEach
+  void createFile() throws Exception {
+    file = Files.createTempFile("responses", ".cache");
+    Files.delete(file);
+  }
+
+  @AfterEach
+  void deleteFile() throws Exception {
+    Files.deleteIfExists(file);
+  }
+
+  @Test
+  void putVehicle_readBackWithNulls() {
+    try (ResponseCache cache = ResponseCache.open(file)) {
+      cache.putVehicle("ds1", vehicleResponse(1, null, "Pontiac", null, 7));
+
+      VehicleResponse vehicleResponse = cache.getVehicle("ds1", 1);
+
+      assertEquals(Integer.valueOf(1), vehicleResponse.getVehicleId());
+      assertNull(vehicleResponse.getYear());
+      assertEquals("Pontiac", vehicleResponse.getMake());
+      assertNull(vehicleResponse.getModel());
+      assertEquals(Integer.valueOf(7), vehicleResponse.getDealerId());
+      assertNull(cache.getVehicle("ds2", 1));
+      assertNull(cache.getDealer("ds1", 1));
+      assertEquals(1, cache.getHits());
+      assertEquals(2, cache.getMisses());
+    }
+  }
+
+  @Test
+  void open_indexesRecordsOfEarlierRun() {
+    try (ResponseCache cache = ResponseCache.open(file)) {
+      cache.putVehicle("ds1", vehicleResponse(1, 2008, "Ford", "F150", 7));
+      cache.putVehicle("ds1", vehicleResponse(2, 2011, "Honda", "Civic", 7));
+      cache.putDealer("ds1", dealersResponse(7, "Bob's Cars"));
+    }
+
+    try (ResponseCache cache = ResponseCache.open(file)) {
+      assertEquals("Civic", cache.getVehicle("ds1", 2).getModel());
+      assertEquals("Bob's Cars", cache.getDealer("ds1", 7).getName());
+      assertEquals(2, cache.getVehicleCount("ds1"));
+      assertEquals(1, cache.getDealers("ds1").size());
+    }
+  }
+
+  @Test
+  void open_tornRecordDroppedAndOverwritten() throws Exception {
+    int tornOffset;
+    try (ResponseCache cache = ResponseCache.open(file)) {
+      cache.putVehicle("ds1", vehicleResponse(1, 2008, "Ford", "F150", 7));
+      tornOffset = cache.getSize();
+      cache.putVehicle("ds1", vehicleResponse(2, 2011, "Honda", "Civic", 7));
+    }
+
+    // Damage the payload of the last record, as a write cut short by a power loss would
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.wrap(new byte[] {(byte) 0xFF, (byte) 0xFF}), tornOffset + 12);
+    }
+
+    try (ResponseCache cache = ResponseCache.open(file)) {
+      assertNotNull(cache.getVehicle("ds1", 1));
+      assertNull(cache.getVehicle("ds1", 2));
+      assertEquals(tornOffset, cache.getSize());
+
+      cache.putDealer("ds1", dealersResponse(7, "Bob's Cars"));
+    }
+
+    try (ResponseCache cache = ResponseCache.open(file)) {
+      assertNotNull(cache.getVehicle("ds1", 1));
+      assertEquals("Bob's Cars", cache.getDealer("ds1", 7).getName());
+    }
+  }
+
+  @Test
+  void open_notACache() throws Exception {
+    Files.write(file, "not a cache".getBytes("UTF-8"));
+
+    assertThrows(RuntimeException.class, () -> ResponseCache.open(file));
+  }
+
+  @Test
+  void putVehicle_growsPastInitialMapping() {
+    String make = new String(new char[1000]).replace('\0', 'm');
+    try (ResponseCache cache = ResponseCache.open(file)) {
+      for (int i = 0; i < 2000; i++) {
+        cache.putVehicle("ds1", vehicleResponse(i, 2000, make, "Model " + i, i % 10));
+      }
+    }
+
+    try (ResponseCache cache = ResponseCache.open(file)) {
+      assertEquals(2000, cache.getVehicleCount("ds1"));
+      assertEquals("Model 1999", cache.getVehicle("ds1", 1999).getModel());
+    }
+  }
+
+  private static VehicleResponse vehicleResponse(final int vehicleId, final Integer year, final String make,
+                                                 final String model, final Integer dealerId) {
+    VehicleResponse vehicleResponse = new VehicleResponse();
+    vehicleResponse.setVehicleId(vehicleId);
+    vehicleResponse.setYear(year);
+    vehicleResponse.setMake(make);
+    vehicleResponse.setModel(model);
+    vehicleResponse.setDealerId(dealerId);
+    return vehicleResponse;
+  }
+
+  private static DealersResponse dealersResponse(final int dealerId, final String name) {
+    DealersResponse dealersResponse = new DealersResponse();
+    dealersResponse.setDealerId(dealerId);
+    dealersResponse.setName(name);
+    return dealersResponse;
+  }
+}
@@ -0,0 +1,126 @@
+package com.cox.automotive;
+
+import io.swagger.client.ApiException;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test the retries, hedges and deadlines of the API calls
+ *
+ * @author jeff.snyder
+ */
+class RetryPolicyTest {
+
+  @Test
+  void call_retriesTransientFailures() throws Exception {
+    RetryPolicy retryPolicy = new RetryPolicy(3, false, 1L, 5L);
+    AtomicInteger attempts = new AtomicInteger();
+
+    String response = retryPolicy.call(() -> {
+      if (attempts.incrementAndGet() < 3) {
+        throw new ApiException(new IOException("Connection reset"));
+      }
+      return "done";
+    }, Deadline.none());
+
+    assertEquals("done", response);
+    assertEquals(3, attempts.get());
+    assertEquals(2, retryPolicy.getRetries());
+  }
+
+  @Test
+  void call_doesNotRetryOtherFailures() throws Exception {
+    RetryPolicy retryPolicy = new RetryPolicy(3, false, 1L, 5L);
+    AtomicInteger attempts = new AtomicInteger();
+
+    assertThrows(ApiException.class, () -> retryPolicy.call(() -> {
+      attempts.incrementAndGet();
+      throw new ApiException(404, "Not found");
+    }, Deadline.none()));
+
+    assertEquals(1, attempts.get());
+  }
+
+  @Test
+  void call_givesUpAfterMaxAttempts() throws Exception {
+    RetryPolicy retryPolicy = new RetryPolicy(2, false, 1L, 5L);
+    AtomicInteger attempts = new AtomicInteger();
+
+    assertThrows(ApiException.class, () -> retryPolicy.call(() -> {
+      attempts.incrementAndGet();
+      throw new ApiException(503, "Service unavailable");
+    }, Deadline.none()));
+
+    assertEquals(2, attempts.get());
+  }
+
+  @Test
+  void call_stopsAtTheDeadline() throws Exception {
+    RetryPolicy retryPolicy = new RetryPolicy(1000, false, 20L, 20L);
+    Deadline deadline = Deadline.after(100L, TimeUnit.MILLISECONDS);
+
+    long start = System.nanoTime();
+    assertThrows(RuntimeException.class, () -> retryPolicy.call(() -> {
+      throw new ApiException(503, "Service unavailable");
+    }, deadline));
+
+    assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000L);
+  }
+
+  @Test
+  void call_hedgesSlowCallsWithOneResult() throws Exception {
+    RetryPolicy retryPolicy = new RetryPolicy(1, true);
+
+    // Teach the policy that calls normally take about a millisecond
+    for (int i = 0; i < 100; i++) {
+      retryPolicy.call(() -> {
+        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        return 0;
+      }, Deadline.none());
+    }
+
+    // The first request stalls, so the hedge answers
+    AtomicInteger requests = new AtomicInteger();
+    long hedgesBefore = retryPolicy.getHedges();
+    long start = System.nanoTime();
+    int response = retryPolicy.call(() -> {
+      int request = requests.incrementAndGet();
+      if (request == 1) {
+        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(2000));
+      }
+      return request;
+    }, Deadline.none());
+
+    assertEquals(2, response);
+    assertEquals(hedgesBefore + 1, retryPolicy.getHedges());
+    assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000L);
+  }
+
+  @Test
+  void callAsync_retriesTransientFailures() throws Exception {
+    RetryPolicy retryPolicy = new RetryPolicy(3, false, 1L, 5L);
+    AtomicInteger attempts = new AtomicInteger();
+
+    CompletableFuture<String> response = retryPolicy.callAsync(() -> {
+      CompletableFuture<String> attempt = new CompletableFuture<>();
+      if (attempts.incrementAndGet() < 2) {
+        attempt.completeExceptionally(new RuntimeException("Unable to retrieve", new ApiException(500, "Server error")));
+      } else {
+        attempt.complete("done");
+      }
+      return attempt;
+    }, Deadline.none());
+
+    assertEquals("done", response.get(5L, TimeUnit.SECONDS));
+    assertEquals(2, attempts.get());
+  }
+}
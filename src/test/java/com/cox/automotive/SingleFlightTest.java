@@ -0,0 +1,150 @@
+package com.cox.automotive;
+
+import io.swagger.client.ApiException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test the coalescing of identical calls
+ *
+ * @author jeff.snyder
+ */
+class SingleFlightTest {
+
+  private static final SingleFlight.Key KEY = new SingleFlight.Key("vehicles", "AAA", 1);
+
+  @Test
+  void call_concurrentCallersShareOneCall() throws Exception {
+    final SingleFlight<SingleFlight.Key, String> singleFlight = new SingleFlight<>();
+    final CountDownLatch release = new CountDownLatch(1);
+    final AtomicInteger executions = new AtomicInteger();
+    final int callerCount = 8;
+
+    ExecutorService executor = Executors.newFixedThreadPool(callerCount);
+    try {
+      List<Future<String>> callers = new ArrayList<>();
+      for (int i = 0; i < callerCount; i++) {
+        callers.add(executor.submit(() -> singleFlight.call(KEY, () -> {
+          executions.incrementAndGet();
+          await(release);
+          return "Grand Am";
+        }, Deadline.none())));
+      }
+
+      // Every caller is waiting on the one call before it is allowed to complete
+      while (singleFlight.getCalls() + singleFlight.getSharedCalls() < callerCount) {
+        Thread.sleep(1);
+      }
+      release.countDown();
+
+      for (Future<String> caller : callers) {
+        assertEquals("Grand Am", caller.get(5, TimeUnit.SECONDS));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertEquals(1, executions.get());
+    assertEquals(1, singleFlight.getCalls());
+    assertEquals(callerCount - 1, singleFlight.getSharedCalls());
+    assertEquals(0, singleFlight.getInFlight());
+  }
+
+  @Test
+  void call_failureSharedAsApiException() throws Exception {
+    final SingleFlight<SingleFlight.Key, String> singleFlight = new SingleFlight<>();
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final ApiException failure = new ApiException(503, "Service Unavailable");
+
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<String> leader = executor.submit(() -> singleFlight.call(KEY, () -> {
+        started.countDown();
+        await(release);
+        throw failure;
+      }, Deadline.none()));
+      started.await();
+
+      CompletableFuture<String> follower = CompletableFuture.supplyAsync(() -> {
+        try {
+          return singleFlight.call(KEY, () -> "not called", Deadline.none());
+        } catch (ApiException e) {
+          throw new RuntimeException(e);
+        }
+      });
+      while (singleFlight.getSharedCalls() < 1) {
+        Thread.sleep(1);
+      }
+      release.countDown();
+
+      ExecutionException leaderFailure = assertThrows(ExecutionException.class, () -> leader.get(5, TimeUnit.SECONDS));
+      assertSame(failure, leaderFailure.getCause());
+      ExecutionException followerFailure = assertThrows(ExecutionException.class, () -> follower.get(5, TimeUnit.SECONDS));
+      assertSame(failure, followerFailure.getCause().getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  void call_nextCallAfterCompletionMadeAgain() throws Exception {
+    SingleFlight<SingleFlight.Key, String> singleFlight = new SingleFlight<>();
+
+    singleFlight.call(KEY, () -> "Grand Am", Deadline.none());
+    singleFlight.call(KEY, () -> "Grand Am", Deadline.none());
+    singleFlight.call(new SingleFlight.Key("dealers", "AAA", 1), () -> "Joes Car Palace", Deadline.none());
+
+    assertEquals(3, singleFlight.getCalls());
+    assertEquals(0, singleFlight.getSharedCalls());
+  }
+
+  @Test
+  void callAsync_concurrentCallersShareOneCall() throws Exception {
+    SingleFlight<SingleFlight.Key, String> singleFlight = new SingleFlight<>();
+    CompletableFuture<String> response = new CompletableFuture<>();
+    AtomicInteger executions = new AtomicInteger();
+
+    CompletableFuture<String> first = singleFlight.callAsync(KEY, () -> {
+      executions.incrementAndGet();
+      return response;
+    });
+    CompletableFuture<String> second = singleFlight.callAsync(KEY, () -> {
+      executions.incrementAndGet();
+      return response;
+    });
+
+    // Cancelling one caller's future leaves the other's alone
+    first.cancel(false);
+    response.complete("Grand Am");
+
+    assertEquals("Grand Am", second.get(5, TimeUnit.SECONDS));
+    assertTrue(first.isCancelled());
+    assertEquals(1, executions.get());
+    assertEquals(0, singleFlight.getInFlight());
+  }
+
+  private static void await(final CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    }
+  }
+}
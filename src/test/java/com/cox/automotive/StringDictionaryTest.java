@@ -0,0 +1,53 @@
+package com.cox.automotive;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Test the deduping of the makes and models
+ *
+ * @author jeff.snyder
+ */
+class StringDictionaryTest {
+
+  @Test
+  void intern_equalStringsShareOneInstance() {
+    StringDictionary dictionary = new StringDictionary();
+
+    String first = dictionary.intern(new String("Pontiac"));
+    String second = dictionary.intern(new String("Pontiac"));
+    String third = dictionary.intern(new String("Pontiac"));
+
+    assertSame(first, second);
+    assertSame(first, third);
+    assertEquals(1, dictionary.size());
+    assertEquals(2, dictionary.getHits());
+    assertEquals(1, dictionary.getMisses());
+    assertEquals(2.0 / 3.0, dictionary.getHitRate(), 0.0001);
+  }
+
+  @Test
+  void intern_nullNotCounted() {
+    StringDictionary dictionary = new StringDictionary();
+
+    assertNull(dictionary.intern(null));
+    assertEquals(0, dictionary.size());
+    assertEquals(0.0, dictionary.getHitRate());
+  }
+
+  @Test
+  void intern_stopsGrowingAtMaxSize() {
+    StringDictionary dictionary = new StringDictionary(2);
+    dictionary.intern("Ford");
+    dictionary.intern("Pontiac");
+
+    String model = new String("Grand Am");
+    assertSame(model, dictionary.intern(model));
+    assertNotSame(model, dictionary.intern(new String("Grand Am")));
+    assertEquals(2, dictionary.size());
+  }
+}
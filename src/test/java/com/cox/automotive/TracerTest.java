@@ -0,0 +1,166 @@
+package com.cox.automotive;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test the spans, the critical path and the Chrome trace of the tracer
+ *
+ * @author jeff.snyder
+ */
+class TracerTest {
+
+  private static final long MS = 1_000_000L;
+
+  @Test
+  void disabled_recordsNothing() {
+    Tracer tracer = new Tracer(10);
+
+    long begin = tracer.begin();
+    tracer.end(Tracer.Category.PHASE, Tracer.DATASET_PHASE, "A", begin);
+
+    assertEquals(0L, begin);
+    assertEquals(0, tracer.getSpanCount());
+  }
+
+  @Test
+  void enabled_recordsSpansButNotShortWaits() {
+    Tracer tracer = new Tracer(10);
+    tracer.setEnabled(true);
+
+    long begin = tracer.begin();
+    tracer.end(Tracer.Category.PHASE, Tracer.DATASET_PHASE, "A", begin);
+    tracer.end(Tracer.Category.WAIT, "limiter", null, System.nanoTime());
+
+    assertNotEquals(0L, begin);
+    assertEquals(1, tracer.getSpanCount());
+  }
+
+  @Test
+  void record_dropsSpansBeyondTheMaximum() {
+    Tracer tracer = new Tracer(2);
+
+    for (int i = 0; i < 3; i++) {
+      tracer.record(Tracer.Category.API, "vehicle", "A", i, 200, 1L, "main", i * MS, (i + 1) * MS);
+    }
+
+    assertEquals(2, tracer.getSpanCount());
+    assertEquals(1, tracer.getDroppedSpans());
+  }
+
+  @Test
+  void getCriticalPath_followsTheCallsTheEndWaitedOn() {
+    Tracer tracer = createTrace();
+
+    Tracer.CriticalPath criticalPath = tracer.getCriticalPath("A");
+
+    List<String> segments = new ArrayList<>();
+    long total = 0L;
+    for (Tracer.Segment segment : criticalPath.getSegments()) {
+      segments.add(segment.getCategory().getLabel() + " " + segment.getName()
+        + ((segment.getId() >= 0) ? " " + segment.getId() : ""));
+      total += segment.getDurationNanos();
+    }
+    assertEquals(Arrays.asList(
+      "phase vehicle ids",
+      "api vehicleIds",
+      "wait limiter",
+      "api vehicle 1",
+      "phase vehicles and dealers",
+      "api dealer 7",
+      "wait dealer lookups",
+      "api answer",
+      "phase submit answer"), segments);
+    // The segments cover the whole dataset
+    assertEquals(100 * MS, total);
+    assertEquals(100 * MS, criticalPath.getDurationNanos());
+    assertTrue(criticalPath.toString().startsWith("100ms = api dealer 34ms, api vehicle 28ms"),
+      criticalPath.toString());
+  }
+
+  @Test
+  void getCriticalPath_untracedDataset() {
+    assertNull(createTrace().getCriticalPath("C"));
+  }
+
+  @Test
+  void writeTo_chromeTraceWithCriticalPathTrack() throws Exception {
+    Tracer tracer = createTrace();
+
+    StringWriter out = new StringWriter();
+    tracer.writeTo(out);
+    JsonArray events = new Gson().fromJson(out.toString(), JsonObject.class).getAsJsonArray("traceEvents");
+
+    JsonObject dealer = null;
+    int criticalSegments = 0;
+    List<String> threadNames = new ArrayList<>();
+    for (JsonElement element : events) {
+      JsonObject event = element.getAsJsonObject();
+      String phase = event.get("ph").getAsString();
+      if ("M".equals(phase) && "thread_name".equals(event.get("name").getAsString())) {
+        threadNames.add(event.getAsJsonObject("args").get("name").getAsString());
+      } else if ("X".equals(phase) && (event.get("pid").getAsInt() == 2)) {
+        criticalSegments++;
+      } else if ("X".equals(phase) && "dealer".equals(event.get("name").getAsString())) {
+        dealer = event;
+      }
+    }
+    assertEquals(Arrays.asList("dataset-1", "fetch-1-1", "fetch-1-2", "dataset-2", "dealer-lookup-1", "A", "B"),
+      threadNames);
+    // 9 for A, and for B its vehicle call and the time before it
+    assertEquals(11, criticalSegments);
+    assertEquals("api", dealer.get("cat").getAsString());
+    assertEquals(1, dealer.get("pid").getAsInt());
+    assertEquals(4, dealer.get("tid").getAsLong());
+    assertEquals(34_000.0, dealer.get("dur").getAsDouble(), 0.001);
+    assertEquals("A", dealer.getAsJsonObject("args").get("dataset").getAsString());
+    assertEquals(7, dealer.getAsJsonObject("args").get("id").getAsInt());
+    assertEquals(200, dealer.getAsJsonObject("args").get("status").getAsInt());
+  }
+
+  /**
+   * Dataset A, processed on thread 1 from 0 to 100ms, with its calls on other threads, and dataset B alongside it
+   */
+  private static Tracer createTrace() {
+    Tracer tracer = new Tracer(100);
+    span(tracer, Tracer.Category.PHASE, Tracer.DATASET_PHASE, "A", -1, 1, 0, 100);
+    span(tracer, Tracer.Category.PHASE, "vehicle ids", "A", -1, 1, 0, 10);
+    span(tracer, Tracer.Category.API, "vehicleIds", "A", -1, 1, 1, 9);
+    span(tracer, Tracer.Category.PHASE, "vehicles and dealers", "A", -1, 1, 10, 80);
+    span(tracer, Tracer.Category.WAIT, "limiter", null, -1, 3, 10, 12);
+    // A wait of another thread, which did not hold up the vehicle
+    span(tracer, Tracer.Category.WAIT, "limiter", null, -1, 2, 8, 12);
+    span(tracer, Tracer.Category.API, "vehicle", "A", 1, 3, 12, 40);
+    span(tracer, Tracer.Category.API, "vehicle", "A", 2, 2, 15, 70);
+    span(tracer, Tracer.Category.API, "dealer", "A", 7, 4, 41, 75);
+    span(tracer, Tracer.Category.API, "vehicle", "A", 3, 3, 45, 60);
+    span(tracer, Tracer.Category.WAIT, "dealer lookups", null, -1, 1, 66, 79);
+    span(tracer, Tracer.Category.PHASE, "submit answer", "A", -1, 1, 80, 100);
+    span(tracer, Tracer.Category.API, "answer", "A", -1, 1, 81, 98);
+    span(tracer, Tracer.Category.PHASE, Tracer.DATASET_PHASE, "B", -1, 5, 20, 99);
+    span(tracer, Tracer.Category.API, "vehicle", "B", 1, 5, 50, 99);
+    return tracer;
+  }
+
+  private static void span(final Tracer tracer, final Tracer.Category category, final String name,
+                           final String datasetId, final int id, final long threadId, final long beginMillis,
+                           final long endMillis) {
+    String threadName = (threadId == 1) ? "dataset-1" : (threadId == 4) ? "dealer-lookup-1"
+      : (threadId == 5) ? "dataset-2" : "fetch-1-" + (threadId - 1);
+    tracer.record(category, name, datasetId, id, (category == Tracer.Category.API) ? 200 : 0, threadId, threadName,
+      beginMillis * MS, endMillis * MS);
+  }
+}
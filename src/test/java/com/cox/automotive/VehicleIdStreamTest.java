@@ -0,0 +1,116 @@
+package com.cox.automotive;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test reading the vehicle ids as they arrive
+ *
+ * @author jeff.snyder
+ */
+class VehicleIdStreamTest {
+
+  @Test
+  void iterator_removesDuplicatesAndNulls() {
+    VehicleIdStream vehicleIds = stream("{\"vehicleIds\":[1,2,null,2,3,1,4]}");
+
+    assertEquals(Arrays.asList(1, 2, 3, 4), read(vehicleIds));
+    assertEquals(4, vehicleIds.getCount());
+  }
+
+  @Test
+  void iterator_otherFieldsSkipped() {
+    VehicleIdStream vehicleIds = stream("{\"extra\":{\"vehicleIds\":[9]},\"vehicleIds\":[5,6],\"more\":[7]}");
+
+    assertEquals(Arrays.asList(5, 6), read(vehicleIds));
+  }
+
+  @Test
+  void iterator_missingOrNullListIsEmpty() {
+    assertEquals(Collections.emptyList(), read(stream("{}")));
+    assertEquals(Collections.emptyList(), read(stream("{\"vehicleIds\":null}")));
+    assertEquals(Collections.emptyList(), read(stream("{\"vehicleIds\":[]}")));
+  }
+
+  @Test
+  void iterator_readsOnlyWhatIsAskedFor() {
+    // The end of the response is malformed, but nothing fails until it is reached
+    VehicleIdStream vehicleIds = stream("{\"vehicleIds\":[1,2,");
+    Iterator<Integer> iterator = vehicleIds.iterator();
+
+    assertEquals(1, (int) iterator.next());
+    assertEquals(2, (int) iterator.next());
+    assertThrows(RuntimeException.class, iterator::hasNext);
+  }
+
+  @Test
+  void iterator_invalidResponse() {
+    assertThrows(RuntimeException.class, () -> read(stream("[1,2,3]")));
+    assertThrows(RuntimeException.class, () -> read(stream("{\"vehicleIds\":[\"A\"]}")));
+  }
+
+  @Test
+  void iterator_onlyOnce() {
+    VehicleIdStream vehicleIds = stream("{\"vehicleIds\":[1]}");
+    read(vehicleIds);
+
+    assertThrows(IllegalStateException.class, vehicleIds::iterator);
+  }
+
+  @Test
+  void iterator_deadlineCheckedWhileReading() {
+    VehicleIdStream expired = new VehicleIdStream("AAA", new StringReader("{\"vehicleIds\":[1,2]}"),
+      Deadline.after(0L, TimeUnit.MILLISECONDS));
+    VehicleIdStream open = new VehicleIdStream("AAA", new StringReader("{\"vehicleIds\":[1,2]}"),
+      Deadline.after(1L, TimeUnit.HOURS));
+
+    assertThrows(RuntimeException.class, () -> read(expired));
+    assertEquals(Arrays.asList(1, 2), read(open));
+  }
+
+  @Test
+  void fetchEngine_failureWhileReadingWaitsForStartedFetches() {
+    VehicleIdStream vehicleIds = stream("{\"vehicleIds\":[1,2,x");
+    List<Integer> fetched = Collections.synchronizedList(new ArrayList<>());
+
+    try (FetchEngine fetchEngine = new FetchEngine(4)) {
+      assertThrows(RuntimeException.class, () -> fetchEngine.forEach(vehicleIds, vehicleId -> {
+        try {
+          Thread.sleep(50L);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        fetched.add(vehicleId);
+      }));
+    }
+
+    assertEquals(2, fetched.size());
+    assertFalse(fetched.contains(null));
+    assertTrue(fetched.containsAll(Arrays.asList(1, 2)));
+  }
+
+  private static VehicleIdStream stream(final String json) {
+    return new VehicleIdStream("AAA", new StringReader(json));
+  }
+
+  private static List<Integer> read(final VehicleIdStream vehicleIds) {
+    List<Integer> ids = new ArrayList<>();
+    for (Integer vehicleId : vehicleIds) {
+      ids.add(vehicleId);
+    }
+    vehicleIds.close();
+    return ids;
+  }
+}
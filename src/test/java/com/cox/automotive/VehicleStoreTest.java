@@ -0,0 +1,74 @@
+package com.cox.automotive;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test the columnar store of the vehicles
+ *
+ * @author jeff.snyder
+ */
+class VehicleStoreTest {
+
+  @Test
+  void add_nullsKept() {
+    VehicleStore vehicleStore = new VehicleStore();
+
+    int row = vehicleStore.add(1, VehicleStore.toInt(null), "Pontiac", null, 7);
+
+    assertEquals(1, vehicleStore.size());
+    assertEquals(1, vehicleStore.getVehicleId(row));
+    assertNull(VehicleStore.toInteger(vehicleStore.getYear(row)));
+    assertEquals("Pontiac", vehicleStore.getMake(row));
+    assertNull(vehicleStore.getModel(row));
+    assertEquals(7, vehicleStore.getDealerId(row));
+  }
+
+  @Test
+  void add_concurrentlyAcrossChunks() throws Exception {
+    final VehicleStore vehicleStore = new VehicleStore();
+    final int threadCount = 16;
+    final int addsPerThread = 20_000;
+
+    ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+    try {
+      List<Future<?>> workers = new ArrayList<>();
+      for (int t = 0; t < threadCount; t++) {
+        final int first = t * addsPerThread;
+        workers.add(executor.submit(() -> {
+          for (int i = first; i < first + addsPerThread; i++) {
+            vehicleStore.add(i, 2000 + (i % 20), "Make", "Model", i % 10);
+          }
+        }));
+      }
+      for (Future<?> worker : workers) {
+        worker.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    // Every vehicle is in exactly one row, with its own columns
+    int vehicleCount = threadCount * addsPerThread;
+    assertEquals(vehicleCount, vehicleStore.size());
+    boolean[] seen = new boolean[vehicleCount];
+    for (int row = 0; row < vehicleCount; row++) {
+      int vehicleId = vehicleStore.getVehicleId(row);
+      seen[vehicleId] = true;
+      assertEquals(2000 + (vehicleId % 20), vehicleStore.getYear(row));
+      assertEquals(vehicleId % 10, vehicleStore.getDealerId(row));
+    }
+    for (boolean vehicleSeen : seen) {
+      assertTrue(vehicleSeen);
+    }
+  }
+}
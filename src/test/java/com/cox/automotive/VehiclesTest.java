@@ -1,8 +1,14 @@
 package com.cox.automotive;
 
+import com.squareup.okhttp.OkHttpClient;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.swagger.client.ApiCallback;
 import io.swagger.client.ApiException;
+import io.swagger.client.api.DealersApi;
 import io.swagger.client.api.VehiclesApi;
-import io.swagger.client.model.VehicleAnswer;
+import io.swagger.client.model.DealerAnswer;
+import io.swagger.client.model.DealersResponse;
 import io.swagger.client.model.VehicleIdsResponse;
 import io.swagger.client.model.VehicleResponse;
 import org.junit.jupiter.api.BeforeEach;
@@ -12,16 +18,40 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.mockito.Spy;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -40,6 +70,9 @@ class VehiclesTest {
   @Mock
   private Dealers dealers;
 
+  @Mock
+  private ResponseCache responseCache;
+
   @BeforeEach
   public void init() {
     MockitoAnnotations.initMocks(this);
@@ -195,17 +228,449 @@ class VehiclesTest {
 
     when(vehiclesApi.vehiclesGetVehicle(datasetId, vehicleId)).thenReturn(vehicleResponse);
 
-    ArgumentCaptor<VehicleAnswer> vehicleAnswerArgumentCaptor = ArgumentCaptor.forClass(VehicleAnswer.class);
-    doNothing().when(dealers).updateDealer(anyString(), anyInt(), vehicleAnswerArgumentCaptor.capture());
+    ArgumentCaptor<VehicleResponse> vehicleResponseArgumentCaptor = ArgumentCaptor.forClass(VehicleResponse.class);
+    doNothing().when(dealers).addVehicle(anyString(), vehicleResponseArgumentCaptor.capture());
+
+    vehicles.getDealersWithTheirVehicles(datasetId, vehicleIds);
+
+    // The response is handed to the dealers as is, the answer is only created from it when the dealers are answered
+    List<VehicleResponse> added = vehicleResponseArgumentCaptor.getAllValues();
+    assertEquals(1, added.size());
+    assertSame(vehicleResponse, added.get(0));
+  }
+
+  @Test
+  void getDealersWithTheirVehicles_cachedResponseNotRequested() throws Exception {
+    final String datasetId = "AAA";
+    List<Integer> vehicleIds = Arrays.asList(1, 2);
+
+    VehicleResponse cachedResponse = new VehicleResponse();
+    cachedResponse.setVehicleId(1);
+    cachedResponse.setDealerId(2);
+
+    VehicleResponse vehicleResponse = new VehicleResponse();
+    vehicleResponse.setVehicleId(2);
+    vehicleResponse.setDealerId(2);
+
+    doReturn(vehiclesApi).when(vehicles).getVehiclesApi();
+    doReturn(dealers).when(vehicles).getDealers();
+    when(responseCache.getVehicle(datasetId, 1)).thenReturn(cachedResponse);
+    when(vehiclesApi.vehiclesGetVehicle(datasetId, 2)).thenReturn(vehicleResponse);
+    vehicles.setResponseCache(responseCache);
+
+    vehicles.getDealersWithTheirVehicles(datasetId, vehicleIds);
+
+    // Only the vehicle missing from the cache is requested (so a resumed dataset just fetches its tail), and its
+    // response is cached
+    verify(vehiclesApi, never()).vehiclesGetVehicle(datasetId, 1);
+    verify(responseCache).putVehicle(datasetId, vehicleResponse);
+    verify(dealers).addVehicle(datasetId, cachedResponse);
+    verify(dealers).addVehicle(datasetId, vehicleResponse);
+    assertEquals(1, vehicles.getRestoredVehicleCount());
+  }
+
+  @Test
+  void getDealersWithTheirVehicles_concurrentCalls() throws Exception {
+    final String datasetId = "AAA";
+    final int concurrency = 4;
+    final int vehicleCount = 3 * concurrency;
+    final long latencyMillis = 200L;
+
+    List<Integer> vehicleIds = new ArrayList<>();
+    for (int i = 1; i <= vehicleCount; i++) {
+      vehicleIds.add(i);
+    }
+
+    final AtomicInteger inFlight = new AtomicInteger();
+    final AtomicInteger maxInFlight = new AtomicInteger();
+
+    doReturn(vehiclesApi).when(vehicles).getVehiclesApi();
+    doReturn(dealers).when(vehicles).getDealers();
+    when(vehiclesApi.vehiclesGetVehicle(anyString(), anyInt())).thenAnswer(invocation -> {
+      int current = inFlight.incrementAndGet();
+      maxInFlight.accumulateAndGet(current, Math::max);
+      try {
+        Thread.sleep(latencyMillis);
+      } finally {
+        inFlight.decrementAndGet();
+      }
+
+      VehicleResponse vehicleResponse = new VehicleResponse();
+      vehicleResponse.setVehicleId(invocation.getArgument(1));
+      vehicleResponse.setDealerId(1);
+      return vehicleResponse;
+    });
+
+    vehicles.setConcurrency(concurrency);
+    // A limiter of its own, so the calls made by other tests do not change the limit
+    vehicles.setLimiter(new AdaptiveLimiter());
+
+    long start = System.nanoTime();
+    vehicles.getDealersWithTheirVehicles(datasetId, vehicleIds);
+    long elapsedMillis = (System.nanoTime() - start) / 1_000_000L;
+
+    // The window is filled but never exceeded, so the time is (vehicles / window) round trips
+    assertEquals(concurrency, maxInFlight.get());
+    assertTrue(elapsedMillis < (vehicleCount / concurrency + 1) * latencyMillis, "Took " + elapsedMillis + " milliseconds");
+    verify(vehiclesApi, times(vehicleCount)).vehiclesGetVehicle(anyString(), anyInt());
+    verify(dealers, times(vehicleCount)).addVehicle(anyString(), any(VehicleResponse.class));
+  }
+
+  @Test
+  void getDealersWithTheirVehicles_sharedFetchEngine() throws Exception {
+    final int concurrency = 4;
+    final int vehicleCount = 3 * concurrency;
+
+    List<Integer> vehicleIds = new ArrayList<>();
+    for (int i = 1; i <= vehicleCount; i++) {
+      vehicleIds.add(i);
+    }
+
+    final AtomicInteger inFlight = new AtomicInteger();
+    final AtomicInteger maxInFlight = new AtomicInteger();
+
+    doReturn(vehiclesApi).when(vehicles).getVehiclesApi();
+    doReturn(dealers).when(vehicles).getDealers();
+    when(vehiclesApi.vehiclesGetVehicle(anyString(), anyInt())).thenAnswer(invocation -> {
+      int current = inFlight.incrementAndGet();
+      maxInFlight.accumulateAndGet(current, Math::max);
+      try {
+        Thread.sleep(50L);
+      } finally {
+        inFlight.decrementAndGet();
+      }
+
+      VehicleResponse vehicleResponse = new VehicleResponse();
+      vehicleResponse.setVehicleId(invocation.getArgument(1));
+      vehicleResponse.setDealerId(1);
+      return vehicleResponse;
+    });
+
+    vehicles.setLimiter(new AdaptiveLimiter());
+
+    try (FetchEngine fetchEngine = new FetchEngine(concurrency)) {
+      vehicles.setSharedFetchEngine(fetchEngine);
+
+      // Two datasets at the same time on the one engine
+      CompletableFuture<?> first = CompletableFuture.runAsync(() -> vehicles.getDealersWithTheirVehicles("AAA", vehicleIds));
+      CompletableFuture<?> second = CompletableFuture.runAsync(() -> vehicles.getDealersWithTheirVehicles("BBB", vehicleIds));
+      CompletableFuture.allOf(first, second).get(10, TimeUnit.SECONDS);
+
+      // The engine is left open for the next dataset
+      vehicles.getDealersWithTheirVehicles("CCC", Collections.singletonList(1));
+    }
+
+    // The concurrency is a cap over both datasets, not for each of them
+    assertEquals(concurrency, maxInFlight.get());
+    verify(vehiclesApi, times(vehicleCount)).vehiclesGetVehicle(eq("AAA"), anyInt());
+    verify(vehiclesApi, times(vehicleCount)).vehiclesGetVehicle(eq("BBB"), anyInt());
+    verify(vehiclesApi, times(1)).vehiclesGetVehicle(eq("CCC"), anyInt());
+  }
+
+  @Test
+  void getDealersWithTheirVehiclesAsync_validResponse() throws Exception {
+    final String datasetId = "AAA";
+    final Integer vehicleId = 1;
+    final Integer dealerId = 2;
+    List<Integer> vehicleIds = Collections.singletonList(vehicleId);
 
+    VehicleResponse vehicleResponse = new VehicleResponse();
+    vehicleResponse.setMake("Pontiac");
+    vehicleResponse.setModel("Grand Am");
+    vehicleResponse.setYear(1989);
+    vehicleResponse.setVehicleId(vehicleId);
+    vehicleResponse.setDealerId(dealerId);
+
+    doReturn(vehiclesApi).when(vehicles).getVehiclesApi();
+    doReturn(dealers).when(vehicles).getDealers();
+
+    doAnswer(invocation -> {
+      ApiCallback<VehicleResponse> callback = invocation.getArgument(3);
+      callback.onSuccess(vehicleResponse, 200, Collections.emptyMap());
+      return null;
+    }).when(vehicles).startVehicleCall(any(), anyString(), anyInt(), any());
+
+    ArgumentCaptor<VehicleResponse> vehicleResponseArgumentCaptor = ArgumentCaptor.forClass(VehicleResponse.class);
+    doNothing().when(dealers).addVehicle(anyString(), vehicleResponseArgumentCaptor.capture());
+
+    vehicles.setFetchMode(FetchMode.ASYNC);
     vehicles.getDealersWithTheirVehicles(datasetId, vehicleIds);
 
-    List<VehicleAnswer> answers = vehicleAnswerArgumentCaptor.getAllValues();
-    assertEquals(1, answers.size());
-    VehicleAnswer answer = answers.get(0);
-    assertEquals(vehicleResponse.getVehicleId(), answer.getVehicleId());
-    assertEquals(vehicleResponse.getMake(), answer.getMake());
-    assertEquals(vehicleResponse.getModel(), answer.getModel());
-    assertEquals(vehicleResponse.getYear(), answer.getYear());
+    List<VehicleResponse> added = vehicleResponseArgumentCaptor.getAllValues();
+    assertEquals(1, added.size());
+    assertEquals(vehicleResponse.getVehicleId(), added.get(0).getVehicleId());
+    verify(dealers).setFetchMode(FetchMode.ASYNC);
+  }
+
+  @Test
+  void getDealersWithTheirVehiclesAsync_apiException() throws Exception {
+    final String datasetId = "AAA";
+    final Integer vehicleId = 1;
+    List<Integer> vehicleIds = Collections.singletonList(vehicleId);
+
+    doReturn(vehiclesApi).when(vehicles).getVehiclesApi();
+    doReturn(dealers).when(vehicles).getDealers();
+
+    doAnswer(invocation -> {
+      ApiCallback<VehicleResponse> callback = invocation.getArgument(3);
+      callback.onFailure(new ApiException(), 500, Collections.emptyMap());
+      return null;
+    }).when(vehicles).startVehicleCall(any(), anyString(), anyInt(), any());
+
+    vehicles.setFetchMode(FetchMode.ASYNC);
+    assertThrows(RuntimeException.class, () -> vehicles.getDealersWithTheirVehicles(datasetId, vehicleIds));
+  }
+
+  @Test
+  void getDealersWithTheirVehiclesAsync_concurrencyWindow() throws Exception {
+    final int concurrency = 3;
+    final int vehicleCount = 4 * concurrency;
+
+    List<Integer> vehicleIds = new ArrayList<>();
+    for (int i = 1; i <= vehicleCount; i++) {
+      vehicleIds.add(i);
+    }
+
+    final AtomicInteger inFlight = new AtomicInteger();
+    final AtomicInteger maxInFlight = new AtomicInteger();
+    final ScheduledExecutorService server = Executors.newSingleThreadScheduledExecutor();
+
+    doReturn(vehiclesApi).when(vehicles).getVehiclesApi();
+    doReturn(dealers).when(vehicles).getDealers();
+    doAnswer(invocation -> {
+      int current = inFlight.incrementAndGet();
+      maxInFlight.accumulateAndGet(current, Math::max);
+      VehicleResponse vehicleResponse = new VehicleResponse();
+      vehicleResponse.setVehicleId(invocation.getArgument(2));
+      vehicleResponse.setDealerId(1);
+      ApiCallback<VehicleResponse> callback = invocation.getArgument(3);
+      // Answered later on another thread, as the client does
+      server.schedule(() -> {
+        inFlight.decrementAndGet();
+        callback.onSuccess(vehicleResponse, 200, Collections.emptyMap());
+      }, 20L, TimeUnit.MILLISECONDS);
+      return null;
+    }).when(vehicles).startVehicleCall(any(), anyString(), anyInt(), any());
+
+    vehicles.setConcurrency(concurrency);
+    vehicles.setFetchMode(FetchMode.ASYNC);
+    vehicles.setLimiter(new AdaptiveLimiter());
+    try {
+      vehicles.getDealersWithTheirVehicles("AAA", vehicleIds);
+    } finally {
+      server.shutdown();
+    }
+
+    // The window is filled but never exceeded
+    assertEquals(concurrency, maxInFlight.get());
+    verify(dealers, times(vehicleCount)).addVehicle(anyString(), any(VehicleResponse.class));
+  }
+
+  @Test
+  void getDealersWithTheirVehiclesAsync_failureReadingIdsWaitsForStartedFetches() throws Exception {
+    // The response of the ids breaks off after two of them
+    VehicleIdStream vehicleIds = new VehicleIdStream("AAA", new StringReader("{\"vehicleIds\":[1,2,x"));
+    final ScheduledExecutorService server = Executors.newSingleThreadScheduledExecutor();
+
+    doReturn(vehiclesApi).when(vehicles).getVehiclesApi();
+    doReturn(dealers).when(vehicles).getDealers();
+    doAnswer(invocation -> {
+      VehicleResponse vehicleResponse = new VehicleResponse();
+      vehicleResponse.setVehicleId(invocation.getArgument(2));
+      vehicleResponse.setDealerId(1);
+      ApiCallback<VehicleResponse> callback = invocation.getArgument(3);
+      server.schedule(() -> callback.onSuccess(vehicleResponse, 200, Collections.emptyMap()), 50L, TimeUnit.MILLISECONDS);
+      return null;
+    }).when(vehicles).startVehicleCall(any(), anyString(), anyInt(), any());
+
+    vehicles.setFetchMode(FetchMode.ASYNC);
+    vehicles.setLimiter(new AdaptiveLimiter());
+    try {
+      assertThrows(RuntimeException.class, () -> vehicles.getDealersWithTheirVehicles("AAA", vehicleIds));
+    } finally {
+      server.shutdown();
+    }
+
+    // Both fetches started before the failure were done by the time it was thrown
+    verify(dealers, times(2)).addVehicle(anyString(), any(VehicleResponse.class));
+  }
+
+  @Test
+  void getDealersWithTheirVehiclesAsync_sharedClientUnchanged() throws Exception {
+    final int vehicleCount = 200;
+    final int dealerCount = 5;
+    List<Integer> vehicleIds = new ArrayList<>();
+    for (int i = 1; i <= vehicleCount; i++) {
+      vehicleIds.add(i);
+    }
+
+    // A stub of the API, answering each vehicle and dealer from its id
+    HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext("/api/AAA/vehicles/", exchange -> {
+      int id = Integer.parseInt(exchange.getRequestURI().getPath().replaceAll(".*/", ""));
+      respond(exchange, "{\"vehicleId\":" + id + ",\"year\":2010,\"make\":\"Ford\",\"model\":\"F150\",\"dealerId\":"
+        + (id % dealerCount + 1) + "}");
+    });
+    server.createContext("/api/AAA/dealers/", exchange -> {
+      int id = Integer.parseInt(exchange.getRequestURI().getPath().replaceAll(".*/", ""));
+      respond(exchange, "{\"dealerId\":" + id + ",\"name\":\"Dealer " + id + "\"}");
+    });
+    server.setExecutor(Executors.newFixedThreadPool(4));
+    server.start();
+    try {
+      ApiClients.setBasePath("http://127.0.0.1:" + server.getAddress().getPort());
+      OkHttpClient httpClient = ApiClients.get().getHttpClient();
+      int interceptors = httpClient.interceptors().size();
+      int networkInterceptors = httpClient.networkInterceptors().size();
+
+      Vehicles asyncVehicles = new Vehicles();
+      asyncVehicles.setFetchMode(FetchMode.ASYNC);
+      asyncVehicles.setLimiter(new AdaptiveLimiter());
+      List<DealerAnswer> dealerAnswers = asyncVehicles.getDealersWithTheirVehicles("AAA", vehicleIds);
+
+      assertEquals(dealerCount, dealerAnswers.size());
+      assertEquals(vehicleCount, dealerAnswers.stream().mapToInt(dealerAnswer -> dealerAnswer.getVehicles().size()).sum());
+      // No call leaves an interceptor behind on the shared client
+      assertSame(httpClient, ApiClients.get().getHttpClient());
+      assertEquals(interceptors, httpClient.interceptors().size());
+      assertEquals(networkInterceptors, httpClient.networkInterceptors().size());
+    } finally {
+      ApiClients.setBasePath(null);
+      server.stop(0);
+      ((ExecutorService) server.getExecutor()).shutdown();
+    }
+  }
+
+  @Test
+  void getDealersWithTheirVehiclesVirtual_validResponse() throws Exception {
+    final String datasetId = "AAA";
+    List<Integer> vehicleIds = Arrays.asList(1, 2, 3, 4);
+
+    doReturn(vehiclesApi).when(vehicles).getVehiclesApi();
+    doReturn(dealers).when(vehicles).getDealers();
+    when(vehiclesApi.vehiclesGetVehicle(anyString(), anyInt())).thenAnswer(invocation -> {
+      VehicleResponse vehicleResponse = new VehicleResponse();
+      vehicleResponse.setVehicleId(invocation.getArgument(1));
+      vehicleResponse.setDealerId(1);
+      return vehicleResponse;
+    });
+
+    // Runs on virtual threads on Java 21, and falls back to the worker pool on older JVMs
+    vehicles.setFetchMode(FetchMode.VIRTUAL);
+    vehicles.getDealersWithTheirVehicles(datasetId, vehicleIds);
+
+    verify(dealers, times(vehicleIds.size())).addVehicle(anyString(), any(VehicleResponse.class));
+  }
+
+  @Test
+  void getDealersWithTheirVehicles_transientFailureRetried() throws Exception {
+    final String datasetId = "AAA";
+    final Integer vehicleId = 1;
+    List<Integer> vehicleIds = Collections.singletonList(vehicleId);
+
+    VehicleResponse vehicleResponse = new VehicleResponse();
+    vehicleResponse.setVehicleId(vehicleId);
+    vehicleResponse.setDealerId(2);
+
+    doReturn(vehiclesApi).when(vehicles).getVehiclesApi();
+    doReturn(dealers).when(vehicles).getDealers();
+    when(vehiclesApi.vehiclesGetVehicle(datasetId, vehicleId))
+      .thenThrow(new ApiException(503, "Service unavailable"))
+      .thenReturn(vehicleResponse);
+
+    vehicles.setRetryPolicy(new RetryPolicy(3, false, 1L, 5L));
+    vehicles.getDealersWithTheirVehicles(datasetId, vehicleIds);
+
+    // The vehicle is only added once, however many attempts it took
+    verify(vehiclesApi, times(2)).vehiclesGetVehicle(datasetId, vehicleId);
+    verify(dealers, times(1)).addVehicle(anyString(), any(VehicleResponse.class));
+  }
+
+  @Test
+  void getDealersWithTheirVehicles_resumedFromPartialCache() throws Exception {
+    final String datasetId = "RESUME";
+    Path file = Files.createTempFile("resume", ".cache");
+    Files.delete(file);
+    try {
+      // The killed run got through the first three vehicles, and their dealers, before it stopped
+      VehiclesApi firstVehiclesApi = vehiclesApi(datasetId);
+      DealersApi firstDealersApi = dealersApi(datasetId);
+      try (ResponseCache cache = ResponseCache.open(file)) {
+        runCached(cache, firstVehiclesApi, firstDealersApi).getDealersWithTheirVehicles(datasetId, Arrays.asList(1, 2, 3));
+      }
+
+      // Resuming it from the cache only requests the vehicle the killed run never received
+      VehiclesApi resumedVehiclesApi = vehiclesApi(datasetId);
+      DealersApi resumedDealersApi = dealersApi(datasetId);
+      List<DealerAnswer> dealerAnswers;
+      try (ResponseCache cache = ResponseCache.open(file)) {
+        dealerAnswers = runCached(cache, resumedVehiclesApi, resumedDealersApi)
+          .getDealersWithTheirVehicles(datasetId, Arrays.asList(1, 2, 3, 4));
+      }
+
+      verify(resumedVehiclesApi).vehiclesGetVehicle(datasetId, 4);
+      verify(resumedVehiclesApi, times(1)).vehiclesGetVehicle(anyString(), anyInt());
+      verify(resumedDealersApi, never()).dealersGetDealer(anyString(), anyInt());
+      verify(firstDealersApi, times(2)).dealersGetDealer(anyString(), anyInt());
+      int vehicleCount = 0;
+      for (DealerAnswer dealerAnswer : dealerAnswers) {
+        vehicleCount += dealerAnswer.getVehicles().size();
+      }
+      assertEquals(2, dealerAnswers.size());
+      assertEquals(4, vehicleCount);
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  /**
+   * @return vehicles fetched through the given API mocks and the response cache
+   */
+  private static Vehicles runCached(final ResponseCache cache, final VehiclesApi vehiclesApi,
+                                    final DealersApi dealersApi) {
+    Dealers dealers = spy(new Dealers());
+    doReturn(dealersApi).when(dealers).getDealersApi();
+    Vehicles vehicles = spy(new Vehicles());
+    doReturn(vehiclesApi).when(vehicles).getVehiclesApi();
+    doReturn(dealers).when(vehicles).getDealers();
+    vehicles.setResponseCache(cache);
+    return vehicles;
+  }
+
+  /**
+   * @return an API answering vehicle n with dealer 10, except for vehicle 3 with dealer 20
+   */
+  private static VehiclesApi vehiclesApi(final String datasetId) throws Exception {
+    VehiclesApi vehiclesApi = mock(VehiclesApi.class);
+    when(vehiclesApi.vehiclesGetVehicle(eq(datasetId), anyInt())).thenAnswer(invocation -> {
+      Integer vehicleId = invocation.getArgument(1);
+      VehicleResponse vehicleResponse = new VehicleResponse();
+      vehicleResponse.setVehicleId(vehicleId);
+      vehicleResponse.setYear(2000 + vehicleId);
+      vehicleResponse.setMake("Pontiac");
+      vehicleResponse.setModel("Model " + vehicleId);
+      vehicleResponse.setDealerId((vehicleId == 3) ? 20 : 10);
+      return vehicleResponse;
+    });
+    return vehiclesApi;
+  }
+
+  private static DealersApi dealersApi(final String datasetId) throws Exception {
+    DealersApi dealersApi = mock(DealersApi.class);
+    when(dealersApi.dealersGetDealer(eq(datasetId), anyInt())).thenAnswer(invocation -> {
+      DealersResponse dealersResponse = new DealersResponse();
+      dealersResponse.setDealerId(invocation.getArgument(1));
+      dealersResponse.setName("Dealer " + invocation.getArgument(1));
+      return dealersResponse;
+    });
+    return dealersApi;
+  }
+
+  private static void respond(final HttpExchange exchange, final String json) throws IOException {
+    byte[] body = json.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().add("Content-Type", "application/json");
+    exchange.sendResponseHeaders(200, body.length);
+    exchange.getResponseBody().write(body);
+    exchange.close();
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,88 @@
+package com.cox.automotive;
+
+import com.squareup.okhttp.ConnectionPool;
+import com.sun.net.httpserver.HttpServer;
+import io.swagger.client.ApiClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test the warmup done while the dataset id is requested
+ *
+ * @author jeff.snyder
+ */
+class WarmupTest {
+
+  private final AtomicInteger headRequests = new AtomicInteger();
+  private HttpServer server;
+
+  @AfterEach
+  void stopServer() {
+    if (server != null) {
+      server.stop(0);
+    }
+  }
+
+  @Test
+  void start_opensConnections() throws Exception {
+    ApiClient apiClient = client(startServer());
+
+    Warmup warmup = Warmup.start(apiClient, 3, null);
+
+    assertTrue(warmup.await(5, TimeUnit.SECONDS));
+    assertEquals(3, warmup.getOpenedConnections());
+    assertEquals(0, warmup.getFailedConnections());
+    assertEquals(3, headRequests.get());
+    assertTrue(apiClient.getHttpClient().getConnectionPool().getIdleConnectionCount() > 0);
+  }
+
+  @Test
+  void start_unreachableApiOnlyCounted() throws Exception {
+    // Nothing listens on the port once the server is stopped
+    String basePath = startServer();
+    server.stop(0);
+    server = null;
+
+    Warmup warmup = Warmup.start(client(basePath), 2, null);
+
+    assertTrue(warmup.await(5, TimeUnit.SECONDS));
+    assertEquals(0, warmup.getOpenedConnections());
+    assertEquals(2, warmup.getFailedConnections());
+  }
+
+  @Test
+  void warmCodecs_writesTheSampleAnswer() {
+    assertEquals("{\"dealers\":[{\"dealerId\":1,\"name\":\"Joes Car Palace\",\"vehicles\":"
+      + "[{\"vehicleId\":1,\"year\":2001,\"make\":\"Pontiac\",\"model\":\"Grand Am\"}]}]}", Warmup.warmCodecs());
+  }
+
+  private String startServer() throws IOException {
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext("/", exchange -> {
+      if ("HEAD".equals(exchange.getRequestMethod())) {
+        headRequests.incrementAndGet();
+      }
+      exchange.sendResponseHeaders(404, -1);
+      exchange.close();
+    });
+    server.start();
+    return "http://127.0.0.1:" + server.getAddress().getPort();
+  }
+
+  private static ApiClient client(final String basePath) {
+    ApiClient apiClient = new ApiClient();
+    apiClient.setBasePath(basePath);
+    // OkHttp only has a pool of its own once one is set, as ApiClients does
+    apiClient.getHttpClient().setConnectionPool(new ConnectionPool(5, TimeUnit.MINUTES.toMillis(5)));
+    return apiClient;
+  }
+}
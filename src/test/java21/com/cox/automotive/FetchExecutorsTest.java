@@ -0,0 +1,65 @@
+package com.cox.automotive;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test the virtual thread path of the Java 21 executors
+ *
+ * @author jeff.snyder
+ */
+class FetchExecutorsTest {
+
+  @Test
+  void newVirtualThreadPerTaskExecutor_runsOnVirtualThreads() throws Exception {
+    assertTrue(FetchExecutors.isVirtualThreadsAvailable());
+
+    ExecutorService executor = FetchExecutors.newVirtualThreadPerTaskExecutor("test", 1);
+    try {
+      Thread thread = executor.submit(Thread::currentThread).get(5, TimeUnit.SECONDS);
+
+      assertTrue(thread.isVirtual());
+      assertEquals("test-1", thread.getName());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  void forEach_virtualThreadsWithinTheWindow() {
+    int concurrency = 4;
+    AtomicInteger inFlight = new AtomicInteger();
+    AtomicInteger maxInFlight = new AtomicInteger();
+    AtomicBoolean platformThread = new AtomicBoolean();
+    List<Integer> items = new ArrayList<>();
+    for (int i = 0; i < 40; i++) {
+      items.add(i);
+    }
+
+    try (FetchEngine engine = new FetchEngine(concurrency, true)) {
+      engine.forEach(items, item -> {
+        if (!Thread.currentThread().isVirtual()) {
+          platformThread.set(true);
+        }
+        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(5));
+        inFlight.decrementAndGet();
+      });
+    }
+
+    assertFalse(platformThread.get());
+    assertEquals(concurrency, maxInFlight.get());
+    assertEquals(0, inFlight.get());
+  }
+}
@@ -0,0 +1,215 @@
+package com.cox.automotive;
+
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.io.Content;
+import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.util.Callback;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test the HTTP/2 transport against a local h2c server
+ *
+ * @author jeff.snyder
+ */
+class Http2TransportTest {
+
+  private static final String JSON = "{\"vehicleIds\":[1,2,3]}";
+
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final AtomicInteger peakInFlight = new AtomicInteger();
+  // The answers uploaded, as received, and the Content-Length they came with
+  private final List<String> uploads = new CopyOnWriteArrayList<>();
+  private final List<String> uploadLengths = new CopyOnWriteArrayList<>();
+  private Server server;
+  private String basePath;
+
+  @BeforeEach
+  void startServer() throws Exception {
+    server = new Server();
+    HttpConfiguration config = new HttpConfiguration();
+    // HTTP/1.1 for the upgrade, and h2c once upgraded
+    ServerConnector connector = new ServerConnector(server, new HttpConnectionFactory(config),
+      new HTTP2CServerConnectionFactory(config));
+    connector.setHost("127.0.0.1");
+    server.addConnector(connector);
+    server.setHandler(new Handler.Abstract() {
+      @Override
+      public boolean handle(final org.eclipse.jetty.server.Request request,
+                            final org.eclipse.jetty.server.Response response, final Callback callback) throws IOException {
+        String path = request.getHttpURI().getPath();
+        byte[] body = JSON.getBytes(StandardCharsets.UTF_8);
+        response.getHeaders().put(HttpHeader.CONTENT_TYPE, "application/json");
+        if (path.endsWith("/answer")) {
+          uploadLengths.add(String.valueOf(request.getHeaders().get(HttpHeader.CONTENT_LENGTH)));
+          try (InputStream in = new GZIPInputStream(Content.Source.asInputStream(request))) {
+            uploads.add(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+          }
+          body = "{\"success\":true,\"message\":\"Congratulations.\"}".getBytes(StandardCharsets.UTF_8);
+        } else if (path.endsWith("/missing")) {
+          response.setStatus(404);
+        } else if (path.endsWith("/gzip")) {
+          response.getHeaders().put(HttpHeader.CONTENT_ENCODING, "gzip");
+          body = encode(body, true);
+        } else if (path.endsWith("/deflate")) {
+          response.getHeaders().put(HttpHeader.CONTENT_ENCODING, "deflate");
+          body = encode(body, false);
+        } else if (path.endsWith("/slow")) {
+          peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+          LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(50));
+          inFlight.decrementAndGet();
+        }
+        response.getHeaders().put(HttpHeader.CONTENT_LENGTH, body.length);
+        response.write(true, ByteBuffer.wrap(body), callback);
+        return true;
+      }
+    });
+    server.start();
+    basePath = "http://127.0.0.1:" + connector.getLocalPort();
+  }
+
+  @AfterEach
+  void stopServer() throws Exception {
+    server.stop();
+  }
+
+  @Test
+  void intercept_h2cWithReasonPhrase() throws Exception {
+    Http2Transport transport = Http2Transport.create(new OkHttpClient(), 1, 10, new Metrics());
+    OkHttpClient client = client(transport);
+
+    // Reading the body to the end gives back its stream
+    Response ok = execute(client, "/api/A/vehicles");
+    assertEquals(Protocol.HTTP_2, ok.protocol());
+    assertEquals(200, ok.code());
+    assertEquals("OK", ok.message());
+    assertEquals(JSON, ok.body().string());
+
+    Response missing = execute(client, "/api/A/missing");
+    missing.body().string();
+    assertEquals(404, missing.code());
+    assertEquals("Not Found", missing.message());
+    assertFalse(missing.isSuccessful());
+    assertTrue(transport.toString().contains("http2=2"), transport.toString());
+  }
+
+  @Test
+  void intercept_gzipAndDeflateDecoded() throws Exception {
+    OkHttpClient client = client(Http2Transport.create(new OkHttpClient(), 1, 10, new Metrics()));
+
+    Response gzip = execute(client, "/api/A/gzip");
+    assertEquals(JSON, gzip.body().string());
+    assertNull(gzip.header("Content-Encoding"));
+
+    assertEquals(JSON, execute(client, "/api/A/deflate").body().string());
+  }
+
+  @Test
+  void intercept_answerStreamedWithoutLength() throws Exception {
+    VehicleStore vehicleStore = new VehicleStore();
+    vehicleStore.add(1, 1989, "Pontiac", "Grand Am", 7);
+    StoredAnswer answer = new StoredAnswer(vehicleStore, new DealerInfo[] {new DealerInfo(7, "Joes Car Palace")},
+      new int[] {0, 1}, new int[] {0});
+    Metrics metrics = new Metrics();
+    OkHttpClient client = client(Http2Transport.create(new OkHttpClient(), 1, 10, metrics));
+
+    // The h2c connection is set up first, so the answer goes out on it
+    assertEquals(JSON, execute(client, "/api/A/vehicles").body().string());
+    Response response = client.newCall(new Request.Builder().url(basePath + "/api/A/answer")
+      .header("Content-Encoding", "gzip")
+      .post(new Dataset.AnswerBody(answer, true))
+      .build()).execute();
+
+    assertEquals("{\"success\":true,\"message\":\"Congratulations.\"}", response.body().string());
+    assertEquals(Protocol.HTTP_2, response.protocol());
+    assertEquals(Collections.singletonList("null"), uploadLengths);
+    assertEquals(Collections.singletonList("{\"dealers\":[{\"dealerId\":7,\"name\":\"Joes Car Palace\",\"vehicles\":["
+      + "{\"vehicleId\":1,\"year\":1989,\"make\":\"Pontiac\",\"model\":\"Grand Am\"}]}]}"), uploads);
+  }
+
+  @Test
+  void intercept_streamsPerConnectionBounded() throws Exception {
+    OkHttpClient client = client(Http2Transport.create(new OkHttpClient(), 1, 2, new Metrics()));
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<String>> bodies = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        bodies.add(executor.submit(() -> execute(client, "/api/A/slow").body().string()));
+      }
+      for (Future<String> body : bodies) {
+        assertEquals(JSON, body.get(10, TimeUnit.SECONDS));
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    assertEquals(2, peakInFlight.get());
+  }
+
+  @Test
+  void apiClients_dispatcherCoversEveryStream() {
+    try {
+      ApiClients.configureHttp2(2, 100);
+      assertEquals(200, ApiClients.get().getHttpClient().getDispatcher().getMaxRequestsPerHost());
+
+      ApiClients.configureHttp2(0, Http2Transport.DEFAULT_MAX_STREAMS);
+      assertEquals(ApiClients.getMaxConnectionsPerHost(),
+        ApiClients.get().getHttpClient().getDispatcher().getMaxRequestsPerHost());
+    } finally {
+      ApiClients.configureHttp2(0, Http2Transport.DEFAULT_MAX_STREAMS);
+    }
+  }
+
+  private OkHttpClient client(final Http2Transport transport) {
+    OkHttpClient client = new OkHttpClient();
+    client.interceptors().add(transport);
+    return client;
+  }
+
+  private Response execute(final OkHttpClient client, final String path) throws IOException {
+    return client.newCall(new Request.Builder().url(basePath + path).build()).execute();
+  }
+
+  private static byte[] encode(final byte[] body, final boolean gzip) throws IOException {
+    ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+    try (OutputStream out = gzip ? new GZIPOutputStream(encoded) : new DeflaterOutputStream(encoded)) {
+      out.write(body);
+    }
+    return encoded.toByteArray();
+  }
+}